@@ -0,0 +1,22 @@
+package io.topiacoin.util.benchmarks;
+
+import io.topiacoin.util.Notification;
+import io.topiacoin.util.NotificationHandler;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A Notification Handler that hands every notification it receives to a JMH Blackhole, so that delivery cannot be
+ * optimized away without adding any work of its own.
+ */
+public class BlackholeHandler implements NotificationHandler {
+
+    private final Blackhole blackhole;
+
+    public BlackholeHandler(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    public void handleNotification(Notification notification) {
+        blackhole.consume(notification);
+    }
+}
@@ -0,0 +1,117 @@
+package io.topiacoin.util.benchmarks;
+
+import io.topiacoin.util.Notification;
+import io.topiacoin.util.NotificationCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding and decoding a typical transaction notification with the NotificationCodec against Java
+ * serialization of the same name, classifier and notification info.  The encoded sizes are printed during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private Notification notification;
+    private SerializableNotification serializableNotification;
+    private ByteBuffer encodeBuffer;
+    private ByteBuffer encoded;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("txid", "4a5e1e4baab89f3a32518a88c31bc87f618f76673e2cc77ab2127b7afdeda33b");
+        info.put("amount", 5000000000L);
+        info.put("confirmations", 6);
+        info.put("fee", 0.0001);
+        info.put("coinbase", false);
+        notification = new Notification("transactionConfirmed", "wallet-1", info);
+        serializableNotification = new SerializableNotification("transactionConfirmed", "wallet-1", info);
+
+        encodeBuffer = ByteBuffer.allocate(1024);
+        NotificationCodec.encode(notification, encodeBuffer);
+        encodeBuffer.flip();
+        encoded = encodeBuffer.duplicate();
+        serialized = serialize(serializableNotification);
+        System.out.println("\nNotificationCodec: " + encoded.remaining() + " bytes, Java serialization: " +
+                serialized.length + " bytes");
+    }
+
+    @Benchmark
+    public ByteBuffer codecEncode() {
+        encodeBuffer.clear();
+        NotificationCodec.encode(notification, encodeBuffer);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public Object codecDecodeName() {
+        return NotificationCodec.decode(encoded.duplicate()).getNotificationName();
+    }
+
+    @Benchmark
+    public Object codecDecodeAll() {
+        return NotificationCodec.decode(encoded.duplicate()).getNotificationInfo();
+    }
+
+    @Benchmark
+    public byte[] javaSerialize() throws IOException {
+        return serialize(serializableNotification);
+    }
+
+    @Benchmark
+    public Object javaDeserialize() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        return in.readObject();
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The serializable form of a notification that applications fall back to without a codec.
+     */
+    private static class SerializableNotification implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String notificationName;
+        final String classifier;
+        final HashMap<String, Object> notificationInfo;
+
+        SerializableNotification(String notificationName, String classifier, Map<String, Object> notificationInfo) {
+            this.notificationName = notificationName;
+            this.classifier = classifier;
+            this.notificationInfo = new HashMap<String, Object>(notificationInfo);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.topiacoin.util.benchmarks;
+
+import io.topiacoin.util.Notification;
+import io.topiacoin.util.NotificationCenter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures posting from several threads at once to a single shared Notification Center.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ContendedPostBenchmark {
+
+    private static final String NOTIFICATION_NAME = "newBlock";
+    private static final String CLASSIFIER = "mainChain";
+
+    @Param({"1", "10"})
+    public int handlerCount;
+
+    private NotificationCenter notificationCenter;
+    private Notification notification;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        notificationCenter = new NotificationCenter.Builder().build();
+        for (int i = 0; i < handlerCount; i++) {
+            notificationCenter.addHandler(new BlackholeHandler(blackhole), NOTIFICATION_NAME, null);
+        }
+        notification = new Notification(NOTIFICATION_NAME, CLASSIFIER, null);
+    }
+
+    @Benchmark
+    public void postNotification() {
+        notificationCenter.postNotification(notification);
+    }
+}
@@ -0,0 +1,69 @@
+package io.topiacoin.util.benchmarks;
+
+import io.topiacoin.util.Notification;
+import io.topiacoin.util.NotificationCenter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures posting when the matching handlers are registered by name only, by classifier only, by exact name and
+ * classifier, or by a mix of all three.  A set of handlers registered for other names and classifiers is always present
+ * so that lookups are made against a populated dispatch table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixedRegistrationBenchmark {
+
+    private static final String NOTIFICATION_NAME = "txConfirmed";
+    private static final String CLASSIFIER = "wallet-1";
+    private static final int MATCHING_HANDLERS = 10;
+    private static final int OTHER_HANDLERS = 100;
+
+    @Param({"NAME_ONLY", "CLASSIFIER_ONLY", "EXACT", "MIXED"})
+    public String registrationKind;
+
+    private NotificationCenter notificationCenter;
+    private Notification notification;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        notificationCenter = new NotificationCenter.Builder().build();
+
+        for (int i = 0; i < OTHER_HANDLERS; i++) {
+            notificationCenter.addHandler(new BlackholeHandler(blackhole), "other-" + (i % 10), "wallet-" + (i + 2));
+        }
+
+        for (int i = 0; i < MATCHING_HANDLERS; i++) {
+            String kind = registrationKind;
+            if ("MIXED".equals(kind)) {
+                kind = (i % 3 == 0 ? "NAME_ONLY" : i % 3 == 1 ? "CLASSIFIER_ONLY" : "EXACT");
+            }
+            String name = ("CLASSIFIER_ONLY".equals(kind) ? null : NOTIFICATION_NAME);
+            String classifier = ("NAME_ONLY".equals(kind) ? null : CLASSIFIER);
+            notificationCenter.addHandler(new BlackholeHandler(blackhole), name, classifier);
+        }
+
+        notification = new Notification(NOTIFICATION_NAME, CLASSIFIER, null);
+    }
+
+    @Benchmark
+    public void postNotification() {
+        notificationCenter.postNotification(notification);
+    }
+}
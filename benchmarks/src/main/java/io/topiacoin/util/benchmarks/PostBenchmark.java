@@ -0,0 +1,72 @@
+package io.topiacoin.util.benchmarks;
+
+import io.topiacoin.util.Notification;
+import io.topiacoin.util.NotificationCenter;
+import io.topiacoin.util.TopicId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput and latency of posting a single notification against a varying number of handlers that are
+ * all registered for the posted name and classifier.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PostBenchmark {
+
+    private static final String NOTIFICATION_NAME = "newBlock";
+    private static final String CLASSIFIER = "mainChain";
+
+    @Param({"0", "1", "10", "1000"})
+    public int handlerCount;
+
+    private NotificationCenter notificationCenter;
+    private Notification notification;
+    private TopicId topicId;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        notificationCenter = new NotificationCenter.Builder().build();
+        for (int i = 0; i < handlerCount; i++) {
+            notificationCenter.addHandler(new BlackholeHandler(blackhole), NOTIFICATION_NAME, CLASSIFIER);
+        }
+        notification = new Notification(NOTIFICATION_NAME, CLASSIFIER, null);
+        topicId = notificationCenter.registerTopic(NOTIFICATION_NAME, CLASSIFIER);
+    }
+
+    @Benchmark
+    public void postNotification() {
+        notificationCenter.postNotification(notification);
+    }
+
+    @Benchmark
+    public void postNameAndClassifier() {
+        notificationCenter.postNotification(NOTIFICATION_NAME, CLASSIFIER, null);
+    }
+
+    @Benchmark
+    public void postTopicId() {
+        notificationCenter.postNotification(topicId, null);
+    }
+
+    @Benchmark
+    public void postPooledTopicId() {
+        notificationCenter.postPooledNotification(topicId, null);
+    }
+}
@@ -0,0 +1,78 @@
+package io.topiacoin.util.benchmarks;
+
+import io.topiacoin.util.Notification;
+import io.topiacoin.util.NotificationCenter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of adding and removing handlers against a dispatch table that already holds a number of
+ * registrations, both on its own and while other threads are posting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistrationChurnBenchmark {
+
+    private static final String NOTIFICATION_NAME = "peerConnected";
+
+    @Param({"10", "100", "1000"})
+    public int existingRegistrations;
+
+    private NotificationCenter notificationCenter;
+    private BlackholeHandler churnHandler;
+    private Notification notification;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        notificationCenter = new NotificationCenter.Builder().build();
+        for (int i = 0; i < existingRegistrations; i++) {
+            notificationCenter.addHandler(new BlackholeHandler(blackhole), NOTIFICATION_NAME + (i % 20), "peer-" + i);
+        }
+        churnHandler = new BlackholeHandler(blackhole);
+        notification = new Notification(NOTIFICATION_NAME + "0", "peer-0", null);
+    }
+
+    @Benchmark
+    public void addAndRemoveHandler() {
+        notificationCenter.addHandler(churnHandler, NOTIFICATION_NAME, "peer-churn");
+        notificationCenter.removeHandler(churnHandler, NOTIFICATION_NAME, "peer-churn");
+    }
+
+    @Benchmark
+    public void addAndRemoveAllHandler() {
+        notificationCenter.addHandler(churnHandler, NOTIFICATION_NAME, "peer-churn");
+        notificationCenter.removeHandler(churnHandler);
+    }
+
+    @Benchmark
+    @Group("churnWhilePosting")
+    @GroupThreads(1)
+    public void churn() {
+        addAndRemoveHandler();
+    }
+
+    @Benchmark
+    @Group("churnWhilePosting")
+    @GroupThreads(3)
+    public void post() {
+        notificationCenter.postNotification(notification);
+    }
+}
@@ -0,0 +1,20 @@
+package io.topiacoin.util;
+
+import java.util.List;
+
+/**
+ * A handler that can process several notifications in a single call.  When notifications are posted together with
+ * {@link NotificationCenter#postNotifications(java.util.Collection)}, a batch handler receives every notification in
+ * the batch that matches its registration in one call to {@link #handleNotifications(List)}, instead of one call per
+ * notification.  Notifications posted individually are still delivered to {@link #handleNotification(Notification)}.
+ */
+public interface BatchNotificationHandler extends NotificationHandler {
+
+    /**
+     * Handles a batch of notifications.
+     *
+     * @param notifications The notifications from a single posted batch that match the handler's registration, in the
+     *                      order they were posted.  The list cannot be modified.
+     */
+    void handleNotifications(List<Notification> notifications);
+}
@@ -0,0 +1,217 @@
+package io.topiacoin.util;
+
+/**
+ * Shapes the rate at which notifications are delivered to a registration, according to the debounce, throttle or
+ * rate limit configured in its {@link HandlerOptions}.  Each notification matched by the registration is offered to its
+ * shaper, which decides whether to deliver it now, hold it back to deliver later, or drop it.
+ * <p>
+ * Notifications that are held back are retained, and delivered from the Notification Center's timing wheel.  They are
+ * therefore delivered on the timer thread, unless the registration has an executor.  A shaper keeps its state under
+ * its own lock, which is only held to update that state, and never while the handler is called.
+ */
+abstract class DeliveryShaper {
+
+    final Registration registration;
+
+    DeliveryShaper(Registration registration) {
+        this.registration = registration;
+    }
+
+    /**
+     * Returns the shaper for the specified options, or null if the options do not shape deliveries.
+     *
+     * @param options      The handler's delivery options, or null for the defaults.
+     * @param timingWheel  The timing wheel that held back notifications are delivered from, or null if the options do
+     *                     not hold notifications back.
+     * @param registration The registration whose deliveries are shaped.
+     */
+    static DeliveryShaper forOptions(HandlerOptions options, TimingWheel timingWheel, Registration registration) {
+        if (options == null) {
+            return null;
+        }
+        if (options.getDebounceNanos() > 0) {
+            return new Debounce(registration, timingWheel, options.getDebounceNanos());
+        }
+        if (options.getThrottleNanos() > 0) {
+            return new Throttle(registration, timingWheel, options.getThrottleNanos(), options.isThrottleLeading(),
+                    options.isThrottleTrailing());
+        }
+        if (options.getRateLimitPermits() > 0) {
+            return new SlidingWindow(registration, options.getRateLimitPermits(), options.getRateLimitWindowNanos());
+        }
+        return null;
+    }
+
+    /**
+     * Offers a notification for delivery.  The notification may be a reusable one that is refilled once dispatch
+     * completes, so it must be retained if it is held back.
+     */
+    abstract void offer(Notification notification);
+
+    /**
+     * Discards any notification that is being held back, once the registration has been removed.
+     */
+    void discard() {
+    }
+
+    /**
+     * Delivers the latest notification once no notification has been offered for the quiet period.  Rather than
+     * rescheduling its timeout on every offer, the shaper moves the deadline forward and, when the timeout expires
+     * early, schedules it again for the time that remains.
+     */
+    private static final class Debounce extends DeliveryShaper implements Runnable {
+
+        private final TimingWheel timingWheel;
+        private final long quietNanos;
+        private Notification latest;
+        private long deadlineNanos;
+        private TimingWheel.Timeout timeout;
+
+        Debounce(Registration registration, TimingWheel timingWheel, long quietNanos) {
+            super(registration);
+            this.timingWheel = timingWheel;
+            this.quietNanos = quietNanos;
+        }
+
+        @Override
+        void offer(Notification notification) {
+            Notification retained = notification.retain();
+            synchronized (this) {
+                latest = retained;
+                deadlineNanos = System.nanoTime() + quietNanos;
+                if (timeout == null) {
+                    timeout = timingWheel.schedule(quietNanos, this);
+                }
+            }
+        }
+
+        public void run() {
+            Notification notification;
+            synchronized (this) {
+                if (latest == null) {
+                    return;
+                }
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos > 0) {
+                    timeout = timingWheel.schedule(remainingNanos, this);
+                    return;
+                }
+                notification = latest;
+                latest = null;
+                timeout = null;
+            }
+            registration.deliverNow(notification);
+        }
+
+        @Override
+        synchronized void discard() {
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+            latest = null;
+        }
+    }
+
+    /**
+     * Delivers at most one notification per interval.  On the leading edge, the first notification of an interval is
+     * delivered as soon as it is offered.  On the trailing edge, the latest notification offered during an interval is
+     * delivered when the interval ends, which starts another interval.
+     */
+    private static final class Throttle extends DeliveryShaper implements Runnable {
+
+        private final TimingWheel timingWheel;
+        private final long intervalNanos;
+        private final boolean leading;
+        private final boolean trailing;
+        private Notification latest;
+        private TimingWheel.Timeout timeout;
+
+        Throttle(Registration registration, TimingWheel timingWheel, long intervalNanos, boolean leading,
+                 boolean trailing) {
+            super(registration);
+            this.timingWheel = timingWheel;
+            this.intervalNanos = intervalNanos;
+            this.leading = leading;
+            this.trailing = trailing;
+        }
+
+        @Override
+        void offer(Notification notification) {
+            synchronized (this) {
+                if (timeout != null) {
+                    // Within an interval, only the trailing edge can still deliver the notification.
+                    if (trailing) {
+                        latest = notification.retain();
+                    }
+                    return;
+                }
+                timeout = timingWheel.schedule(intervalNanos, this);
+                if (!leading) {
+                    latest = notification.retain();
+                    return;
+                }
+            }
+            registration.deliverNow(notification);
+        }
+
+        public void run() {
+            Notification notification;
+            synchronized (this) {
+                if (timeout == null) {
+                    return;
+                }
+                notification = latest;
+                latest = null;
+                timeout = (notification != null ? timingWheel.schedule(intervalNanos, this) : null);
+            }
+            if (notification != null) {
+                registration.deliverNow(notification);
+            }
+        }
+
+        @Override
+        synchronized void discard() {
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+            latest = null;
+        }
+    }
+
+    /**
+     * Delivers at most a fixed number of notifications in any window of time, and drops the rest.  The delivery times
+     * of the last permitted notifications are kept in a circular array, so a notification may be delivered if the
+     * oldest of them is at least a window old.
+     */
+    private static final class SlidingWindow extends DeliveryShaper {
+
+        private final long windowNanos;
+        private final long[] deliveryNanos;
+        private int next;
+        private int count;
+
+        SlidingWindow(Registration registration, int permits, long windowNanos) {
+            super(registration);
+            this.windowNanos = windowNanos;
+            this.deliveryNanos = new long[permits];
+        }
+
+        @Override
+        void offer(Notification notification) {
+            long now = System.nanoTime();
+            synchronized (this) {
+                if (count == deliveryNanos.length && now - deliveryNanos[next] < windowNanos) {
+                    return;
+                }
+                deliveryNanos[next] = now;
+                next = (next + 1) % deliveryNanos.length;
+                if (count < deliveryNanos.length) {
+                    count++;
+                }
+            }
+            registration.deliverNow(notification);
+        }
+    }
+}
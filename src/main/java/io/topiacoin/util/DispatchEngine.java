@@ -0,0 +1,90 @@
+package io.topiacoin.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delivers posted notifications to the registrations that match them.  The default engine delivers each notification on
+ * the posting thread before the post returns.  Alternative engines, such as the {@link RingBufferDispatchEngine}, can
+ * be selected when a Notification Center is built.
+ */
+class DispatchEngine {
+
+    /**
+     * Dispatches the notification to the specified registrations.
+     *
+     * @param notification  The notification that was posted.
+     * @param registrations The registrations matching the notification, in delivery order.
+     */
+    void dispatch(Notification notification, Registration[] registrations) {
+        for (Registration curRegistration : registrations) {
+            curRegistration.deliver(notification);
+        }
+    }
+
+    /**
+     * Dispatches a batch of notifications.  Consecutive notifications that resolved to the same registrations are
+     * grouped into runs, and each registration is then handed its slice of the batch, made up of the runs it matched,
+     * in a single delivery.  Each handler receives its notifications in the order they were posted, but a handler
+     * receives its whole slice before the next handler receives any of the batch.
+     *
+     * @param notifications The notifications that were posted, in order.
+     * @param registrations The registrations matching each notification, indexed as the notifications are.
+     */
+    void dispatchBatch(List<Notification> notifications, Registration[][] registrations) {
+        Map<Registration, List<Notification>> slices = new LinkedHashMap<Registration, List<Notification>>();
+        int runStart = 0;
+        for (int i = 1; i <= notifications.size(); i++) {
+            if (i < notifications.size() && registrations[i] == registrations[runStart]) {
+                continue;
+            }
+            List<Notification> run = notifications.subList(runStart, i);
+            for (Registration curRegistration : registrations[runStart]) {
+                List<Notification> slice = slices.get(curRegistration);
+                if (slice == null) {
+                    slice = new ArrayList<Notification>();
+                    slices.put(curRegistration, slice);
+                }
+                slice.addAll(run);
+            }
+            runStart = i;
+        }
+
+        for (Map.Entry<Registration, List<Notification>> curSlice : slices.entrySet()) {
+            deliverSlice(curSlice.getKey(), Collections.unmodifiableList(curSlice.getValue()));
+        }
+    }
+
+    /**
+     * Delivers a registration's slice of a batch.  The default engine delivers it on the posting thread.
+     *
+     * @param registration The registration that the slice is delivered to.
+     * @param slice        The notifications of the batch that matched the registration, in the order they were posted.
+     */
+    void deliverSlice(Registration registration, List<Notification> slice) {
+        registration.deliverBatch(slice);
+    }
+
+    /**
+     * Returns the number of notifications that the engine has accepted but not yet delivered.
+     */
+    int getQueueDepth() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of notifications that were posted while the engine's queue was full.
+     */
+    long getOverflowCount() {
+        return 0;
+    }
+
+    /**
+     * Stops the engine.  Notifications that have already been accepted by the engine are still delivered.
+     */
+    void shutdown() {
+    }
+}
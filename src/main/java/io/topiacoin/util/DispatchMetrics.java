@@ -0,0 +1,131 @@
+package io.topiacoin.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Counts the notifications posted to a Notification Center, in total and per notification name and classifier.
+ * <p>
+ * Counting a post looks up its counter in concurrent maps keyed by the notification name and classifier, and then
+ * increments a {@link StripedCounter}.  Neither step takes a lock or allocates once the counter exists.  The number of
+ * name and classifier combinations that are counted individually is limited, so that applications that post many
+ * distinct names cannot grow the metrics without bound.  Posts to combinations beyond the limit are only included in
+ * the total, and in the untracked count.
+ */
+final class DispatchMetrics {
+
+    static final int MAX_TRACKED_TOPICS = 1024;
+
+    private final ConcurrentMap<String, NameCounters> _names = new ConcurrentHashMap<String, NameCounters>();
+    private final AtomicInteger _trackedTopics = new AtomicInteger();
+    private final StripedCounter _posts = new StripedCounter();
+    private final StripedCounter _untrackedPosts = new StripedCounter();
+
+    /**
+     * Counts a post of a notification with the specified name and classifier.
+     */
+    void recordPost(String notificationName, String classifier) {
+        _posts.increment();
+
+        NameCounters nameCounters = _names.get(notificationName);
+        if (nameCounters == null) {
+            if (_trackedTopics.get() >= MAX_TRACKED_TOPICS) {
+                _untrackedPosts.increment();
+                return;
+            }
+            NameCounters newCounters = new NameCounters();
+            nameCounters = _names.putIfAbsent(notificationName, newCounters);
+            if (nameCounters == null) {
+                nameCounters = newCounters;
+            }
+        }
+
+        StripedCounter counter = nameCounters.counterFor(classifier);
+        if (counter != null) {
+            counter.increment();
+        } else {
+            _untrackedPosts.increment();
+        }
+    }
+
+    long getPostCount() {
+        return _posts.sum();
+    }
+
+    long getUntrackedPostCount() {
+        return _untrackedPosts.sum();
+    }
+
+    /**
+     * Returns the post counts of every name and classifier combination that is counted individually.
+     */
+    List<NotificationCenterStats.TopicStats> topicStats() {
+        List<NotificationCenterStats.TopicStats> topicStats = new ArrayList<NotificationCenterStats.TopicStats>();
+        for (Map.Entry<String, NameCounters> nameEntry : _names.entrySet()) {
+            StripedCounter nullClassifier = nameEntry.getValue()._nullClassifier.get();
+            if (nullClassifier != null) {
+                topicStats.add(new NotificationCenterStats.TopicStats(nameEntry.getKey(), null, nullClassifier.sum()));
+            }
+            for (Map.Entry<String, StripedCounter> classifierEntry : nameEntry.getValue()._byClassifier.entrySet()) {
+                topicStats.add(new NotificationCenterStats.TopicStats(nameEntry.getKey(), classifierEntry.getKey(),
+                        classifierEntry.getValue().sum()));
+            }
+        }
+        return topicStats;
+    }
+
+    /**
+     * Reserves one of the individually counted topics, returning false if the limit has been reached.
+     */
+    private boolean reserveTopic() {
+        int tracked;
+        do {
+            tracked = _trackedTopics.get();
+            if (tracked >= MAX_TRACKED_TOPICS) {
+                return false;
+            }
+        } while (!_trackedTopics.compareAndSet(tracked, tracked + 1));
+        return true;
+    }
+
+    /**
+     * The counters of a single notification name, one for each classifier it was posted with.
+     */
+    private class NameCounters {
+        private final AtomicReference<StripedCounter> _nullClassifier = new AtomicReference<StripedCounter>();
+        private final ConcurrentMap<String, StripedCounter> _byClassifier = new ConcurrentHashMap<String, StripedCounter>();
+
+        /**
+         * Returns the counter for the classifier, creating it if necessary, or null if no more topics can be tracked.
+         */
+        StripedCounter counterFor(String classifier) {
+            if (classifier == null) {
+                StripedCounter counter = _nullClassifier.get();
+                if (counter == null && reserveTopic()) {
+                    if (!_nullClassifier.compareAndSet(null, new StripedCounter())) {
+                        _trackedTopics.decrementAndGet();
+                    }
+                    counter = _nullClassifier.get();
+                }
+                return counter;
+            }
+
+            StripedCounter counter = _byClassifier.get(classifier);
+            if (counter == null && reserveTopic()) {
+                StripedCounter newCounter = new StripedCounter();
+                counter = _byClassifier.putIfAbsent(classifier, newCounter);
+                if (counter == null) {
+                    counter = newCounter;
+                } else {
+                    _trackedTopics.decrementAndGet();
+                }
+            }
+            return counter;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package io.topiacoin.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable snapshot of the Notification Center's registrations, together with a dispatch index that maps every
+ * notification name and classifier to the handlers that are to receive it.
+ * <p>
+ * The index is computed when the snapshot is created, so resolving the handlers for a notification takes a lookup on
+ * the notification name followed by a lookup on the classifier, and allocates nothing.  Each resolved array has already
+ * had duplicate handlers removed, and lists the handlers in delivery order: those registered for the exact name and
+ * classifier first, then those registered for the name only, then those registered for the classifier only.
+ * <p>
+ * Registrations whose notification name is a hierarchical pattern, such as "chain.block.*", are held in a
+ * {@link TopicTrie}.  The first time a name is posted, the trie is searched for the patterns that match it, and the
+ * resolved handler arrays for that name are cached in the table.  Later posts of the same name are resolved from the
+ * cache in a single pass, however many patterns match it.
+ * <p>
+ * The table also holds the topics that have been interned with the Notification Center.  The registrations for each
+ * topic are resolved when the table is created and stored in an array indexed by topic ID, so notifications posted
+ * with a {@link TopicId} are dispatched without any hashing.
+ * <p>
+ * Registration changes never modify a table.  Instead, a new table is built from the updated registrations and
+ * published in place of the old one.  The registrations are also indexed by the hash code of their handler, so that
+ * the registrations of a handler that is being removed are found without examining every registration, and removing a
+ * handler that is not registered leaves the table as it is.  The index holds no references to the handlers themselves,
+ * so weakly registered handlers can still be garbage collected.
+ */
+final class DispatchTable {
+
+    static final Registration[] NO_REGISTRATIONS = new Registration[0];
+
+    static final DispatchTable EMPTY = new DispatchTable(NO_REGISTRATIONS, new TopicId[0]);
+
+    /**
+     * The maximum number of concrete notification names whose wildcard matches are cached.  Names beyond this limit are
+     * matched against the topic trie on every post.
+     */
+    private static final int MAX_CACHED_WILDCARD_NAMES = 10000;
+
+    private final Registration[] _registrations;
+    private final Map<Integer, List<Registration>> _registrationsByHandlerHash;
+
+    // The registrations, grouped by the kind of match they make.
+    private final Map<String, Map<String, List<Registration>>> _exact;
+    private final Map<String, List<Registration>> _nameOnly;
+    private final Map<String, List<Registration>> _classifierOnly;
+    private final List<Registration> _neither;
+    private final TopicTrie _wildcards;
+
+    private final Map<String, NameEntry> _nameEntries;
+    private final NameEntry _unknownNameEntry;
+    private final ConcurrentMap<String, NameEntry> _wildcardEntries;
+
+    private final TopicId[] _topics;
+    private final Registration[][] _topicRegistrations;
+    private final Map<String, Map<String, TopicId>> _topicsByName;
+
+    /**
+     * Constructs a new Dispatch Table containing the specified registrations and topics.
+     *
+     * @param registrations The registrations, in the order they were added to the Notification Center.
+     * @param topics        The interned topics, indexed by topic ID.
+     */
+    private DispatchTable(Registration[] registrations, TopicId[] topics) {
+        _registrations = registrations;
+        _registrationsByHandlerHash = new HashMap<Integer, List<Registration>>();
+
+        _exact = new HashMap<String, Map<String, List<Registration>>>();
+        _nameOnly = new HashMap<String, List<Registration>>();
+        _classifierOnly = new HashMap<String, List<Registration>>();
+        _neither = new ArrayList<Registration>();
+        _wildcards = new TopicTrie();
+
+        for (Registration registration : registrations) {
+            listFor(_registrationsByHandlerHash, registration.getHandlerHash()).add(registration);
+
+            String name = registration.getNotificationName();
+            String classifier = registration.getClassifier();
+            if (TopicTrie.isPattern(name)) {
+                _wildcards.add(registration);
+            } else if (name != null && classifier != null) {
+                Map<String, List<Registration>> byClassifier = _exact.get(name);
+                if (byClassifier == null) {
+                    byClassifier = new HashMap<String, List<Registration>>();
+                    _exact.put(name, byClassifier);
+                }
+                listFor(byClassifier, classifier).add(registration);
+            } else if (name != null) {
+                listFor(_nameOnly, name).add(registration);
+            } else if (classifier != null) {
+                listFor(_classifierOnly, classifier).add(registration);
+            } else {
+                _neither.add(registration);
+            }
+        }
+
+        Set<String> names = new LinkedHashSet<String>(_exact.keySet());
+        names.addAll(_nameOnly.keySet());
+        _nameEntries = new HashMap<String, NameEntry>();
+        for (String name : names) {
+            _nameEntries.put(name, buildNameEntry(name));
+        }
+
+        Map<String, Registration[]> byClassifier = new HashMap<String, Registration[]>();
+        for (Map.Entry<String, List<Registration>> entry : _classifierOnly.entrySet()) {
+            byClassifier.put(entry.getKey(), merge(entry.getValue()));
+        }
+        _unknownNameEntry = new NameEntry(byClassifier, NO_REGISTRATIONS, merge(_neither));
+        _wildcardEntries = new ConcurrentHashMap<String, NameEntry>();
+
+        _topics = topics;
+        _topicRegistrations = new Registration[topics.length][];
+        _topicsByName = new HashMap<String, Map<String, TopicId>>();
+        for (TopicId topic : topics) {
+            _topicRegistrations[topic.getId()] = lookup(topic.getNotificationName(), topic.getClassifier());
+            topicsFor(_topicsByName, topic.getNotificationName()).put(topic.getClassifier(), topic);
+        }
+    }
+
+    /**
+     * Constructs a copy of the specified Dispatch Table with an additional topic.  The dispatch index of the original
+     * table is shared, as it does not depend on the topics.
+     */
+    private DispatchTable(DispatchTable original, TopicId topic) {
+        _registrations = original._registrations;
+        _registrationsByHandlerHash = original._registrationsByHandlerHash;
+        _exact = original._exact;
+        _nameOnly = original._nameOnly;
+        _classifierOnly = original._classifierOnly;
+        _neither = original._neither;
+        _wildcards = original._wildcards;
+        _nameEntries = original._nameEntries;
+        _unknownNameEntry = original._unknownNameEntry;
+        _wildcardEntries = original._wildcardEntries;
+
+        _topics = Arrays.copyOf(original._topics, original._topics.length + 1);
+        _topics[topic.getId()] = topic;
+        _topicRegistrations = Arrays.copyOf(original._topicRegistrations, _topics.length);
+        _topicRegistrations[topic.getId()] = lookup(topic.getNotificationName(), topic.getClassifier());
+        _topicsByName = new HashMap<String, Map<String, TopicId>>(original._topicsByName);
+        Map<String, TopicId> byClassifier = _topicsByName.get(topic.getNotificationName());
+        byClassifier = (byClassifier == null ?
+                new HashMap<String, TopicId>() :
+                new HashMap<String, TopicId>(byClassifier));
+        byClassifier.put(topic.getClassifier(), topic);
+        _topicsByName.put(topic.getNotificationName(), byClassifier);
+    }
+
+    /**
+     * Returns the registrations that a notification with the given name and classifier is to be delivered to.  The
+     * returned array must not be modified.
+     * <p>
+     * Names that appear in a registration are resolved from the precomputed index.  Other names are matched against the
+     * wildcard registrations the first time they are posted, and the result is cached for later posts.
+     *
+     * @param notificationName The name of the notification.
+     * @param classifier       The classifier of the notification, or null if it has no classifier.
+     *
+     * @return The registrations to deliver the notification to, in delivery order, with each handler appearing once.
+     */
+    Registration[] lookup(String notificationName, String classifier) {
+        NameEntry entry = _nameEntries.get(notificationName);
+        if (entry == null) {
+            entry = (_wildcards.isEmpty() ? _unknownNameEntry : wildcardEntryFor(notificationName));
+        }
+        if (classifier == null) {
+            return entry.nullClassifier;
+        }
+        Registration[] registrations = entry.byClassifier.get(classifier);
+        return (registrations != null ? registrations : entry.otherClassifier);
+    }
+
+    /**
+     * Returns the registrations that a notification with the given topic is to be delivered to.  If the topic was not
+     * interned by the Notification Center that owns this table, the registrations are looked up by the topic's name
+     * and classifier instead.  The returned array must not be modified.
+     *
+     * @param topic The topic of the notification.
+     *
+     * @return The registrations to deliver the notification to, in delivery order, with each handler appearing once.
+     */
+    Registration[] lookup(TopicId topic) {
+        int id = topic.getId();
+        if (id < _topics.length && _topics[id] == topic) {
+            return _topicRegistrations[id];
+        }
+        return lookup(topic.getNotificationName(), topic.getClassifier());
+    }
+
+    /**
+     * Returns the resolved registrations for the notification, using its topic if it was posted with one.
+     */
+    Registration[] lookup(Notification notification) {
+        TopicId topic = notification.getTopicId();
+        if (topic != null) {
+            return lookup(topic);
+        }
+        return lookup(notification.getNotificationName(), notification.getClassifier());
+    }
+
+    /**
+     * Returns the interned topic for the notification name and classifier, or null if it has not been interned.
+     */
+    TopicId getTopic(String notificationName, String classifier) {
+        Map<String, TopicId> byClassifier = _topicsByName.get(notificationName);
+        return (byClassifier != null ? byClassifier.get(classifier) : null);
+    }
+
+    /**
+     * Returns a new table that also contains a topic for the specified notification name and classifier.  The new
+     * topic is assigned the next available topic ID.
+     */
+    DispatchTable withTopic(String notificationName, String classifier) {
+        return new DispatchTable(this, new TopicId(_topics.length, notificationName, classifier));
+    }
+
+    /**
+     * Returns every registration in the table, in the order they were added.  The returned array must not be modified.
+     */
+    Registration[] getRegistrations() {
+        return _registrations;
+    }
+
+    /**
+     * Returns a new table containing the registrations of this table plus the specified registration.
+     */
+    DispatchTable withRegistration(Registration registration) {
+        Registration[] registrations = Arrays.copyOf(_registrations, _registrations.length + 1);
+        registrations[registrations.length - 1] = registration;
+        return new DispatchTable(registrations, _topics);
+    }
+
+    /**
+     * Returns the registrations of the specified handler, found through the index of registrations by handler.  If
+     * removeAll is set, every registration of the handler is returned.  Otherwise, only the first registration matching
+     * the handler, notification name and classifier is returned.  Passing them to {@link #withoutRegistrations(Set)}
+     * removes them from the table.
+     */
+    Set<Registration> registrationsFor(NotificationHandler handler, boolean removeAll, String notificationName,
+                                       String classifier) {
+        List<Registration> candidates = _registrationsByHandlerHash.get(handler.hashCode());
+        if (candidates == null) {
+            return Collections.<Registration>emptySet();
+        }
+        Set<Registration> registrations = new HashSet<Registration>();
+        for (Registration registration : candidates) {
+            if (removeAll ? registration.isFor(handler) : registration.matches(handler, notificationName, classifier)) {
+                registrations.add(registration);
+                if (!removeAll) {
+                    break;
+                }
+            }
+        }
+        return registrations;
+    }
+
+    /**
+     * Returns a new table without the specified registrations.
+     *
+     * @return The updated table, or this table if none of the registrations are in it.
+     */
+    DispatchTable withoutRegistrations(Set<Registration> removed) {
+        if (removed.isEmpty()) {
+            return this;
+        }
+        List<Registration> remaining = new ArrayList<Registration>(_registrations.length);
+        for (Registration registration : _registrations) {
+            if (!removed.contains(registration)) {
+                remaining.add(registration);
+            }
+        }
+        if (remaining.size() == _registrations.length) {
+            return this;
+        }
+        return new DispatchTable(remaining.toArray(new Registration[remaining.size()]), _topics);
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * Returns the entry for a name that does not appear in any registration, matching it against the wildcard
+     * registrations if it has not been seen before.
+     */
+    private NameEntry wildcardEntryFor(String notificationName) {
+        NameEntry entry = _wildcardEntries.get(notificationName);
+        if (entry == null) {
+            entry = buildNameEntry(notificationName);
+            if (_wildcardEntries.size() < MAX_CACHED_WILDCARD_NAMES) {
+                NameEntry existing = _wildcardEntries.putIfAbsent(notificationName, entry);
+                if (existing != null) {
+                    entry = existing;
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Resolves the registrations for every classifier of a concrete notification name, including the wildcard
+     * registrations whose pattern matches the name.  Within each resolved array, registrations for the exact name come
+     * before those for a matching pattern, and both come before registrations for the classifier only.
+     */
+    private NameEntry buildNameEntry(String name) {
+        Map<String, List<Registration>> exactForName = _exact.get(name);
+        List<Registration> nameOnlyForName = _nameOnly.get(name);
+        if (exactForName == null) {
+            exactForName = new HashMap<String, List<Registration>>();
+        }
+
+        // Split the matching wildcard registrations, in registration order, by whether they specify a classifier.
+        Map<String, List<Registration>> wildcardExact = new HashMap<String, List<Registration>>();
+        List<Registration> wildcardNameOnly = new ArrayList<Registration>();
+        if (!_wildcards.isEmpty()) {
+            Set<Registration> matches = new HashSet<Registration>();
+            _wildcards.match(name, matches);
+            for (Registration registration : _registrations) {
+                if (matches.contains(registration)) {
+                    if (registration.getClassifier() != null) {
+                        listFor(wildcardExact, registration.getClassifier()).add(registration);
+                    } else {
+                        wildcardNameOnly.add(registration);
+                    }
+                }
+            }
+        }
+
+        if (exactForName.isEmpty() && nameOnlyForName == null && wildcardExact.isEmpty() && wildcardNameOnly.isEmpty()) {
+            return _unknownNameEntry;
+        }
+
+        Set<String> classifiers = new LinkedHashSet<String>(exactForName.keySet());
+        classifiers.addAll(wildcardExact.keySet());
+        classifiers.addAll(_classifierOnly.keySet());
+        Map<String, Registration[]> byClassifier = new HashMap<String, Registration[]>();
+        for (String classifier : classifiers) {
+            byClassifier.put(classifier, merge(exactForName.get(classifier), wildcardExact.get(classifier),
+                    nameOnlyForName, wildcardNameOnly, _classifierOnly.get(classifier)));
+        }
+
+        // Registrations without a name or classifier only match notifications posted without a classifier.
+        return new NameEntry(byClassifier, merge(nameOnlyForName, wildcardNameOnly),
+                merge(nameOnlyForName, wildcardNameOnly, _neither));
+    }
+
+    private static <K> List<Registration> listFor(Map<K, List<Registration>> map, K key) {
+        List<Registration> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Registration>();
+            map.put(key, list);
+        }
+        return list;
+    }
+
+    private static Map<String, TopicId> topicsFor(Map<String, Map<String, TopicId>> map, String key) {
+        Map<String, TopicId> topics = map.get(key);
+        if (topics == null) {
+            topics = new HashMap<String, TopicId>();
+            map.put(key, topics);
+        }
+        return topics;
+    }
+
+    /**
+     * Merges the registration lists into a single array in which each handler appears only once.  When a handler
+     * appears in more than one list, the first registration found is kept.  Registrations whose handler has been
+     * garbage collected are left out.
+     */
+    @SafeVarargs
+    private static Registration[] merge(List<Registration>... lists) {
+        Map<NotificationHandler, Registration> merged = new LinkedHashMap<NotificationHandler, Registration>();
+        for (List<Registration> list : lists) {
+            if (list != null) {
+                for (Registration registration : list) {
+                    NotificationHandler handler = registration.getHandler();
+                    if (handler != null && !merged.containsKey(handler)) {
+                        merged.put(handler, registration);
+                    }
+                }
+            }
+        }
+        if (merged.isEmpty()) {
+            return NO_REGISTRATIONS;
+        }
+        return merged.values().toArray(new Registration[merged.size()]);
+    }
+
+    /**
+     * The resolved registrations for a single notification name.
+     */
+    private static class NameEntry {
+
+        /** The registrations for notifications posted with one of the classifiers that appear in a registration. */
+        final Map<String, Registration[]> byClassifier;
+
+        /** The registrations for notifications posted with any other classifier. */
+        final Registration[] otherClassifier;
+
+        /** The registrations for notifications posted without a classifier. */
+        final Registration[] nullClassifier;
+
+        NameEntry(Map<String, Registration[]> byClassifier, Registration[] otherClassifier, Registration[] nullClassifier) {
+            this.byClassifier = byClassifier;
+            this.otherClassifier = otherClassifier;
+            this.nullClassifier = nullClassifier;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package io.topiacoin.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options that change how notifications are delivered to a handler, passed to
+ * {@link NotificationCenter#addHandler(NotificationHandler, String, String, java.util.concurrent.Executor, HandlerOptions)}.
+ * The options are read when the handler is added, so changing them afterwards does not affect existing registrations.
+ */
+public final class HandlerOptions {
+
+    private boolean _coalescing;
+    private boolean _weak;
+    private boolean _deliverLatest;
+    private long _debounceNanos;
+    private long _throttleNanos;
+    private boolean _throttleLeading;
+    private boolean _throttleTrailing;
+    private int _rateLimitPermits;
+    private long _rateLimitWindowNanos;
+
+    /**
+     * Configures whether the handler only receives the latest value of each notification.  A coalescing handler that
+     * is registered with an executor has at most one notification pending for each notification name and classifier.
+     * If a notification is posted while an earlier one with the same name and classifier is still waiting for the
+     * executor, the waiting notification is replaced in place, so a handler that falls behind skips the intermediate
+     * values instead of processing every one of them.
+     * <p>
+     * Coalescing only affects handlers that are registered with an executor, since notifications delivered on the
+     * dispatching thread are never pending.  Notifications posted in a batch are coalesced one by one, so a coalescing
+     * {@link BatchNotificationHandler} receives them through
+     * {@link BatchNotificationHandler#handleNotification(Notification)}.
+     *
+     * @param coalescing True to deliver only the latest value of each notification name and classifier.
+     *
+     * @return These options.
+     */
+    public HandlerOptions coalescing(boolean coalescing) {
+        _coalescing = coalescing;
+        return this;
+    }
+
+    /**
+     * Configures whether the Notification Center refers to the handler weakly.  A weakly registered handler does not
+     * stay reachable just because it is registered, and once it has been garbage collected, its registrations are
+     * removed from the center without a call to
+     * {@link NotificationCenter#removeHandler(NotificationHandler)}.  This suits handlers whose lifetime is managed
+     * elsewhere, such as UI components and per-connection sessions.
+     * <p>
+     * The caller must keep the handler reachable for as long as it is to receive notifications.  In particular, an
+     * anonymous handler that is only referenced by its registration stops receiving notifications at an unpredictable
+     * point.
+     *
+     * @param weak True to register the handler weakly.
+     *
+     * @return These options.
+     */
+    public HandlerOptions weak(boolean weak) {
+        _weak = weak;
+        return this;
+    }
+
+    /**
+     * Configures whether the handler receives the latest notifications it is registered for as soon as it is added.
+     * When the handler is added to a center built with {@link NotificationCenter.Builder#sticky(int)}, the center
+     * delivers it the cached notification for each notification name and classifier that the registration matches,
+     * so that a component which starts late learns the current state without polling for it.  Centers that are not
+     * sticky ignore this option.
+     * <p>
+     * The cached notifications are delivered on the thread that adds the handler, or handed to the handler's executor
+     * if it has one.  A notification posted while the handler is being added may be delivered to it twice.
+     *
+     * @param deliverLatest True to deliver the cached notifications to the handler when it is added.
+     *
+     * @return These options.
+     */
+    public HandlerOptions deliverLatest(boolean deliverLatest) {
+        _deliverLatest = deliverLatest;
+        return this;
+    }
+
+    /**
+     * Configures the handler to be debounced.  A debounced handler is only called once notifications stop arriving:
+     * each notification restarts the quiet period, and once a whole quiet period passes without one, the handler
+     * receives the latest notification.  The notifications before it are dropped.  This suits work such as
+     * recomputing a balance, which only needs the final state after a burst of changes.
+     * <p>
+     * Held back notifications are delivered by the Notification Center's timer thread, or handed to the handler's
+     * executor if it has one.  A handler has at most one rate-shaping policy, so this replaces any throttle or rate limit
+     * set earlier.
+     *
+     * @param quietPeriod The time that must pass without a notification before the handler is called.
+     * @param unit        The unit of the quiet period.
+     *
+     * @return These options.
+     *
+     * @throws IllegalArgumentException If the quiet period is not positive, or the unit is null.
+     */
+    public HandlerOptions debounce(long quietPeriod, TimeUnit unit) {
+        if (quietPeriod < 1) {
+            throw new IllegalArgumentException("Debounce quiet period must be positive.");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("Debounce time unit must be specified.");
+        }
+        clearRateShaping();
+        _debounceNanos = unit.toNanos(quietPeriod);
+        return this;
+    }
+
+    /**
+     * Configures the handler to be throttled, so that it is called at most once per interval.  On the leading edge,
+     * the first notification after a quiet interval is delivered immediately, and starts an interval.  On the trailing
+     * edge, the latest notification that arrived during an interval is delivered when the interval ends, and starts
+     * another one.  Any other notifications are dropped.
+     * <p>
+     * Trailing deliveries are made by the Notification Center's timer thread, or handed to the handler's executor if
+     * it has one.  A handler has at most one rate-shaping policy, so this replaces any debounce or rate limit set
+     * earlier.
+     *
+     * @param interval The minimum time between calls to the handler.
+     * @param unit     The unit of the interval.
+     * @param leading  True to deliver the first notification of an interval immediately.
+     * @param trailing True to deliver the latest notification of an interval when the interval ends.
+     *
+     * @return These options.
+     *
+     * @throws IllegalArgumentException If the interval is not positive, the unit is null, or neither edge is enabled.
+     */
+    public HandlerOptions throttle(long interval, TimeUnit unit, boolean leading, boolean trailing) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Throttle interval must be positive.");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("Throttle time unit must be specified.");
+        }
+        if (!leading && !trailing) {
+            throw new IllegalArgumentException("Throttle must deliver on the leading edge, the trailing edge, or both.");
+        }
+        clearRateShaping();
+        _throttleNanos = unit.toNanos(interval);
+        _throttleLeading = leading;
+        _throttleTrailing = trailing;
+        return this;
+    }
+
+    /**
+     * Configures the handler to be rate limited, so that it is called at most the specified number of times within any
+     * window of time.  Notifications beyond the limit are dropped, rather than delayed, and the window slides, so the
+     * limit holds over every span of that length rather than over fixed periods.
+     * <p>
+     * A handler has at most one rate-shaping policy, so this replaces any debounce or throttle set earlier.
+     *
+     * @param permits The maximum number of calls to the handler within a window.
+     * @param window  The length of the window.
+     * @param unit    The unit of the window.
+     *
+     * @return These options.
+     *
+     * @throws IllegalArgumentException If the number of permits or the window is not positive, or the unit is null.
+     */
+    public HandlerOptions rateLimit(int permits, long window, TimeUnit unit) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("Rate limit permits must be positive.");
+        }
+        if (window < 1) {
+            throw new IllegalArgumentException("Rate limit window must be positive.");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("Rate limit time unit must be specified.");
+        }
+        clearRateShaping();
+        _rateLimitPermits = permits;
+        _rateLimitWindowNanos = unit.toNanos(window);
+        return this;
+    }
+
+    boolean isCoalescing() {
+        return _coalescing;
+    }
+
+    boolean isWeak() {
+        return _weak;
+    }
+
+    boolean isDeliveringLatest() {
+        return _deliverLatest;
+    }
+
+    long getDebounceNanos() {
+        return _debounceNanos;
+    }
+
+    long getThrottleNanos() {
+        return _throttleNanos;
+    }
+
+    boolean isThrottleLeading() {
+        return _throttleLeading;
+    }
+
+    boolean isThrottleTrailing() {
+        return _throttleTrailing;
+    }
+
+    int getRateLimitPermits() {
+        return _rateLimitPermits;
+    }
+
+    long getRateLimitWindowNanos() {
+        return _rateLimitWindowNanos;
+    }
+
+    /**
+     * Returns true if the options hold notifications back to deliver them later, which requires a timer.
+     */
+    boolean isDelayingDelivery() {
+        return _debounceNanos > 0 || _throttleNanos > 0;
+    }
+
+    // -------- Internal Methods --------
+
+    private void clearRateShaping() {
+        _debounceNanos = 0;
+        _throttleNanos = 0;
+        _throttleLeading = false;
+        _throttleTrailing = false;
+        _rateLimitPermits = 0;
+        _rateLimitWindowNanos = 0;
+    }
+}
@@ -0,0 +1,66 @@
+package io.topiacoin.util;
+
+/**
+ * A notification read back from a {@link NotificationJournal}.
+ * <p>
+ * The notification name and classifier are decoded when the record is read, but the payload is only decoded, directly
+ * from the journal's mapped memory, the first time it is requested.  A replay handler that filters records by name or
+ * classifier therefore does not pay for decoding the payloads of the records it skips.
+ */
+public final class JournalRecord {
+
+    private final long offset;
+    private final long nextOffset;
+    private final Notification notification;
+
+    JournalRecord(long offset, long nextOffset, Notification notification) {
+        this.offset = offset;
+        this.nextOffset = nextOffset;
+        this.notification = notification;
+    }
+
+    /**
+     * Returns the journal offset of the record.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the journal offset immediately after the record, from which a later replay can resume.
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public String getNotificationName() {
+        return notification.getNotificationName();
+    }
+
+    public String getClassifier() {
+        return notification.getClassifier();
+    }
+
+    /**
+     * Returns the notification's payload, decoding it on the first call.  The payload is frozen.
+     */
+    public NotificationPayload getPayload() {
+        return notification.getPayload();
+    }
+
+    /**
+     * Returns the record as a Notification.  Its payload is decoded when it is first requested.
+     */
+    public Notification toNotification() {
+        return notification;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalRecord{" +
+                "offset=" + offset +
+                ", notificationName='" + getNotificationName() + '\'' +
+                ", classifier='" + getClassifier() + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,15 @@
+package io.topiacoin.util;
+
+/**
+ * Receives the records of a {@link NotificationJournal} as they are replayed.
+ */
+public interface JournalReplayHandler {
+
+    /**
+     * Handles a single journal record.  Records are replayed in journal order on the thread that called
+     * {@link NotificationJournal#replay(long, JournalReplayHandler)}.
+     *
+     * @param record The record being replayed.
+     */
+    void handleRecord(JournalRecord record);
+}
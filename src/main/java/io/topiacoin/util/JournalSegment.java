@@ -0,0 +1,218 @@
+package io.topiacoin.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * A single memory-mapped file of a {@link NotificationJournal}.
+ * <p>
+ * A segment is created at its full size and mapped once.  Records are appended one after another, each made up of the
+ * length of its body, a CRC32 checksum of the body, and the body itself.  The unwritten remainder of the segment is
+ * zero filled, so a zero length marks the end of the segment's records.  Writers reserve space for a record by
+ * advancing the segment's reserved position atomically, so records from different threads never overlap, and no lock
+ * is taken to append.
+ * <p>
+ * The segment's file is named after the journal offset of its first byte, so that segments sort in journal order.
+ */
+final class JournalSegment {
+
+    static final String FILE_SUFFIX = ".journal";
+
+    /**
+     * The size of the length and checksum that precede each record body.
+     */
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private final File _file;
+    private final long _baseOffset;
+    private final MappedByteBuffer _buffer;
+    private final AtomicInteger _reserved;
+    private final AtomicInteger _pendingWrites = new AtomicInteger();
+
+    private JournalSegment(File file, long baseOffset, MappedByteBuffer buffer, int reserved) {
+        _file = file;
+        _baseOffset = baseOffset;
+        _buffer = buffer;
+        _reserved = new AtomicInteger(reserved);
+    }
+
+    /**
+     * Creates a new, empty segment file starting at the specified journal offset.
+     *
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    static JournalSegment create(File directory, long baseOffset, int capacity) throws IOException {
+        File file = new File(directory, String.format("%020d%s", baseOffset, FILE_SUFFIX));
+        return new JournalSegment(file, baseOffset, map(file, capacity), 0);
+    }
+
+    /**
+     * Opens an existing segment file.  The last segment of a journal is scanned for the end of its valid records, so
+     * that appending can continue there.  Earlier segments are opened sealed, since nothing more is appended to them.
+     *
+     * @throws IOException If the file cannot be mapped.
+     * @throws IllegalArgumentException If the file is not named like a journal segment.
+     */
+    static JournalSegment open(File file, boolean last) throws IOException {
+        String name = file.getName();
+        long baseOffset;
+        try {
+            baseOffset = Long.parseLong(name.substring(0, name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a journal segment: " + file, e);
+        }
+
+        MappedByteBuffer buffer = map(file, (int) file.length());
+        if (!last) {
+            return new JournalSegment(file, baseOffset, buffer, buffer.capacity());
+        }
+        byte[] scratch = new byte[4096];
+        int position = 0;
+        int bodyLength;
+        while ((bodyLength = validRecordLength(buffer, position, scratch)) > 0) {
+            position += RECORD_HEADER_SIZE + bodyLength;
+        }
+        return new JournalSegment(file, baseOffset, buffer, position);
+    }
+
+    File getFile() {
+        return _file;
+    }
+
+    long getBaseOffset() {
+        return _baseOffset;
+    }
+
+    int getCapacity() {
+        return _buffer.capacity();
+    }
+
+    /**
+     * Reserves space for a record with a body of the specified size, returning its position in the segment, or -1 if
+     * the segment does not have room for it.  A successful reservation must be followed by a call to
+     * {@link #write(int, ByteBuffer)}.
+     */
+    int reserve(int bodySize) {
+        int recordSize = RECORD_HEADER_SIZE + bodySize;
+        // The write is counted as pending before the space is reserved, so that a sealed segment that has no pending
+        // writes is known to be complete.
+        _pendingWrites.incrementAndGet();
+        int reserved;
+        do {
+            reserved = _reserved.get();
+            if (reserved + recordSize > _buffer.capacity()) {
+                _pendingWrites.decrementAndGet();
+                return -1;
+            }
+        } while (!_reserved.compareAndSet(reserved, reserved + recordSize));
+        return reserved;
+    }
+
+    /**
+     * Prevents any further space from being reserved in the segment.
+     */
+    void seal() {
+        _reserved.set(_buffer.capacity());
+    }
+
+    /**
+     * Returns true if some reserved records have not been written yet.
+     */
+    boolean hasPendingWrites() {
+        return _pendingWrites.get() > 0;
+    }
+
+    /**
+     * Returns the position up to which space has been reserved.
+     */
+    int getReservedPosition() {
+        return _reserved.get();
+    }
+
+    /**
+     * Writes a record into space reserved for it.  The length is written last, so that a reader never mistakes a
+     * partially written record for the end of the segment's data followed by garbage.
+     *
+     * @param position The position returned by {@link #reserve(int)}.
+     * @param body     The body of the record, between its position and limit.
+     */
+    void write(int position, ByteBuffer body) {
+        int bodyLength = body.remaining();
+
+        CRC32 crc = new CRC32();
+        if (body.hasArray()) {
+            crc.update(body.array(), body.arrayOffset() + body.position(), bodyLength);
+        } else {
+            for (int i = body.position(); i < body.limit(); i++) {
+                crc.update(body.get(i));
+            }
+        }
+
+        ByteBuffer target = _buffer.duplicate();
+        target.position(position + RECORD_HEADER_SIZE);
+        target.put(body);
+        target.putInt(position + 4, (int) crc.getValue());
+        target.putInt(position, bodyLength);
+        _pendingWrites.decrementAndGet();
+    }
+
+    /**
+     * Returns a view of the segment's mapped bytes with its own position and limit.
+     */
+    ByteBuffer readBuffer() {
+        return _buffer.duplicate();
+    }
+
+    /**
+     * Forces the segment's modified bytes to the storage device.
+     */
+    void force() {
+        _buffer.force();
+    }
+
+    /**
+     * Returns the body length of the record at the position if it is complete and its checksum matches, or zero if
+     * there is no valid record at the position.
+     *
+     * @param buffer  The segment's bytes.
+     * @param position The position of the record.
+     * @param scratch  A buffer that the body is copied through, in chunks, to compute the checksum.
+     */
+    static int validRecordLength(ByteBuffer buffer, int position, byte[] scratch) {
+        if (position + RECORD_HEADER_SIZE > buffer.capacity()) {
+            return 0;
+        }
+        int bodyLength = buffer.getInt(position);
+        if (bodyLength <= 0 || position + RECORD_HEADER_SIZE + bodyLength > buffer.capacity()) {
+            return 0;
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(position + RECORD_HEADER_SIZE);
+        int remaining = bodyLength;
+        while (remaining > 0) {
+            int chunk = Math.min(remaining, scratch.length);
+            body.get(scratch, 0, chunk);
+            crc.update(scratch, 0, chunk);
+            remaining -= chunk;
+        }
+        return ((int) crc.getValue() == buffer.getInt(position + 4) ? bodyLength : 0);
+    }
+
+    private static MappedByteBuffer map(File file, int capacity) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // The mapping remains valid after the channel is closed.
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package io.topiacoin.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of handler latencies, in nanoseconds.
+ * <p>
+ * Like an HdrHistogram, the histogram is log-linear: each power of two range of values is divided into a fixed number
+ * of equally sized buckets, so every recorded value is counted with the same relative precision (within 12.5%) no
+ * matter how large it is.  Recording a value is a handful of shifts and a single atomic increment, and takes no locks.
+ * Values larger than about eighteen minutes are counted in the highest bucket.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this are counted exactly, one bucket per value.
+     */
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int LINEAR_EXPONENT = SUB_BUCKET_BITS + 1;
+
+    private static final int MAX_EXPONENT = 39;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - LINEAR_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray _buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final StripedCounter _totalNanos = new StripedCounter();
+    private final AtomicLong _maxNanos = new AtomicLong();
+
+    /**
+     * Records a single latency.
+     *
+     * @param nanos The latency in nanoseconds.  Negative values are recorded as zero.
+     */
+    void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        _buckets.incrementAndGet(bucketIndex(value));
+        _totalNanos.add(value);
+
+        long max = _maxNanos.get();
+        while (value > max && !_maxNanos.compareAndSet(max, value)) {
+            max = _maxNanos.get();
+        }
+    }
+
+    /**
+     * Returns a point in time copy of the histogram.  The copy is not atomic if values are being recorded
+     * concurrently, but each bucket count is exact.
+     */
+    NotificationCenterStats.LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = _buckets.get(i);
+        }
+        return new NotificationCenterStats.LatencySnapshot(counts, _totalNanos.sum(), _maxNanos.get());
+    }
+
+    /**
+     * Returns the index of the bucket that counts the specified value.
+     */
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the highest value that is counted by the bucket with the specified index.
+     */
+    static long highestValueInBucket(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_EXPONENT;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowest = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -1,13 +1,43 @@
 package io.topiacoin.util;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * A notification that is posted to, and delivered by, the Notification Center.
+ * <p>
+ * Notifications created by callers are immutable and may be kept for as long as they are needed.  Notifications that
+ * are delivered by the Notification Center's pooled posting path, or by a ring buffer engine, are reusable: they are
+ * owned by the Notification Center, and are refilled for another post as soon as the handler callback returns.  A
+ * handler that needs to keep such a notification after its callback has returned must call {@link #retain()}, and keep
+ * the notification that it returns.
+ * <p>
+ * The information carried by a notification can be read either as a Map, with {@link #getNotificationInfo()}, or as a
+ * typed {@link NotificationPayload}, with {@link #getPayload()}.  Whichever form the notification was not created with is
+ * derived from the other the first time it is requested.  Notifications decoded by a {@link NotificationCodec} decode
+ * their information the first time it is requested in either form.
+ */
 public class Notification {
 
     private String notificationName;
     private String classifier ;
-    private Map<String, Object> notificationInfo;
+    private volatile Map<String, Object> notificationInfo;
+    private volatile NotificationPayload payload;
+    private volatile ByteBuffer encodedPayload;
+    private TopicId topicId;
+    private boolean reusable;
+    private boolean retained;
+    private boolean contentBorrowed;
+    private Object origin;
+
+    /**
+     * Constructs an empty, reusable Notification.  Reusable notifications are owned by the Notification Center, which
+     * refills them in place for successive posts.
+     */
+    Notification() {
+        this.reusable = true;
+    }
 
     public Notification(String notificationName, String classifier, Map<String, Object> notificationInfo) {
         if (notificationName == null || notificationName.trim().length() == 0) {
@@ -20,6 +50,61 @@ public class Notification {
         }
     }
 
+    public Notification(TopicId topicId, Map<String, Object> notificationInfo) {
+        this(topicId.getNotificationName(), topicId.getClassifier(), notificationInfo);
+        this.topicId = topicId;
+    }
+
+    /**
+     * Creates a Notification carrying a typed payload.  The payload is not copied.  Instead, it becomes read only, and
+     * must not be refilled by the caller.
+     *
+     * @param notificationName The name of the notification.  This cannot be null.
+     * @param classifier       The optional classifier of the notification.
+     * @param payload          The typed payload carried by the notification.
+     *
+     * @return The new Notification.
+     *
+     * @throws IllegalArgumentException If the notification name is not specified.
+     */
+    public static Notification withPayload(String notificationName, String classifier, NotificationPayload payload) {
+        Notification notification = new Notification(notificationName, classifier, (Map<String, Object>) null);
+        if (payload != null) {
+            notification.payload = payload.freeze();
+        }
+        return notification;
+    }
+
+    /**
+     * Creates a Notification for the given topic carrying a typed payload.  The payload is not copied.  Instead, it
+     * becomes read only, and must not be refilled by the caller.
+     *
+     * @param topicId The topic of the notification.
+     * @param payload The typed payload carried by the notification.
+     *
+     * @return The new Notification.
+     */
+    public static Notification withPayload(TopicId topicId, NotificationPayload payload) {
+        Notification notification = withPayload(topicId.getNotificationName(), topicId.getClassifier(), payload);
+        notification.topicId = topicId;
+        return notification;
+    }
+
+    /**
+     * Creates a Notification whose payload is decoded from its {@link NotificationCodec encoded form} the first time
+     * it is requested.
+     *
+     * @param notificationName The name of the notification.
+     * @param classifier       The optional classifier of the notification.
+     * @param encodedPayload   The encoded payload, between the buffer's position and limit, or null if the
+     *                         notification carries no information.
+     */
+    static Notification withEncodedPayload(String notificationName, String classifier, ByteBuffer encodedPayload) {
+        Notification notification = new Notification(notificationName, classifier, (Map<String, Object>) null);
+        notification.encodedPayload = encodedPayload;
+        return notification;
+    }
+
     public String getNotificationName() {
         return notificationName;
     }
@@ -28,7 +113,169 @@ public class Notification {
         return classifier;
     }
 
+    /**
+     * Returns the notification info as a Map, or null if the notification carries no information.  If the notification
+     * was created with a typed payload, the Map is a read-only view of the payload.
+     */
     public Map<String, Object> getNotificationInfo() {
-        return notificationInfo;
+        Map<String, Object> info = notificationInfo;
+        if (info == null && (payload != null || encodedPayload != null)) {
+            info = getPayload().asMap();
+            notificationInfo = info;
+        }
+        return info;
+    }
+
+    /**
+     * Returns the notification info as a typed payload.  If the notification was created with a Map, the payload is
+     * built from the Map's entries.  If the notification carries no information, an empty payload is returned.
+     */
+    public NotificationPayload getPayload() {
+        NotificationPayload currentPayload = payload;
+        if (currentPayload == null) {
+            Map<String, Object> info = notificationInfo;
+            ByteBuffer encoded = encodedPayload;
+            if (info != null) {
+                currentPayload = NotificationPayload.fromMap(info);
+            } else if (encoded != null) {
+                currentPayload = NotificationCodec.decodePayload(encoded.duplicate());
+            } else {
+                return NotificationPayload.EMPTY;
+            }
+            payload = currentPayload;
+        }
+        return currentPayload;
+    }
+
+    public TopicId getTopicId() {
+        return topicId;
+    }
+
+    /**
+     * Returns the bridge that brought this notification in from another process, or null if it was posted locally.
+     */
+    Object getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Records the bridge that brought this notification in from another process, so that the bridge does not send it
+     * back.
+     */
+    void setOrigin(Object origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * Returns a Notification that remains valid after the handler callback that received it has returned.
+     * <p>
+     * For a notification created by the caller this is the notification itself.  For a reusable notification owned by
+     * the Notification Center, the notification is withdrawn from reuse, so that it is never refilled, and its
+     * notification info is copied if it is still shared with the poster.
+     *
+     * @return A Notification that is safe to keep.
+     */
+    public Notification retain() {
+        if (reusable && !retained) {
+            retained = true;
+            if (contentBorrowed) {
+                copyBorrowedContent();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns true if this notification is owned by the Notification Center and will be refilled once it has been
+     * delivered.  Handlers must not keep a reference to a reusable notification after their callback returns.
+     */
+    boolean isReusable() {
+        return reusable;
+    }
+
+    /**
+     * Returns true if this reusable notification has been retained by a handler, and must not be refilled.
+     */
+    boolean isRetained() {
+        return retained;
+    }
+
+    /**
+     * Fills this reusable notification for a post.  The notification info is not copied, and remains owned by the
+     * poster until the notification is retained.
+     */
+    void set(String notificationName, String classifier, TopicId topicId, Map<String, Object> notificationInfo) {
+        this.notificationName = notificationName;
+        this.classifier = classifier;
+        this.topicId = topicId;
+        this.notificationInfo = notificationInfo;
+        this.payload = null;
+        this.encodedPayload = null;
+        this.contentBorrowed = (notificationInfo != null);
+        this.origin = null;
+    }
+
+    /**
+     * Fills this reusable notification for a post.  The payload is not copied, and remains owned by the poster until
+     * the notification is retained.
+     */
+    void set(String notificationName, String classifier, TopicId topicId, NotificationPayload payload) {
+        this.notificationName = notificationName;
+        this.classifier = classifier;
+        this.topicId = topicId;
+        this.notificationInfo = null;
+        this.payload = payload;
+        this.encodedPayload = null;
+        this.contentBorrowed = (payload != null);
+        this.origin = null;
+    }
+
+    /**
+     * Refills this reusable notification with the contents of the specified notification.  The contents are shared
+     * with the source notification if it holds its own copy, and are copied if they are borrowed from a poster.
+     */
+    void reset(Notification source) {
+        this.notificationName = source.notificationName;
+        this.classifier = source.classifier;
+        this.topicId = source.topicId;
+        this.notificationInfo = source.notificationInfo;
+        this.payload = source.payload;
+        this.encodedPayload = source.encodedPayload;
+        this.contentBorrowed = source.contentBorrowed;
+        this.origin = source.origin;
+        if (contentBorrowed) {
+            copyBorrowedContent();
+        }
+    }
+
+    /**
+     * Empties this reusable notification so that it does not hold on to the contents of the last post.
+     */
+    void clear() {
+        this.notificationName = null;
+        this.classifier = null;
+        this.topicId = null;
+        this.notificationInfo = null;
+        this.payload = null;
+        this.encodedPayload = null;
+        this.contentBorrowed = false;
+        this.origin = null;
+    }
+
+    /**
+     * Replaces the contents that are borrowed from the poster with copies owned by this notification.  Any form of the
+     * contents that was derived from the borrowed contents is discarded, and derived again when requested.
+     */
+    private void copyBorrowedContent() {
+        NotificationPayload currentPayload = payload;
+        Map<String, Object> info = notificationInfo;
+        if (currentPayload != null) {
+            payload = currentPayload.copy();
+            notificationInfo = null;
+        } else if (info != null) {
+            notificationInfo = new HashMap<String, Object>(info);
+            payload = null;
+        }
+        contentBorrowed = false;
     }
 }
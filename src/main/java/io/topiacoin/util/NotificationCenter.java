@@ -1,13 +1,29 @@
 package io.topiacoin.util;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The Notification Center acts as a central hub where classes can subscribe to and post notifications and events. The
@@ -15,36 +31,126 @@ import java.util.Set;
  * provides the specified functionality (such as NSNotificationCenter on Mac and iOS).
  * <p>
  * When a notification is posted to the notification center, it is synchronously dispatched to all registered handlers.
- * If a handler wishes to handle a notification asynchronously, they are responsible for triggering the asynchronous
- * processing.
+ * A handler that wishes to handle notifications asynchronously can be registered with an Executor, in which case the
+ * notification is handed to that executor instead of being delivered on the posting thread.  Notifications can also be
+ * posted asynchronously with {@link #postNotificationAsync(Notification)}, which returns immediately and performs the
+ * dispatch on a bounded executor that is shared by, and managed by, the Notification Center.
+ * <p>
+ * Centers with a different dispatch engine can be created with a {@link Builder}.  A center built with a ring buffer
+ * engine copies each posted notification into a preallocated ring buffer and returns, leaving delivery to a dedicated
+ * consumer thread.  A partitioned center queues each posted notification on a lane chosen by its classifier, and
+ * delivers the lanes in parallel while keeping the notifications of each classifier in order.  A center built for
+ * virtual threads runs each handler invocation on a virtual thread of its own, so that handlers can block on I/O.
+ * <p>
+ * Each center counts the notifications posted to it, per notification name and classifier, and records how often and
+ * how long each handler is called.  These metrics, along with the depths of the dispatch queues, are available from
+ * {@link #getStats()}, and can be published over JMX with {@link #registerMBean(String)}.
+ * <p>
+ * A center built with a {@link NotificationJournal} appends each posted notification to the journal before
+ * dispatching it, so that the notifications can be replayed after a restart.  A notification that the journal cannot
+ * record is still dispatched, and is counted in {@link NotificationCenterStats#getUnjournaledCount()}.
+ * <p>
+ * A sticky center, built with {@link Builder#sticky(int)}, keeps the latest notification posted with each
+ * notification name and classifier.  The latest notifications can be read with
+ * {@link #getLatestNotification(String, String)}, or delivered to a handler as it is added, with
+ * {@link HandlerOptions#deliverLatest(boolean)}.
+ * <p>
+ * On Java 11 and later, reactive consumers can subscribe to notifications through a
+ * {@code java.util.concurrent.Flow.Publisher}, created with a {@code NotificationPublisher.Builder}, which honours the
+ * demand they signal and buffers a bounded number of notifications for each of them.
+ * <p>
+ * Notifications can be scheduled to be posted later with {@link #postNotificationAfter(long, TimeUnit, Notification)}
+ * and {@link #postNotificationAt(long, Notification)}.  Scheduled posts are kept on a hierarchical timing wheel and
+ * posted by a timer thread, and can be cancelled until they are posted.
+ * <p>
+ * Most applications share the {@link #defaultCenter() default center}, but centers can also be constructed
+ * directly, so that independent subsystems each have their own.  A {@link ShardedNotificationCenter} combines such
+ * centers behind a single interface, routing each notification to a shard by the prefix of its name.
+ * <p>
+ * The Notification Center is safe for use from multiple threads.  The dispatch table is an immutable snapshot that is
+ * replaced atomically whenever a handler is added or removed, so posting a notification never takes a lock.  A post
+ * that is in progress while the registrations change is delivered using the snapshot that was current when the post
+ * began.
+ * <p>
+ * Handlers can be registered weakly, with {@link HandlerOptions#weak(boolean)}, so that their registrations do not keep
+ * them reachable.  The registrations of weakly registered handlers that have been garbage collected are removed from
+ * the dispatch table the next time a notification is posted or a handler is added.
  */
 public class NotificationCenter {
 
-    private static NotificationCenter _instance;
-
     /**
-     * Returns the default notification center. The notification center is a singleton in the application to insure that
-     * all handlers are connected to the same instance.
+     * Returns the default notification center, which is shared by the whole application so that handlers and posters
+     * that do not have a center of their own are connected to the same instance.  Subsystems that do not need to share
+     * notifications can construct centers of their own, or a {@link ShardedNotificationCenter}, instead of contending
+     * for the default one.
+     * <p>
+     * The default center is created the first time this method is called.  Later calls take no lock.
      *
      * @return A reference to the default, shared notification center.
      */
     public static NotificationCenter defaultCenter() {
-        synchronized (NotificationCenter.class) {
-            if (_instance == null) {
-                _instance = new NotificationCenter();
-            }
-        }
-
-        return _instance;
+        return DefaultCenterHolder.INSTANCE;
     }
 
-    private Map<String, List<NotificationHandler>> _registrationMap;
+    /**
+     * The number of notifications that may be waiting for asynchronous dispatch before posters are made to perform the
+     * dispatch themselves.
+     */
+    private static final int ASYNC_QUEUE_CAPACITY = 10000;
 
     /**
-     * Constructs a new Notification Center.
+     * The resolution of scheduled posts.  A scheduled notification is posted within one tick of its deadline.
      */
-    private NotificationCenter() {
-        _registrationMap = new HashMap<String, List<NotificationHandler>>();
+    private static final long TIMER_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicReference<DispatchTable> _dispatchTable;
+    private final ThreadPoolExecutor _asyncExecutor;
+    private final DispatchEngine _engine;
+    private final NotificationPool _notificationPool = new NotificationPool();
+    private final DispatchMetrics _metrics;
+    private final NotificationJournal _journal;
+    private final AtomicLong _unjournaledCount = new AtomicLong();
+    private final StickyCache _stickyCache;
+    private final ReferenceQueue<NotificationHandler> _collectedHandlers = new ReferenceQueue<NotificationHandler>();
+    private ObjectName _mbeanName;
+    private volatile TimingWheel _timingWheel;
+    private boolean _shutdown;
+
+    /**
+     * Constructs a new Notification Center that dispatches notifications synchronously.  The center is independent of
+     * the {@link #defaultCenter() default center}, with its own handlers and metrics.  Centers with other
+     * configurations can be created with a {@link Builder}.
+     */
+    public NotificationCenter() {
+        this(new Builder());
+    }
+
+    /**
+     * Constructs a new Notification Center with the configuration of the specified builder.
+     */
+    private NotificationCenter(Builder builder) {
+        if (builder._ringBufferSize > 0) {
+            _engine = new RingBufferDispatchEngine(builder._ringBufferSize, builder._waitStrategy);
+        } else if (builder._laneCount > 0) {
+            _engine = new PartitionedDispatchEngine(builder._laneCount, builder._laneCapacity, builder._overflowPolicy,
+                    builder._rejectionHandler);
+        } else if (builder._virtualThreadConcurrency > 0) {
+            _engine = new VirtualThreadDispatchEngine(builder._virtualThreadConcurrency);
+        } else {
+            _engine = new DispatchEngine();
+        }
+
+        _dispatchTable = new AtomicReference<DispatchTable>(DispatchTable.EMPTY);
+        _metrics = (builder._metricsEnabled ? new DispatchMetrics() : null);
+        _journal = builder._journal;
+        _stickyCache = (builder._stickyCapacity > 0 ? new StickyCache(builder._stickyCapacity) : null);
+
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        _asyncExecutor = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(ASYNC_QUEUE_CAPACITY),
+                new DispatchThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        _asyncExecutor.allowCoreThreadTimeOut(true);
     }
 
 
@@ -57,23 +163,114 @@ public class NotificationCenter {
      * <p>
      * Specify a classifier to only receive notifications sent with this classifier. If you pass null, the notification
      * center doesn’t use a notification’s sender to decide whether to deliver it to the handler.
+     * <p>
+     * Notification names are hierarchical, with segments separated by periods.  The notification name may be a pattern
+     * in which a segment of <code>*</code> matches exactly one segment of a posted name, and a segment of
+     * <code>#</code> matches zero or more segments.  For example, "chain.block.*" matches "chain.block.connected", and
+     * "wallet.#" matches "wallet" and "wallet.account.updated".
      *
      * @param handler          The Handler object that is being registered
-     * @param notificationName The name of the notifications that this handler wishes to receive.  If null, the handler
-     *                         will receive notifications with any name that match the classifier.
+     * @param notificationName The name of the notifications that this handler wishes to receive, or a pattern matching
+     *                         them.  If null, the handler will receive notifications with any name that match the
+     *                         classifier.
      * @param classifier       The classifier of the notifications that this handler wishes to receive.  If null, the
      *                         handler will receive notifications with any classifier that match the notification name.
      */
     public void addHandler(NotificationHandler handler, String notificationName, String classifier) {
+        addHandler(handler, notificationName, classifier, null);
+    }
 
-        String key = calculateKey(notificationName, classifier);
-        List<NotificationHandler> handlers = _registrationMap.get(key);
-        if (handlers == null) {
-            handlers = new ArrayList<NotificationHandler>();
-            _registrationMap.put(key, handlers);
+    /**
+     * Adds an entry to the notification center's dispatch table with a handler, an optional notification name and
+     * object classifier, and the executor that is used to deliver notifications to the handler.
+     * <p>
+     * Notifications that match this entry are handed to the executor instead of being delivered on the thread that
+     * posted them.  The poster does not wait for the handler to process the notification.
+     *
+     * @param handler          The Handler object that is being registered
+     * @param notificationName The name of the notifications that this handler wishes to receive, or a pattern matching
+     *                         them.  If null, the handler will receive notifications with any name that match the
+     *                         classifier.
+     * @param classifier       The classifier of the notifications that this handler wishes to receive.  If null, the
+     *                         handler will receive notifications with any classifier that match the notification name.
+     * @param executor         The executor used to deliver notifications to the handler.  If null, notifications are
+     *                         delivered on the thread that dispatches them.
+     */
+    public void addHandler(NotificationHandler handler, String notificationName, String classifier, Executor executor) {
+        addHandler(handler, notificationName, classifier, executor, null);
+    }
+
+    /**
+     * Adds an entry to the notification center's dispatch table with a handler, an optional notification name and
+     * object classifier, an optional executor, and options that change how notifications are delivered to the
+     * handler, such as {@link HandlerOptions#coalescing(boolean) coalescing}.
+     * <p>
+     * The options can also shape the rate at which the handler is called, by
+     * {@link HandlerOptions#debounce(long, TimeUnit) debouncing}, {@link HandlerOptions#throttle(long, TimeUnit,
+     * boolean, boolean) throttling} or {@link HandlerOptions#rateLimit(int, long, TimeUnit) rate limiting} it, so that
+     * an expensive handler does not redo its work for every notification in a burst.  Notifications that a debounce or
+     * throttle holds back are delivered by the center's timer thread, and are discarded if the handler is removed first.
+     *
+     * @param handler          The Handler object that is being registered
+     * @param notificationName The name of the notifications that this handler wishes to receive, or a pattern matching
+     *                         them.  If null, the handler will receive notifications with any name that match the
+     *                         classifier.
+     * @param classifier       The classifier of the notifications that this handler wishes to receive.  If null, the
+     *                         handler will receive notifications with any classifier that match the notification name.
+     * @param executor         The executor used to deliver notifications to the handler.  If null, notifications are
+     *                         delivered on the thread that dispatches them.
+     * @param options          The delivery options for the handler.  If null, the default options are used.
+     */
+    public void addHandler(NotificationHandler handler, String notificationName, String classifier, Executor executor,
+                           HandlerOptions options) {
+        removeCollectedHandlers();
+        Registration registration = new Registration(handler, notificationName, classifier, executor,
+                (_metrics != null ? new LatencyHistogram() : null), options, _collectedHandlers,
+                (options != null && options.isDelayingDelivery() ? timingWheel() : null));
+
+        DispatchTable current;
+        do {
+            current = _dispatchTable.get();
+        } while (!_dispatchTable.compareAndSet(current, current.withRegistration(registration)));
+
+        if (_stickyCache != null && options != null && options.isDeliveringLatest()) {
+            deliverLatest(registration);
+        }
+    }
+
+    /**
+     * Interns the specified notification name and classifier, returning a compact Topic ID that can be used to post
+     * notifications with that name and classifier.  Notifications posted with a Topic ID are dispatched through an
+     * array indexed by the ID, avoiding the cost of hashing and comparing the notification name and classifier on
+     * every post.
+     * <p>
+     * Registering the same notification name and classifier more than once returns the same Topic ID.  Topics are
+     * intended for the small, fixed set of notifications that an application posts frequently, and are never removed.
+     *
+     * @param notificationName The name of the notifications posted to this topic.  This cannot be null.
+     * @param classifier       The optional classifier of the notifications posted to this topic.
+     *
+     * @return The Topic ID for the notification name and classifier.
+     *
+     * @throws IllegalArgumentException If the notification name is not specified.
+     */
+    public TopicId registerTopic(String notificationName, String classifier) {
+        if (notificationName == null || notificationName.trim().length() == 0) {
+            throw new IllegalArgumentException("Notification name must be specified.");
         }
 
-        handlers.add(handler);
+        DispatchTable current;
+        DispatchTable updated;
+        do {
+            current = _dispatchTable.get();
+            TopicId topicId = current.getTopic(notificationName, classifier);
+            if (topicId != null) {
+                return topicId;
+            }
+            updated = current.withTopic(notificationName, classifier);
+        } while (!_dispatchTable.compareAndSet(current, updated));
+
+        return updated.getTopic(notificationName, classifier);
     }
 
     /**
@@ -84,9 +281,7 @@ public class NotificationCenter {
      *                <b>all</b> notifications that it was registered to receive.
      */
     public void removeHandler(NotificationHandler handler) {
-        for (List<NotificationHandler> handlerList : _registrationMap.values()) {
-            handlerList.remove(handler);
-        }
+        removeRegistrations(handler, true, null, null);
     }
 
     /**
@@ -99,11 +294,7 @@ public class NotificationCenter {
      * notification classifier as criteria for removal.
      */
     public void removeHandler(NotificationHandler handler, String notificationName, String classifier) {
-        String key = calculateKey(notificationName, classifier);
-        List<NotificationHandler> handlers = _registrationMap.get(key);
-        if (handlers != null) {
-            handlers.remove(handler);
-        }
+        removeRegistrations(handler, false, notificationName, classifier);
     }
 
     /**
@@ -118,10 +309,26 @@ public class NotificationCenter {
      * @throws IllegalArgumentException If the notification name is not specified.
      */
     public void postNotification(String notificationName, String classifier, Map<String, Object> notificationInfo) {
-        Notification notification = new Notification(notificationName, classifier, notificationInfo);
+        TopicId topicId = _dispatchTable.get().getTopic(notificationName, classifier);
+        Notification notification = (topicId != null ?
+                new Notification(topicId, notificationInfo) :
+                new Notification(notificationName, classifier, notificationInfo));
         postNotification(notification);
     }
 
+    /**
+     * Creates a notification for the given topic and information and posts it to the notification center.  The
+     * notification will be dispatched to all handlers whose registration criteria match the topic's notification name
+     * and classifier.
+     *
+     * @param topicId          The topic of the notification being posted, as returned by
+     *                         {@link #registerTopic(String, String)}.
+     * @param notificationInfo A Map containing additional info that is being posted with this notification.
+     */
+    public void postNotification(TopicId topicId, Map<String, Object> notificationInfo) {
+        postNotification(new Notification(topicId, notificationInfo));
+    }
+
     /**
      * Posts the specified notification to the notification center. The notification will be dispatched to all handlers
      * whose registration criteria match the notification.
@@ -129,43 +336,762 @@ public class NotificationCenter {
      * @param notification The notification that is to be send to the handlers registered to receive this notification.
      */
     public void postNotification(Notification notification) {
-        Set<NotificationHandler> handlersToNotify = new HashSet<NotificationHandler>();
+        dispatch(notification);
+    }
 
-        String key = calculateKey(notification.getNotificationName(), notification.getClassifier());
-        List<NotificationHandler> specificHandlers = _registrationMap.get(key);
-        if (specificHandlers != null) {
-            handlersToNotify.addAll(specificHandlers);
+    /**
+     * Posts a batch of notifications to the notification center.  The handlers for the whole batch are resolved
+     * against a single snapshot of the dispatch table, and each handler is then given every notification of the batch
+     * that matches its registration at once.  A {@link BatchNotificationHandler} receives them in a single call to
+     * {@link BatchNotificationHandler#handleNotifications(List)}; other handlers are called once per notification.
+     * <p>
+     * Each handler receives its notifications in the order they appear in the collection, but one handler receives
+     * all of its notifications before the next handler receives any.  Centers built with a ring buffer engine publish
+     * the notifications to the ring buffer one by one, and deliver them individually.
+     *
+     * @param notifications The notifications that are to be sent to the handlers registered to receive them.
+     *
+     * @throws IllegalArgumentException If the collection contains a null notification, in which case none of the
+     *                                  notifications are posted.
+     */
+    public void postNotifications(Collection<Notification> notifications) {
+        if (notifications.isEmpty()) {
+            return;
         }
 
-        key = calculateKey(notification.getNotificationName(), null);
-        List<NotificationHandler> typeHandlers = _registrationMap.get(key);
-        if (typeHandlers != null) {
-            handlersToNotify.addAll(typeHandlers);
+        List<Notification> batch = new ArrayList<Notification>(notifications);
+        // The whole batch is checked first, so that a rejected batch is neither counted, journaled nor cached.
+        for (Notification curNotification : batch) {
+            if (curNotification == null) {
+                throw new IllegalArgumentException("Notifications in a batch cannot be null.");
+            }
         }
 
-        key = calculateKey(null, notification.getClassifier());
-        List<NotificationHandler> classifierHandlers = _registrationMap.get(key);
-        if (classifierHandlers != null) {
-            handlersToNotify.addAll(classifierHandlers);
+        removeCollectedHandlers();
+        Registration[][] registrations = new Registration[batch.size()][];
+        DispatchTable dispatchTable = _dispatchTable.get();
+        for (int i = 0; i < batch.size(); i++) {
+            Notification notification = batch.get(i);
+            if (_metrics != null) {
+                _metrics.recordPost(notification.getNotificationName(), notification.getClassifier());
+            }
+            if (_journal != null) {
+                journal(notification);
+            }
+            if (_stickyCache != null) {
+                _stickyCache.put(notification.retain());
+            }
+            registrations[i] = dispatchTable.lookup(notification);
         }
+        _engine.dispatchBatch(batch, registrations);
+    }
 
-        for (NotificationHandler curHandler : handlersToNotify) {
-            curHandler.handleNotification(notification);
+    /**
+     * Posts a notification with the given name, classifier, and information using a pooled notification.  This path
+     * does not allocate in the steady state: the notification that handlers receive is taken from a per-thread pool, and
+     * the notification info map is passed through to handlers without being copied.
+     * <p>
+     * The notification that handlers receive is only valid for the duration of their callback, and is refilled for a
+     * later post once the callback returns.  A handler that needs to keep it must call {@link Notification#retain()},
+     * which withdraws the notification from the pool and gives it its own copy of the notification info.  The poster
+     * must not modify the notification info map until this method returns, and is free to reuse it afterwards.
+     * <p>
+     * Centers built with a ring buffer engine copy the notification info into the ring buffer, so posts to them with
+     * notification info do allocate.
+     *
+     * @param notificationName The name of the notification being posted.  This cannot be null.
+     * @param classifier       The optional classifier of the notification being posted.
+     * @param notificationInfo A Map containing additional info that is being posted with this notification.
+     *
+     * @throws IllegalArgumentException If the notification name is not specified.
+     */
+    public void postPooledNotification(String notificationName, String classifier, Map<String, Object> notificationInfo) {
+        if (notificationName == null || notificationName.trim().length() == 0) {
+            throw new IllegalArgumentException("Notification name must be specified.");
         }
+        TopicId topicId = _dispatchTable.get().getTopic(notificationName, classifier);
+        postPooledNotification(notificationName, classifier, topicId, notificationInfo);
     }
 
-    // -------- Internal Methods --------
+    /**
+     * Posts a notification for the given topic and information using a pooled notification.  The notification is
+     * delivered in the same way as by {@link #postPooledNotification(String, String, Map)}, with the handlers resolved
+     * through the topic's entry in the dispatch table.
+     *
+     * @param topicId          The topic of the notification being posted, as returned by
+     *                         {@link #registerTopic(String, String)}.
+     * @param notificationInfo A Map containing additional info that is being posted with this notification.
+     */
+    public void postPooledNotification(TopicId topicId, Map<String, Object> notificationInfo) {
+        postPooledNotification(topicId.getNotificationName(), topicId.getClassifier(), topicId, notificationInfo);
+    }
+
+    /**
+     * Posts a notification with the given name, classifier, and typed payload using a pooled notification.  The
+     * notification is delivered in the same way as by {@link #postPooledNotification(String, String, Map)}.  The
+     * payload is not copied or frozen, so the poster can clear and refill the same payload for its next post once this
+     * method returns.  Together with a reused payload, this path posts primitive values without any allocation.
+     *
+     * @param notificationName The name of the notification being posted.  This cannot be null.
+     * @param classifier       The optional classifier of the notification being posted.
+     * @param payload          The typed payload that is being posted with this notification.
+     *
+     * @throws IllegalArgumentException If the notification name is not specified.
+     */
+    public void postPooledPayload(String notificationName, String classifier, NotificationPayload payload) {
+        if (notificationName == null || notificationName.trim().length() == 0) {
+            throw new IllegalArgumentException("Notification name must be specified.");
+        }
+        TopicId topicId = _dispatchTable.get().getTopic(notificationName, classifier);
+        Notification notification = _notificationPool.acquire();
+        notification.set(notificationName, classifier, topicId, payload);
+        dispatchPooled(notification);
+    }
+
+    /**
+     * Posts a notification for the given topic and typed payload using a pooled notification.  The notification is
+     * delivered in the same way as by {@link #postPooledPayload(String, String, NotificationPayload)}.
+     *
+     * @param topicId The topic of the notification being posted, as returned by {@link #registerTopic(String, String)}.
+     * @param payload The typed payload that is being posted with this notification.
+     */
+    public void postPooledPayload(TopicId topicId, NotificationPayload payload) {
+        Notification notification = _notificationPool.acquire();
+        notification.set(topicId.getNotificationName(), topicId.getClassifier(), topicId, payload);
+        dispatchPooled(notification);
+    }
 
     /**
-     * Calculates the key used to locate the handlers for this particular notification name and classifier.
+     * Posts the specified notification to the notification center asynchronously. This method returns immediately, and
+     * the notification is dispatched to all handlers whose registration criteria match the notification on the
+     * Notification Center's shared dispatch executor.
+     * <p>
+     * The dispatch executor is bounded.  If it is saturated, the notification is dispatched on the posting thread
+     * instead, which slows posters down until the executor catches up.
+     *
+     * @param notification The notification that is to be send to the handlers registered to receive this notification.
+     *
+     * @return A Future that completes once the notification has been delivered to every matching handler, or handed to
+     * the executor of those handlers that were registered with one.  If a handler throws an exception, the Future
+     * completes with that exception.
+     */
+    public Future<Void> postNotificationAsync(Notification notification) {
+        final Notification asyncNotification = notification.retain();
+        return _asyncExecutor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                dispatch(asyncNotification);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Schedules the specified notification to be posted once the specified delay has passed.  The notification is
+     * posted on the center's timer thread, within a millisecond of its deadline, and is then dispatched as by
+     * {@link #postNotification(Notification)}.  Handlers that are slow should therefore be registered with an executor,
+     * or the center built with an asynchronous engine, so that they do not hold up later scheduled posts.
+     * <p>
+     * Scheduled notifications are kept on a hierarchical timing wheel, so scheduling and cancelling take constant time
+     * however many notifications are scheduled.  The timer thread is started the first time a notification is
+     * scheduled.
+     *
+     * @param delay        The time to wait before posting the notification.  A delay of zero or less posts the
+     *                     notification on the next tick.
+     * @param unit         The unit of the delay.
+     * @param notification The notification that is to be posted.
+     *
+     * @return A handle with which the scheduled post can be cancelled.
+     *
+     * @throws IllegalArgumentException If the unit or notification is null.
+     * @throws IllegalStateException    If the center has been shut down.
+     */
+    public ScheduledNotification postNotificationAfter(long delay, TimeUnit unit, Notification notification) {
+        if (unit == null) {
+            throw new IllegalArgumentException("The delay unit cannot be null.");
+        }
+        if (notification == null) {
+            throw new IllegalArgumentException("The notification cannot be null.");
+        }
+
+        // A reusable notification may be refilled before the delay has passed, so it is retained for the post.
+        final Notification scheduledNotification = notification.retain();
+        TimingWheel.Timeout timeout = timingWheel().schedule(unit.toNanos(delay), new Runnable() {
+            public void run() {
+                dispatch(scheduledNotification);
+            }
+        });
+        return new ScheduledNotification(scheduledNotification, timeout);
+    }
+
+    /**
+     * Schedules the specified notification to be posted at the specified time.  The deadline is converted to a delay
+     * when the notification is scheduled, so later changes to the system clock do not move it.
+     *
+     * @param timeMillis   The time at which to post the notification, in milliseconds since the epoch, as returned by
+     *                     {@link System#currentTimeMillis()}.  A time in the past posts the notification on the next
+     *                     tick.
+     * @param notification The notification that is to be posted.
+     *
+     * @return A handle with which the scheduled post can be cancelled.
+     *
+     * @throws IllegalArgumentException If the notification is null.
+     * @throws IllegalStateException    If the center has been shut down.
+     * @see #postNotificationAfter(long, TimeUnit, Notification)
+     */
+    public ScheduledNotification postNotificationAt(long timeMillis, Notification notification) {
+        long nowMillis = System.currentTimeMillis();
+        // A time long past would overflow the subtraction, and be mistaken for one far in the future.
+        long delayMillis = (timeMillis <= nowMillis ? 0 : timeMillis - nowMillis);
+        return postNotificationAfter(delayMillis, TimeUnit.MILLISECONDS, notification);
+    }
+
+    /**
+     * Returns the latest notification posted with the specified notification name and classifier, if the center is
+     * sticky and the notification is still cached.
+     *
+     * @param notificationName The name of the notification.  This cannot be null.
+     * @param classifier       The classifier of the notification, or null for the notification posted without one.
      *
-     * @param notificationName The name of the notification
-     * @param classifier       The classifier of the notification
+     * @return The latest notification, or null if none is cached, or the center is not sticky.
      *
-     * @return A String containing the key where the list of handlers are stored.
+     * @throws IllegalArgumentException If the notification name is not specified.
+     * @see Builder#sticky(int)
      */
-    private String calculateKey(String notificationName, String classifier) {
-        return notificationName + ":" + classifier;
+    public Notification getLatestNotification(String notificationName, String classifier) {
+        if (notificationName == null) {
+            throw new IllegalArgumentException("Notification name must be specified.");
+        }
+        return (_stickyCache != null ? _stickyCache.get(notificationName, classifier) : null);
     }
 
+    /**
+     * Returns a snapshot of the center's dispatch metrics.  Gathering the snapshot reads every counter, so it is much
+     * more expensive than posting, but it does not block posters.
+     * <p>
+     * Centers built with metrics disabled return a snapshot containing only the queue depths.
+     *
+     * @return The current dispatch metrics.
+     */
+    public NotificationCenterStats getStats() {
+        List<NotificationCenterStats.TopicStats> topicStats = new ArrayList<NotificationCenterStats.TopicStats>();
+        List<NotificationCenterStats.HandlerStats> handlerStats = new ArrayList<NotificationCenterStats.HandlerStats>();
+        long postCount = 0;
+        long untrackedPostCount = 0;
+        if (_metrics != null) {
+            postCount = _metrics.getPostCount();
+            untrackedPostCount = _metrics.getUntrackedPostCount();
+            topicStats = _metrics.topicStats();
+            for (Registration curRegistration : _dispatchTable.get().getRegistrations()) {
+                NotificationHandler handler = curRegistration.getHandler();
+                if (handler == null) {
+                    continue;
+                }
+                handlerStats.add(new NotificationCenterStats.HandlerStats(handler,
+                        curRegistration.getNotificationName(), curRegistration.getClassifier(),
+                        curRegistration.getLatency().snapshot()));
+            }
+        }
+        return new NotificationCenterStats(postCount, untrackedPostCount, topicStats, handlerStats,
+                _asyncExecutor.getQueue().size(), _engine.getQueueDepth(), _engine.getOverflowCount(),
+                _unjournaledCount.get());
+    }
+
+    /**
+     * Publishes the center's dispatch metrics over JMX, by registering a {@link NotificationCenterMXBean} with the
+     * platform MBean server under the specified object name.  The MBean is unregistered when the center is shut down.
+     *
+     * @param objectName The JMX object name to register the MBean under, such as
+     *                   "io.topiacoin.util:type=NotificationCenter,name=default".
+     *
+     * @throws IllegalArgumentException If the object name is malformed, or an MBean is already registered under it.
+     * @throws IllegalStateException    If the center already has a registered MBean.
+     */
+    public synchronized void registerMBean(String objectName) {
+        if (_mbeanName != null) {
+            throw new IllegalStateException("The Notification Center is already registered as " + _mbeanName);
+        }
+        try {
+            ObjectName name = new ObjectName(objectName);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StatsMXBean(), name);
+            _mbeanName = name;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Failed to register the Notification Center MBean as " + objectName, e);
+        }
+    }
+
+    /**
+     * Shuts down the executor used for asynchronous dispatch, the timer thread used for scheduled posts, and the
+     * dispatch engine if the center was built with one that runs its own threads.  Notifications that have already been
+     * posted are still delivered, but scheduled notifications that have not yet been posted are discarded, and
+     * subsequent asynchronous and scheduled posts, and posts to a ring buffer engine, are rejected.  Synchronous posting
+     * is not affected.
+     */
+    public void shutdown() {
+        _engine.shutdown();
+        _asyncExecutor.shutdown();
+        synchronized (this) {
+            _shutdown = true;
+            if (_timingWheel != null) {
+                _timingWheel.shutdown();
+            }
+        }
+        unregisterMBean();
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * Hands the notification to the dispatch engine for delivery to all handlers whose registration criteria match the
+     * notification.
+     *
+     * @param notification The notification that is being dispatched.
+     */
+    private void dispatch(Notification notification) {
+        removeCollectedHandlers();
+        if (_metrics != null) {
+            _metrics.recordPost(notification.getNotificationName(), notification.getClassifier());
+        }
+        if (_journal != null) {
+            journal(notification);
+        }
+        if (_stickyCache != null) {
+            _stickyCache.put(notification.retain());
+        }
+        Registration[] registrations = _dispatchTable.get().lookup(notification);
+        _engine.dispatch(notification, registrations);
+    }
+
+    /**
+     * Appends the notification to the journal.  A notification that the codec cannot encode, because an info value is
+     * not a primitive, byte array, String or null, or that is larger than a journal segment, is left out of the
+     * journal and counted, so that it is still dispatched like any other post.
+     */
+    private void journal(Notification notification) {
+        try {
+            _journal.append(notification);
+        } catch (IllegalArgumentException e) {
+            _unjournaledCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fills a pooled notification with the notification info, and dispatches it.
+     */
+    private void postPooledNotification(String notificationName, String classifier, TopicId topicId, Map<String, Object> notificationInfo) {
+        Notification notification = _notificationPool.acquire();
+        notification.set(notificationName, classifier, topicId, notificationInfo);
+        dispatchPooled(notification);
+    }
+
+    /**
+     * Dispatches a filled pooled notification, and then returns it to the pool unless a handler retained it.
+     */
+    private void dispatchPooled(Notification notification) {
+        try {
+            dispatch(notification);
+        } finally {
+            _notificationPool.release(notification);
+        }
+    }
+
+    /**
+     * Delivers the cached notifications that match a newly added registration to it.  A registration for an exact
+     * notification name and classifier looks its notification up directly.  Any other registration is matched against
+     * every cached notification, through a dispatch table holding only that registration, so that patterns and null
+     * criteria match exactly as they do when posting.
+     */
+    private void deliverLatest(Registration registration) {
+        String notificationName = registration.getNotificationName();
+        if (notificationName != null && registration.getClassifier() != null && !TopicTrie.isPattern(notificationName)) {
+            Notification latest = _stickyCache.get(notificationName, registration.getClassifier());
+            if (latest != null) {
+                registration.deliver(latest);
+            }
+            return;
+        }
+
+        DispatchTable registrationTable = DispatchTable.EMPTY.withRegistration(registration);
+        for (Notification curNotification : _stickyCache.getAll()) {
+            if (registrationTable.lookup(curNotification).length > 0) {
+                registration.deliver(curNotification);
+            }
+        }
+    }
+
+    /**
+     * Removes registrations of the handler from the dispatch table, and publishes the updated table.
+     */
+    private void removeRegistrations(NotificationHandler handler, boolean removeAll, String notificationName, String classifier) {
+        DispatchTable current;
+        DispatchTable updated;
+        Set<Registration> removed;
+        do {
+            current = _dispatchTable.get();
+            removed = current.registrationsFor(handler, removeAll, notificationName, classifier);
+            updated = current.withoutRegistrations(removed);
+        } while (updated != current && !_dispatchTable.compareAndSet(current, updated));
+
+        for (Registration curRegistration : removed) {
+            curRegistration.discard();
+        }
+    }
+
+    /**
+     * Removes the registrations of weakly registered handlers that have been garbage collected from the dispatch table.
+     * Polling the reference queue does not block, and costs a single read when no handlers have been collected.
+     */
+    private void removeCollectedHandlers() {
+        Reference<? extends NotificationHandler> reference = _collectedHandlers.poll();
+        if (reference == null) {
+            return;
+        }
+        Set<Registration> collected = new HashSet<Registration>();
+        do {
+            collected.add(((Registration.HandlerReference) reference).getRegistration());
+        } while ((reference = _collectedHandlers.poll()) != null);
+
+        DispatchTable current;
+        DispatchTable updated;
+        do {
+            current = _dispatchTable.get();
+            updated = current.withoutRegistrations(collected);
+        } while (updated != current && !_dispatchTable.compareAndSet(current, updated));
+    }
+
+    /**
+     * Returns the timing wheel for scheduled posts, starting it on first use, so that centers which never schedule a
+     * notification do not run a timer thread.
+     */
+    private TimingWheel timingWheel() {
+        TimingWheel timingWheel = _timingWheel;
+        if (timingWheel != null) {
+            return timingWheel;
+        }
+        synchronized (this) {
+            if (_shutdown) {
+                throw new IllegalStateException("The Notification Center has been shut down.");
+            }
+            if (_timingWheel == null) {
+                timingWheel = new TimingWheel(TIMER_TICK_NANOS);
+                timingWheel.start("NotificationCenter-timer");
+                _timingWheel = timingWheel;
+            }
+            return _timingWheel;
+        }
+    }
+
+    /**
+     * Removes the center's MBean from the platform MBean server, if it has been registered.
+     */
+    private synchronized void unregisterMBean() {
+        if (_mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(_mbeanName);
+            } catch (JMException e) {
+                // The MBean has already been removed from the server.
+            }
+            _mbeanName = null;
+        }
+    }
+
+    /**
+     * Holds the default center.  The JVM initializes the holder class, and so creates the default center, the first
+     * time {@link #defaultCenter()} reads it, and class initialization guarantees that every thread then sees the
+     * fully constructed center without further synchronization.
+     */
+    private static class DefaultCenterHolder {
+        static final NotificationCenter INSTANCE = new NotificationCenter();
+    }
+
+    /**
+     * Publishes snapshots of the center's dispatch metrics over JMX.
+     */
+    private class StatsMXBean implements NotificationCenterMXBean {
+
+        public long getPostCount() {
+            return getStats().getPostCount();
+        }
+
+        public long getUntrackedPostCount() {
+            return getStats().getUntrackedPostCount();
+        }
+
+        public int getAsyncQueueDepth() {
+            return getStats().getAsyncQueueDepth();
+        }
+
+        public int getEngineQueueDepth() {
+            return getStats().getEngineQueueDepth();
+        }
+
+        public long getOverflowCount() {
+            return getStats().getOverflowCount();
+        }
+
+        public long getUnjournaledCount() {
+            return getStats().getUnjournaledCount();
+        }
+
+        public Map<String, Long> getTopicPostCounts() {
+            Map<String, Long> postCounts = new TreeMap<String, Long>();
+            for (NotificationCenterStats.TopicStats curTopic : getStats().getTopicStats()) {
+                String key = curTopic.getNotificationName()
+                        + (curTopic.getClassifier() == null ? "" : "/" + curTopic.getClassifier());
+                postCounts.put(key, curTopic.getPostCount());
+            }
+            return postCounts;
+        }
+
+        public Map<String, Long> getHandlerInvocationCounts() {
+            Map<String, Long> invocationCounts = new TreeMap<String, Long>();
+            for (NotificationCenterStats.HandlerStats curHandler : getStats().getHandlerStats()) {
+                invocationCounts.put(handlerKey(curHandler), curHandler.getInvocationCount());
+            }
+            return invocationCounts;
+        }
+
+        public Map<String, Long> getHandler99thPercentileNanos() {
+            Map<String, Long> latencies = new TreeMap<String, Long>();
+            for (NotificationCenterStats.HandlerStats curHandler : getStats().getHandlerStats()) {
+                latencies.put(handlerKey(curHandler), curHandler.getLatency().getValueAtPercentile(99));
+            }
+            return latencies;
+        }
+
+        private String handlerKey(NotificationCenterStats.HandlerStats handlerStats) {
+            return handlerStats.getHandler() + " [" + handlerStats.getNotificationName() + ", "
+                    + handlerStats.getClassifier() + "]";
+        }
+    }
+
+    /**
+     * Creates the daemon threads used by the asynchronous dispatch executor.
+     */
+    private static class DispatchThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger _threadNumber = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "NotificationCenter-dispatch-" + _threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Builds Notification Centers with a non-default configuration.  Centers that are built are independent of the
+     * {@link #defaultCenter() default center}, and each has its own dispatch table.
+     * <p>
+     * By default, a built center dispatches notifications synchronously on the posting thread, just like the default
+     * center.
+     */
+    public static class Builder {
+
+        private int _ringBufferSize;
+        private WaitStrategy _waitStrategy;
+        private int _laneCount;
+        private int _laneCapacity;
+        private OverflowPolicy _overflowPolicy;
+        private NotificationRejectionHandler _rejectionHandler;
+        private int _virtualThreadConcurrency;
+        private boolean _metricsEnabled = true;
+        private NotificationJournal _journal;
+        private int _stickyCapacity;
+
+        /**
+         * Configures the center to dispatch notifications through a preallocated ring buffer that is drained by a
+         * dedicated consumer thread.  Posting returns as soon as the notification has been copied into the ring buffer.
+         * Handlers are called on the consumer thread, and the Notification they receive is only valid for the duration
+         * of the callback.  A notification posted by a handler is delivered directly on the consumer thread, since a
+         * handler waiting for space in a full ring buffer would never be given any.
+         * <p>
+         * This replaces any partitioned lanes or virtual thread dispatch configured earlier.
+         *
+         * @param bufferSize   The number of slots in the ring buffer.  This must be a power of two.
+         * @param waitStrategy The strategy used by the consumer while waiting for notifications, and by posters while
+         *                     waiting for space in a full ring buffer.
+         *
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException If the buffer size is not a positive power of two, or no wait strategy is
+         *                                  specified.
+         */
+        public Builder ringBuffer(int bufferSize, WaitStrategy waitStrategy) {
+            if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+                throw new IllegalArgumentException("Ring buffer size must be a power of two.");
+            }
+            if (waitStrategy == null) {
+                throw new IllegalArgumentException("Wait strategy must be specified.");
+            }
+            _ringBufferSize = bufferSize;
+            _waitStrategy = waitStrategy;
+            _laneCount = 0;
+            _virtualThreadConcurrency = 0;
+            return this;
+        }
+
+        /**
+         * Configures the center to dispatch notifications asynchronously through lanes that are partitioned by
+         * classifier.  Each notification is queued on the lane its classifier hashes to, and posting returns
+         * immediately.  Handlers receive the notifications of each classifier one at a time, in the order they were
+         * posted, while notifications with classifiers on different lanes are delivered in parallel by a shared pool of
+         * worker threads.  Notifications without a classifier all share a single lane.
+         * <p>
+         * This replaces any ring buffer or virtual thread dispatch configured earlier.
+         *
+         * @param laneCount The number of lanes.  More lanes allow more classifiers to be delivered in parallel.
+         *
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException If the lane count is not positive.
+         */
+        public Builder partitioned(int laneCount) {
+            return partitioned(laneCount, Integer.MAX_VALUE, OverflowPolicy.BLOCK);
+        }
+
+        /**
+         * Configures the center to dispatch notifications asynchronously through bounded lanes that are partitioned by
+         * classifier.  Notifications are delivered as described for {@link #partitioned(int)}, but no more than the
+         * specified number of notifications can wait in each lane.  A notification posted to a full lane is handled
+         * according to the overflow policy, and is counted in the center's stats.
+         * <p>
+         * This replaces any ring buffer or virtual thread dispatch configured earlier.
+         *
+         * @param laneCount      The number of lanes.  More lanes allow more classifiers to be delivered in parallel.
+         * @param laneCapacity   The number of notifications that can wait in each lane.
+         * @param overflowPolicy What to do with a notification that is posted to a full lane.
+         *
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException If the lane count or capacity is not positive, or no overflow policy is
+         *                                  specified.
+         */
+        public Builder partitioned(int laneCount, int laneCapacity, OverflowPolicy overflowPolicy) {
+            if (laneCount < 1) {
+                throw new IllegalArgumentException("Lane count must be positive.");
+            }
+            if (laneCapacity < 1) {
+                throw new IllegalArgumentException("Lane capacity must be positive.");
+            }
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("Overflow policy must be specified.");
+            }
+            _laneCount = laneCount;
+            _laneCapacity = laneCapacity;
+            _overflowPolicy = overflowPolicy;
+            _ringBufferSize = 0;
+            _waitStrategy = null;
+            _virtualThreadConcurrency = 0;
+            return this;
+        }
+
+        /**
+         * Configures the center to run each handler invocation on a virtual thread of its own, so that handlers which
+         * block on I/O, such as RPC calls and database writes, neither hold up the poster nor each other.  Posting
+         * returns once the invocations have been started.  Handlers may receive notifications in a different order
+         * than they were posted, and may be called by several threads at once.
+         * <p>
+         * At most the specified number of invocations are in progress at once.  When the limit is reached, posting waits
+         * until an invocation completes.  On runtimes without virtual threads, invocations run on a cached pool of
+         * platform threads instead.
+         * <p>
+         * This replaces any ring buffer or partitioned lanes configured earlier.
+         *
+         * @param maxConcurrency The maximum number of handler invocations in progress at once.
+         *
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException If the maximum concurrency is not positive.
+         */
+        public Builder virtualThreads(int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("Maximum concurrency must be positive.");
+            }
+            _virtualThreadConcurrency = maxConcurrency;
+            _ringBufferSize = 0;
+            _waitStrategy = null;
+            _laneCount = 0;
+            return this;
+        }
+
+        /**
+         * Configures the handler that is told about notifications rejected by the {@link OverflowPolicy#FAIL_FAST}
+         * overflow policy.  Without a rejection handler, posting a notification that is rejected throws a
+         * {@link java.util.concurrent.RejectedExecutionException}.
+         *
+         * @param rejectionHandler The rejection handler, or null to throw an exception instead.
+         *
+         * @return This builder.
+         */
+        public Builder rejectionHandler(NotificationRejectionHandler rejectionHandler) {
+            _rejectionHandler = rejectionHandler;
+            return this;
+        }
+
+        /**
+         * Configures the center to append every posted notification to a journal before dispatching it.  The journal
+         * is not closed when the center is shut down.
+         * <p>
+         * The journal can only record notifications whose info values are primitives, byte arrays, Strings or nulls,
+         * and that fit in one of its segments.  Any other notification is dispatched without being journaled, and is
+         * counted in {@link NotificationCenterStats#getUnjournaledCount()}.
+         *
+         * @param journal The journal that posted notifications are appended to, or null to not journal them.
+         *
+         * @return This builder.
+         */
+        public Builder journal(NotificationJournal journal) {
+            _journal = journal;
+            return this;
+        }
+
+        /**
+         * Configures the center to keep the latest notification posted with each notification name and classifier,
+         * so that it can be delivered to handlers that are added later.  The cache holds at most the specified number
+         * of notifications, and evicts the least recently posted or read ones beyond that.
+         * <p>
+         * Caching a notification posted through the pooled path retains it, so pooled posts allocate a notification
+         * each in a sticky center.
+         *
+         * @param capacity The maximum number of notifications cached.
+         *
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException If the capacity is not positive.
+         *
+         * @see NotificationCenter#getLatestNotification(String, String)
+         * @see HandlerOptions#deliverLatest(boolean)
+         */
+        public Builder sticky(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Sticky cache capacity must be positive.");
+            }
+            _stickyCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Configures whether the center gathers dispatch metrics.  Metrics are enabled by default, and cost a few
+         * uncontended counter increments per post and two clock reads per handler call.
+         *
+         * @param enabled True to gather dispatch metrics, false to disable them.
+         *
+         * @return This builder.
+         *
+         * @see NotificationCenter#getStats()
+         */
+        public Builder metrics(boolean enabled) {
+            _metricsEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Builds a new Notification Center with this builder's configuration.
+         *
+         * @return The new Notification Center.
+         */
+        public NotificationCenter build() {
+            return new NotificationCenter(this);
+        }
+    }
 }
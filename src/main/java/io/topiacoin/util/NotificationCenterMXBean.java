@@ -0,0 +1,57 @@
+package io.topiacoin.util;
+
+import java.util.Map;
+
+/**
+ * The management interface through which a Notification Center's dispatch metrics are published over JMX, once the
+ * center has been registered with {@link NotificationCenter#registerMBean(String)}.  Each attribute is read from a new
+ * {@link NotificationCenterStats} snapshot.
+ */
+public interface NotificationCenterMXBean {
+
+    /**
+     * Returns the total number of notifications posted to the center.
+     */
+    long getPostCount();
+
+    /**
+     * Returns the number of notifications posted with a name and classifier that are not counted individually.
+     */
+    long getUntrackedPostCount();
+
+    /**
+     * Returns the number of asynchronously posted notifications that are waiting to be dispatched.
+     */
+    int getAsyncQueueDepth();
+
+    /**
+     * Returns the number of notifications accepted by the dispatch engine that have not yet been delivered.
+     */
+    int getEngineQueueDepth();
+
+    /**
+     * Returns the number of notifications that were posted while their dispatch queue was full.
+     */
+    long getOverflowCount();
+
+    /**
+     * Returns the number of notifications that were dispatched without being appended to the center's journal.
+     */
+    long getUnjournaledCount();
+
+    /**
+     * Returns the post counts keyed by notification name, followed by a slash and the classifier if there is one.
+     */
+    Map<String, Long> getTopicPostCounts();
+
+    /**
+     * Returns the invocation counts of each handler registration, keyed by the handler and its registration criteria.
+     */
+    Map<String, Long> getHandlerInvocationCounts();
+
+    /**
+     * Returns the 99th percentile latency, in nanoseconds, of each handler registration, keyed by the handler and its
+     * registration criteria.
+     */
+    Map<String, Long> getHandler99thPercentileNanos();
+}
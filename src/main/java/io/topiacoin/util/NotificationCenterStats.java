@@ -0,0 +1,263 @@
+package io.topiacoin.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A point in time snapshot of a Notification Center's dispatch metrics, as returned by
+ * {@link NotificationCenter#getStats()}.
+ * <p>
+ * The snapshot holds the number of notifications posted, in total and per notification name and classifier, the
+ * number of notifications delivered to each registered handler along with a histogram of how long the handler took to
+ * process them, and the depths of the center's dispatch queues along with how often they overflowed.  The counters are read one after another while posting
+ * continues, so the values in a snapshot may be slightly out of step with each other.
+ */
+public final class NotificationCenterStats {
+
+    private final long postCount;
+    private final long untrackedPostCount;
+    private final List<TopicStats> topicStats;
+    private final List<HandlerStats> handlerStats;
+    private final int asyncQueueDepth;
+    private final int engineQueueDepth;
+    private final long overflowCount;
+    private final long unjournaledCount;
+
+    NotificationCenterStats(long postCount, long untrackedPostCount, List<TopicStats> topicStats,
+                            List<HandlerStats> handlerStats, int asyncQueueDepth, int engineQueueDepth,
+                            long overflowCount, long unjournaledCount) {
+        this.postCount = postCount;
+        this.untrackedPostCount = untrackedPostCount;
+        this.topicStats = Collections.unmodifiableList(topicStats);
+        this.handlerStats = Collections.unmodifiableList(handlerStats);
+        this.asyncQueueDepth = asyncQueueDepth;
+        this.engineQueueDepth = engineQueueDepth;
+        this.overflowCount = overflowCount;
+        this.unjournaledCount = unjournaledCount;
+    }
+
+    /**
+     * Returns the total number of notifications posted to the center.
+     */
+    public long getPostCount() {
+        return postCount;
+    }
+
+    /**
+     * Returns the number of notifications posted with a name and classifier that are not counted individually, because
+     * the limit on the number of tracked topics had been reached.
+     */
+    public long getUntrackedPostCount() {
+        return untrackedPostCount;
+    }
+
+    /**
+     * Returns the post counts of each notification name and classifier combination that has been posted.
+     */
+    public List<TopicStats> getTopicStats() {
+        return topicStats;
+    }
+
+    /**
+     * Returns the delivery statistics of each handler registration currently in the center's dispatch table.  A handler
+     * that is registered more than once has an entry for each registration.
+     */
+    public List<HandlerStats> getHandlerStats() {
+        return handlerStats;
+    }
+
+    /**
+     * Returns the number of asynchronously posted notifications that are waiting to be dispatched.
+     */
+    public int getAsyncQueueDepth() {
+        return asyncQueueDepth;
+    }
+
+    /**
+     * Returns the number of notifications that have been accepted by the center's dispatch engine, but not yet
+     * delivered.  This is always zero for centers that dispatch on the posting thread.
+     */
+    public int getEngineQueueDepth() {
+        return engineQueueDepth;
+    }
+
+    /**
+     * Returns the number of notifications that were posted while their dispatch queue was full, and were therefore
+     * handled by the center's {@link OverflowPolicy}.  This is always zero for centers without bounded queues.
+     */
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * Returns the number of notifications that were dispatched without being appended to the center's journal, because
+     * the journal could not record them.  This is always zero for centers without a journal.
+     */
+    public long getUnjournaledCount() {
+        return unjournaledCount;
+    }
+
+    /**
+     * The number of notifications posted with a particular notification name and classifier.
+     */
+    public static final class TopicStats {
+
+        private final String notificationName;
+        private final String classifier;
+        private final long postCount;
+
+        TopicStats(String notificationName, String classifier, long postCount) {
+            this.notificationName = notificationName;
+            this.classifier = classifier;
+            this.postCount = postCount;
+        }
+
+        public String getNotificationName() {
+            return notificationName;
+        }
+
+        public String getClassifier() {
+            return classifier;
+        }
+
+        public long getPostCount() {
+            return postCount;
+        }
+
+        @Override
+        public String toString() {
+            return notificationName + (classifier == null ? "" : "/" + classifier) + ": " + postCount;
+        }
+    }
+
+    /**
+     * The delivery statistics of a single handler registration.
+     */
+    public static final class HandlerStats {
+
+        private final NotificationHandler handler;
+        private final String notificationName;
+        private final String classifier;
+        private final LatencySnapshot latency;
+
+        HandlerStats(NotificationHandler handler, String notificationName, String classifier, LatencySnapshot latency) {
+            this.handler = handler;
+            this.notificationName = notificationName;
+            this.classifier = classifier;
+            this.latency = latency;
+        }
+
+        public NotificationHandler getHandler() {
+            return handler;
+        }
+
+        /**
+         * Returns the notification name, or pattern, that the handler was registered for, or null if it was registered
+         * for any name.
+         */
+        public String getNotificationName() {
+            return notificationName;
+        }
+
+        /**
+         * Returns the classifier that the handler was registered for, or null if it was registered for any classifier.
+         */
+        public String getClassifier() {
+            return classifier;
+        }
+
+        /**
+         * Returns the number of times the handler has been called for this registration.
+         */
+        public long getInvocationCount() {
+            return latency.getCount();
+        }
+
+        /**
+         * Returns the histogram of the time the handler took to process each notification.
+         */
+        public LatencySnapshot getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return handler + " [" + notificationName + ", " + classifier + "]: " + latency;
+        }
+    }
+
+    /**
+     * A snapshot of a latency histogram.  Values are in nanoseconds, and are reported with a precision of 12.5%.
+     */
+    public static final class LatencySnapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        LatencySnapshot(long[] counts, long totalNanos, long maxNanos) {
+            long count = 0;
+            for (long bucketCount : counts) {
+                count += bucketCount;
+            }
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * Returns the number of recorded latencies.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the mean latency, or zero if nothing has been recorded.
+         */
+        public double getMeanNanos() {
+            return (count == 0 ? 0 : (double) totalNanos / count);
+        }
+
+        /**
+         * Returns the highest recorded latency.
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Returns the latency below which the given percentage of recorded latencies fall, or zero if nothing has been
+         * recorded.
+         *
+         * @param percentile The percentile, between 0 and 100.
+         *
+         * @throws IllegalArgumentException If the percentile is out of range.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= target) {
+                    return Math.min(LatencyHistogram.highestValueInBucket(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + (long) getMeanNanos() + "ns, p50=" + getValueAtPercentile(50)
+                    + "ns, p99=" + getValueAtPercentile(99) + "ns, max=" + maxNanos + "ns";
+        }
+    }
+}
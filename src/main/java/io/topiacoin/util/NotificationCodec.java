@@ -0,0 +1,600 @@
+package io.topiacoin.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for notifications, for storing them or sending them between processes.
+ * <p>
+ * An encoded notification is made up of its name, its classifier, and its payload.  All lengths and integer values are
+ * written as variable length integers, so small values take a single byte, and signed values are zigzag encoded so
+ * that small negative values are small as well.  Each payload entry is written as its key, its type, and its value in
+ * the typed form used by {@link NotificationPayload}, so primitive values are never boxed or serialized.  Only
+ * primitives, byte arrays, Strings and nulls can be encoded.  Encoded notifications are read from files and from other
+ * processes, so the codec never creates objects of types named by the bytes it decodes, and a notification with any
+ * other value is rejected when it is encoded.  The payload is preceded by its length, so that a decoder can skip it
+ * without decoding it.
+ * <p>
+ * Every count and length read while decoding is checked against the bytes that remain, so a truncated or corrupt
+ * notification is rejected with an {@link IllegalArgumentException} before anything is allocated for it.
+ * <p>
+ * The static {@link #encode(Notification, ByteBuffer)} and {@link #decode(ByteBuffer)} methods write and read
+ * self-contained notifications, which can be decoded in any order.  For a stream of notifications that is always read
+ * in the order it was written, such as a network connection, an {@link Encoder} and {@link Decoder} pair can be used
+ * instead.  They intern notification names and classifiers in dictionaries that each side builds up as the stream
+ * progresses, so a name or classifier that has been seen before is written as a small index rather than as a string.
+ * <p>
+ * Notifications are read from and written to ByteBuffers, either heap or direct, directly at the buffer's position.
+ * Decoding is lazy and does not copy: a decoded notification's name and classifier are decoded straight away, but its
+ * payload is decoded from a view of the source buffer the first time it is requested.  The bytes of the source buffer
+ * must therefore not be changed until the payloads of the notifications decoded from it have been read, or are no
+ * longer needed.
+ */
+public final class NotificationCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_LITERAL = 1;
+    private static final int TAG_DEFINITION = 2;
+    private static final int TAG_FIRST_REFERENCE = 3;
+
+    /**
+     * The default number of names, and of classifiers, that an encoder and decoder pair interns.
+     */
+    public static final int DEFAULT_DICTIONARY_SIZE = 1024;
+
+    private static final Encoder SELF_CONTAINED_ENCODER = new Encoder(0);
+
+    private NotificationCodec() {
+    }
+
+    /**
+     * Encodes a self-contained notification into the buffer, starting at its position and advancing the position past
+     * it.
+     *
+     * @param notification The notification to encode.
+     * @param buffer       The buffer to encode the notification into.
+     *
+     * @throws BufferOverflowException  If the buffer does not have room for the notification.  The buffer's position is
+     *                                  left unchanged.
+     * @throws IllegalArgumentException If a payload value is not a primitive, byte array, String or null.  The buffer's
+     *                                  position is left unchanged.
+     */
+    public static void encode(Notification notification, ByteBuffer buffer) {
+        SELF_CONTAINED_ENCODER.encode(notification, buffer);
+    }
+
+    /**
+     * Decodes a self-contained notification from the buffer, starting at its position and advancing the position past
+     * it.  The notification's payload is decoded from the buffer when it is first requested.
+     *
+     * @param buffer The buffer to decode the notification from.
+     *
+     * @return The decoded notification.
+     *
+     * @throws IllegalArgumentException If the buffer does not hold a self-contained notification at its position.
+     */
+    public static Notification decode(ByteBuffer buffer) {
+        return new Decoder().decode(buffer);
+    }
+
+    /**
+     * Decodes an encoded payload, as found after the name and classifier of an encoded notification.  The buffer holds
+     * exactly the payload, between its position and limit, and its position is advanced past it.
+     *
+     * @throws IllegalArgumentException If the buffer does not hold an encoded payload.
+     */
+    static NotificationPayload decodePayload(ByteBuffer buffer) {
+        int size = getVarInt(buffer);
+        // Each entry takes at least a key length, a type and a value byte.
+        if (size > buffer.remaining() / 3) {
+            throw new IllegalArgumentException("Encoded payload has more entries than fit in its length.");
+        }
+        NotificationPayload payload = new NotificationPayload(size);
+        for (int i = 0; i < size; i++) {
+            String key = getString(buffer, getVarInt(buffer));
+            checkRemaining(buffer, 1);
+            byte type = buffer.get();
+            switch (type) {
+                case NotificationPayload.TYPE_INT:
+                    payload.putInt(key, decodeZigZag((int) getVarLong(buffer)));
+                    break;
+                case NotificationPayload.TYPE_LONG:
+                    payload.putLong(key, decodeZigZag(getVarLong(buffer)));
+                    break;
+                case NotificationPayload.TYPE_DOUBLE:
+                    checkRemaining(buffer, 8);
+                    payload.putDouble(key, Double.longBitsToDouble(buffer.getLong()));
+                    break;
+                case NotificationPayload.TYPE_BOOLEAN:
+                    checkRemaining(buffer, 1);
+                    payload.putBoolean(key, buffer.get() != 0);
+                    break;
+                case NotificationPayload.TYPE_BYTES:
+                    payload.putBytes(key, getNullableBytes(buffer));
+                    break;
+                case NotificationPayload.TYPE_STRING:
+                    byte[] stringBytes = getNullableBytes(buffer);
+                    payload.putString(key, (stringBytes == null ? null : new String(stringBytes, UTF_8)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown payload type " + type + " for key " + key);
+            }
+        }
+        return payload.freeze();
+    }
+
+    /**
+     * Writes notifications to a stream, interning their names and classifiers.  An encoder keeps the state of a single
+     * stream, and is not safe for use by multiple threads.
+     */
+    public static final class Encoder {
+
+        private final int _maxDictionarySize;
+        private final Map<String, Integer> _names = new HashMap<String, Integer>();
+        private final Map<String, Integer> _classifiers = new HashMap<String, Integer>();
+
+        /**
+         * Constructs an encoder that interns up to {@link #DEFAULT_DICTIONARY_SIZE} names and classifiers.
+         */
+        public Encoder() {
+            this(DEFAULT_DICTIONARY_SIZE);
+        }
+
+        /**
+         * Constructs an encoder that interns up to the specified number of names, and of classifiers.  Once a
+         * dictionary is full, further names or classifiers are written in full every time.
+         *
+         * @param maxDictionarySize The maximum number of entries in each dictionary, or zero to not intern.
+         */
+        public Encoder(int maxDictionarySize) {
+            if (maxDictionarySize < 0) {
+                throw new IllegalArgumentException("Dictionary size cannot be negative.");
+            }
+            _maxDictionarySize = maxDictionarySize;
+        }
+
+        /**
+         * Encodes the notification into the buffer, starting at its position and advancing the position past it.
+         *
+         * @throws BufferOverflowException  If the buffer does not have room for the notification.  The buffer's
+         *                                  position and the encoder's dictionaries are left unchanged.
+         * @throws IllegalArgumentException If a payload value is not a primitive, byte array, String or null.  The
+         *                                  buffer's position and the encoder's dictionaries are left unchanged.
+         */
+        public void encode(Notification notification, ByteBuffer buffer) {
+            NotificationPayload payload = payloadOf(notification);
+            int payloadSize = 0;
+            if (payload != null) {
+                payloadSize = varIntSize(payload.size());
+                for (int i = 0; i < payload.capacity(); i++) {
+                    String key = payload.keyAt(i);
+                    if (key == null) {
+                        continue;
+                    }
+                    int keySize = stringSize(key);
+                    payloadSize += varIntSize(keySize) + keySize + 1 + valueSize(payload, i, key);
+                }
+            }
+
+            Integer nameIndex = _names.get(notification.getNotificationName());
+            String classifier = notification.getClassifier();
+            Integer classifierIndex = (classifier == null ? null : _classifiers.get(classifier));
+            int size = taggedStringSize(notification.getNotificationName(), nameIndex)
+                    + taggedStringSize(classifier, classifierIndex)
+                    + varIntSize(payload == null ? 0 : payloadSize + 1) + payloadSize;
+            if (buffer.remaining() < size) {
+                throw new BufferOverflowException();
+            }
+
+            putTaggedString(buffer, notification.getNotificationName(), nameIndex, _names);
+            putTaggedString(buffer, classifier, classifierIndex, _classifiers);
+            if (payload == null) {
+                putVarInt(buffer, 0);
+                return;
+            }
+            // A length of zero means that the notification carries no information, so the length is offset by one.
+            putVarInt(buffer, payloadSize + 1);
+            putVarInt(buffer, payload.size());
+            for (int i = 0; i < payload.capacity(); i++) {
+                String key = payload.keyAt(i);
+                if (key == null) {
+                    continue;
+                }
+                putVarInt(buffer, stringSize(key));
+                putString(buffer, key);
+                putValue(buffer, payload, i);
+            }
+        }
+
+        private int taggedStringSize(String value, Integer index) {
+            if (value == null) {
+                return 1;
+            }
+            if (index != null) {
+                return varIntSize(index + TAG_FIRST_REFERENCE);
+            }
+            int length = stringSize(value);
+            return 1 + varIntSize(length) + length;
+        }
+
+        private void putTaggedString(ByteBuffer buffer, String value, Integer index, Map<String, Integer> dictionary) {
+            if (value == null) {
+                putVarInt(buffer, TAG_NULL);
+            } else if (index != null) {
+                putVarInt(buffer, index + TAG_FIRST_REFERENCE);
+            } else {
+                if (dictionary.size() < _maxDictionarySize) {
+                    dictionary.put(value, dictionary.size());
+                    putVarInt(buffer, TAG_DEFINITION);
+                } else {
+                    putVarInt(buffer, TAG_LITERAL);
+                }
+                putVarInt(buffer, stringSize(value));
+                putString(buffer, value);
+            }
+        }
+    }
+
+    /**
+     * Reads notifications from a stream written by an {@link Encoder}, rebuilding its dictionaries as it goes.  A
+     * decoder keeps the state of a single stream, and is not safe for use by multiple threads.
+     */
+    public static final class Decoder {
+
+        private final int _maxDictionarySize;
+        private final List<String> _names = new ArrayList<String>();
+        private final List<String> _classifiers = new ArrayList<String>();
+
+        /**
+         * Constructs a decoder for a stream written by an encoder with a dictionary size of at most
+         * {@link #DEFAULT_DICTIONARY_SIZE}.
+         */
+        public Decoder() {
+            this(DEFAULT_DICTIONARY_SIZE);
+        }
+
+        /**
+         * Constructs a decoder for a stream written by an encoder with a dictionary size of at most the specified
+         * size.  A stream that defines more names or classifiers than this is rejected, so a stream from an untrusted
+         * source cannot make the decoder's dictionaries grow without bound.
+         *
+         * @param maxDictionarySize The maximum number of entries in each dictionary.
+         */
+        public Decoder(int maxDictionarySize) {
+            if (maxDictionarySize < 0) {
+                throw new IllegalArgumentException("Dictionary size cannot be negative.");
+            }
+            _maxDictionarySize = maxDictionarySize;
+        }
+
+        /**
+         * Decodes the next notification from the buffer, starting at its position and advancing the position past it.
+         * The notification's payload is decoded from the buffer when it is first requested.
+         *
+         * @throws IllegalArgumentException If the buffer does not hold a notification from this decoder's stream at its
+         *                                  position, or the notification defines more dictionary entries than the
+         *                                  decoder keeps.
+         */
+        public Notification decode(ByteBuffer buffer) {
+            String notificationName = getTaggedString(buffer, _names);
+            String classifier = getTaggedString(buffer, _classifiers);
+            if (notificationName == null) {
+                throw new IllegalArgumentException("Encoded notification has no name.");
+            }
+
+            int payloadLength = getVarInt(buffer);
+            ByteBuffer encodedPayload = null;
+            if (payloadLength > 0) {
+                checkRemaining(buffer, payloadLength - 1);
+                encodedPayload = buffer.slice();
+                encodedPayload.limit(payloadLength - 1);
+                buffer.position(buffer.position() + payloadLength - 1);
+            }
+            return Notification.withEncodedPayload(notificationName, classifier, encodedPayload);
+        }
+
+        private String getTaggedString(ByteBuffer buffer, List<String> dictionary) {
+            int tag = getVarInt(buffer);
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_LITERAL:
+                    return getString(buffer, getVarInt(buffer));
+                case TAG_DEFINITION:
+                    if (dictionary.size() >= _maxDictionarySize) {
+                        throw new IllegalArgumentException("Encoded notification defines more than " + _maxDictionarySize
+                                + " dictionary entries.");
+                    }
+                    String value = getString(buffer, getVarInt(buffer));
+                    dictionary.add(value);
+                    return value;
+                default:
+                    int index = tag - TAG_FIRST_REFERENCE;
+                    if (index >= dictionary.size()) {
+                        throw new IllegalArgumentException("Encoded notification refers to unknown dictionary entry " + index);
+                    }
+                    return dictionary.get(index);
+            }
+        }
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * Returns the notification's payload, or null if it carries no information.
+     */
+    private static NotificationPayload payloadOf(Notification notification) {
+        NotificationPayload payload = notification.getPayload();
+        return (payload == NotificationPayload.EMPTY && notification.getNotificationInfo() == null ? null : payload);
+    }
+
+    /**
+     * Returns the encoded size of a payload entry's value.
+     *
+     * @throws IllegalArgumentException If the value is an object that cannot be encoded.
+     */
+    private static int valueSize(NotificationPayload payload, int index, String key) {
+        switch (payload.typeAt(index)) {
+            case NotificationPayload.TYPE_INT:
+                return varLongSize(encodeZigZag((int) payload.primitiveAt(index)) & 0xffffffffL);
+            case NotificationPayload.TYPE_LONG:
+                return varLongSize(encodeZigZag(payload.primitiveAt(index)));
+            case NotificationPayload.TYPE_DOUBLE:
+                return 8;
+            case NotificationPayload.TYPE_BOOLEAN:
+                return 1;
+            case NotificationPayload.TYPE_BYTES:
+                byte[] bytes = (byte[]) payload.objectAt(index);
+                return (bytes == null ? 1 : varIntSize(bytes.length + 1) + bytes.length);
+            case NotificationPayload.TYPE_STRING:
+                return nullableStringSize((String) payload.objectAt(index));
+            default:
+                Object value = payload.objectAt(index);
+                if (value != null) {
+                    throw new IllegalArgumentException("Payload value for key " + key + " of type "
+                            + value.getClass().getName() + " cannot be encoded.");
+                }
+                return 1;
+        }
+    }
+
+    /**
+     * Writes the type and value of a payload entry.  The value must have been sized by {@link #valueSize}, which
+     * rejects objects other than null.
+     */
+    private static void putValue(ByteBuffer buffer, NotificationPayload payload, int index) {
+        byte type = payload.typeAt(index);
+        switch (type) {
+            case NotificationPayload.TYPE_INT:
+                buffer.put(type);
+                putVarLong(buffer, encodeZigZag((int) payload.primitiveAt(index)) & 0xffffffffL);
+                return;
+            case NotificationPayload.TYPE_LONG:
+                buffer.put(type);
+                putVarLong(buffer, encodeZigZag(payload.primitiveAt(index)));
+                return;
+            case NotificationPayload.TYPE_DOUBLE:
+                buffer.put(type);
+                buffer.putLong(payload.primitiveAt(index));
+                return;
+            case NotificationPayload.TYPE_BOOLEAN:
+                buffer.put(type);
+                buffer.put((byte) payload.primitiveAt(index));
+                return;
+            case NotificationPayload.TYPE_BYTES:
+                buffer.put(type);
+                putNullableBytes(buffer, (byte[]) payload.objectAt(index));
+                return;
+            case NotificationPayload.TYPE_STRING:
+                buffer.put(type);
+                putNullableString(buffer, (String) payload.objectAt(index));
+                return;
+            default:
+                // A null object is read back as a null String, which the payload's getters cannot tell apart.
+                buffer.put(NotificationPayload.TYPE_STRING);
+                putNullableString(buffer, null);
+        }
+    }
+
+    private static int nullableStringSize(String value) {
+        if (value == null) {
+            return 1;
+        }
+        int length = stringSize(value);
+        return varIntSize(length + 1) + length;
+    }
+
+    /**
+     * Writes a nullable string as its UTF-8 length plus one, or zero for null, followed by its bytes.
+     */
+    private static void putNullableString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            putVarInt(buffer, 0);
+        } else {
+            putVarInt(buffer, stringSize(value) + 1);
+            putString(buffer, value);
+        }
+    }
+
+    /**
+     * Writes a nullable byte array as its length plus one, or zero for null, followed by its bytes.
+     */
+    private static void putNullableBytes(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            putVarInt(buffer, 0);
+        } else {
+            putVarInt(buffer, value.length + 1);
+            buffer.put(value);
+        }
+    }
+
+    private static byte[] getNullableBytes(ByteBuffer buffer) {
+        int length = getVarInt(buffer);
+        if (length == 0) {
+            return null;
+        }
+        checkRemaining(buffer, length - 1);
+        byte[] bytes = new byte[length - 1];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the number of bytes in the UTF-8 encoding of the string.
+     */
+    static int stringSize(String value) {
+        int size = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                size += 1;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes the UTF-8 encoding of the string directly into the buffer, without an intermediate byte array.
+     * Unpaired surrogates are written as the Unicode replacement character.
+     */
+    static void putString(ByteBuffer buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate cannot be encoded, so it is replaced, keeping the size computed above.
+                buffer.put((byte) 0xef);
+                buffer.put((byte) 0xbf);
+                buffer.put((byte) 0xbd);
+            } else {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    /**
+     * Decodes a UTF-8 string of the specified length at the buffer's position, reading a heap buffer's bytes in place.
+     *
+     * @throws IllegalArgumentException If the length is negative, or runs past the buffer's limit.
+     */
+    static String getString(ByteBuffer buffer, int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Encoded length cannot be negative.");
+        }
+        checkRemaining(buffer, length);
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, UTF_8);
+        }
+        return value;
+    }
+
+    static int varIntSize(int value) {
+        return varLongSize(value & 0xffffffffL);
+    }
+
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7fL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void putVarInt(ByteBuffer buffer, int value) {
+        putVarLong(buffer, value & 0xffffffffL);
+    }
+
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a variable length integer that holds a count, length or tag, none of which can be negative.
+     *
+     * @throws IllegalArgumentException If the integer is truncated, malformed, or larger than the largest int.
+     */
+    static int getVarInt(ByteBuffer buffer) {
+        long value = getVarLong(buffer);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Encoded length is out of range.");
+        }
+        return (int) value;
+    }
+
+    static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            checkRemaining(buffer, 1);
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length integer.");
+    }
+
+    /**
+     * Checks that the buffer holds at least the specified number of bytes past its position.
+     *
+     * @throws IllegalArgumentException If the buffer is too short, which means that the encoded data is truncated.
+     */
+    private static void checkRemaining(ByteBuffer buffer, int count) {
+        if (buffer.remaining() < count) {
+            throw new IllegalArgumentException("Encoded notification is truncated.");
+        }
+    }
+
+    private static int encodeZigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long encodeZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int decodeZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
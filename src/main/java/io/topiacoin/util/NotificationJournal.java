@@ -0,0 +1,381 @@
+package io.topiacoin.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A durable, append-only history of notifications, stored in memory-mapped segment files.
+ * <p>
+ * A Notification Center built with a journal appends every posted notification to it before dispatching the
+ * notification.  Each notification is encoded into a self-contained record with the {@link NotificationCodec}, and
+ * copied into the current segment at a position reserved with a single atomic update, so appending does not take a
+ * lock.  When a segment is full, a new one is created.
+ * <p>
+ * Appended records reach the operating system as soon as they are copied into the mapped segment, and so survive a
+ * crash of the process.  To survive a crash of the machine, segments are forced to the storage device by a background
+ * thread that commits every write appended since its last pass with a single force, rather than one per
+ * notification.  By default, posters do not wait for this, and the thread commits at a fixed interval.  A journal that
+ * is opened with synchronous writes makes each poster wait until its record has been committed, and wakes the thread
+ * as soon as there is something to commit, so posters that append concurrently share a commit.
+ * <p>
+ * Records are identified by their offset in the journal.  {@link #replay(long, JournalReplayHandler)} streams the
+ * records from an offset back to a handler, decoding record payloads only when the handler asks for them.
+ * <p>
+ * Mapped segments are only unmapped when they are garbage collected, so a journal should be opened once and kept for
+ * the life of the application.
+ */
+public final class NotificationJournal implements Closeable {
+
+    private static final int INITIAL_ENCODE_BUFFER_SIZE = 1024;
+
+    private final File _directory;
+    private final int _segmentSize;
+    private final long _flushIntervalNanos;
+    private final boolean _syncWrites;
+
+    private final List<JournalSegment> _segments = new CopyOnWriteArrayList<JournalSegment>();
+    private volatile JournalSegment _currentSegment;
+    private final Queue<JournalSegment> _rolledSegments = new ConcurrentLinkedQueue<JournalSegment>();
+
+    private final Object _commitLock = new Object();
+    private final AtomicLong _completedWrites = new AtomicLong();
+    private volatile long _committedWrites;
+
+    private final Thread _commitThread;
+    private volatile boolean _open = true;
+
+    private final ThreadLocal<ByteBuffer> _encodeBuffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(INITIAL_ENCODE_BUFFER_SIZE);
+        }
+    };
+
+    private NotificationJournal(Builder builder) throws IOException {
+        _directory = builder._directory;
+        _segmentSize = builder._segmentSize;
+        _flushIntervalNanos = builder._flushIntervalNanos;
+        _syncWrites = builder._syncWrites;
+
+        if (!_directory.isDirectory() && !_directory.mkdirs()) {
+            throw new IOException("Failed to create the journal directory " + _directory);
+        }
+        File[] segmentFiles = _directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(JournalSegment.FILE_SUFFIX);
+            }
+        });
+        if (segmentFiles == null) {
+            throw new IOException("Failed to list the journal directory " + _directory);
+        }
+        Arrays.sort(segmentFiles);
+        for (int i = 0; i < segmentFiles.length; i++) {
+            _segments.add(JournalSegment.open(segmentFiles[i], i == segmentFiles.length - 1));
+        }
+        if (_segments.isEmpty()) {
+            _segments.add(JournalSegment.create(_directory, 0, _segmentSize));
+        }
+        _currentSegment = _segments.get(_segments.size() - 1);
+
+        _commitThread = new Thread(new Runnable() {
+            public void run() {
+                commitLoop();
+            }
+        }, "NotificationJournal-commit");
+        _commitThread.setDaemon(true);
+        _commitThread.start();
+    }
+
+    /**
+     * Appends a notification to the journal.  If the journal was opened with synchronous writes, this waits until the
+     * record has been forced to the storage device.
+     *
+     * @param notification The notification to append.
+     *
+     * @return The offset of the notification's record in the journal.
+     *
+     * @throws IllegalArgumentException If the encoded notification is larger than a segment, or an info value is not a
+     *                                  primitive, String, byte array or null.
+     * @throws IllegalStateException    If the journal has been closed, or a new segment cannot be created.
+     */
+    public long append(Notification notification) {
+        if (!_open) {
+            throw new IllegalStateException("The journal has been closed.");
+        }
+
+        ByteBuffer body = encode(notification);
+        if (JournalSegment.RECORD_HEADER_SIZE + body.remaining() > _segmentSize) {
+            throw new IllegalArgumentException("The notification " + notification.getNotificationName() +
+                    " is too large for the journal's segments.");
+        }
+
+        JournalSegment segment;
+        int position;
+        while ((position = (segment = _currentSegment).reserve(body.remaining())) < 0) {
+            roll(segment);
+        }
+        segment.write(position, body);
+
+        long writeNumber = _completedWrites.incrementAndGet();
+        if (_syncWrites) {
+            awaitCommit(writeNumber);
+        }
+        return segment.getBaseOffset() + position;
+    }
+
+    /**
+     * Replays the records of the journal, in order, from the specified offset up to the last record that has been
+     * completely written.
+     *
+     * @param fromOffset The offset of the first record to replay.  This is zero to replay the whole journal, or an
+     *                   offset previously returned by {@link #append(Notification)},
+     *                   {@link JournalRecord#getOffset()}, {@link JournalRecord#getNextOffset()} or this method.
+     * @param handler    The handler that each record is passed to.
+     *
+     * @return The offset following the last replayed record, from which a later replay can resume.
+     *
+     * @throws IllegalArgumentException If the offset is not within the journal.
+     */
+    public long replay(long fromOffset, JournalReplayHandler handler) {
+        List<JournalSegment> segments = _segments;
+        int segmentIndex = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            JournalSegment segment = segments.get(i);
+            if (fromOffset >= segment.getBaseOffset() && fromOffset <= segment.getBaseOffset() + segment.getCapacity()) {
+                segmentIndex = i;
+            }
+        }
+        if (segmentIndex < 0) {
+            throw new IllegalArgumentException("Offset " + fromOffset + " is not within the journal.");
+        }
+
+        byte[] scratch = new byte[4096];
+        long offset = fromOffset;
+        for (int i = segmentIndex; i < segments.size(); i++) {
+            JournalSegment segment = segments.get(i);
+            long baseOffset = segment.getBaseOffset();
+            ByteBuffer buffer = segment.readBuffer();
+            int position = (int) (offset - baseOffset);
+            int bodyLength;
+            while ((bodyLength = JournalSegment.validRecordLength(buffer, position, scratch)) > 0) {
+                int recordEnd = position + JournalSegment.RECORD_HEADER_SIZE + bodyLength;
+                buffer.limit(recordEnd);
+                buffer.position(position + JournalSegment.RECORD_HEADER_SIZE);
+                Notification notification = NotificationCodec.decode(buffer.slice());
+                handler.handleRecord(new JournalRecord(baseOffset + position, baseOffset + recordEnd, notification));
+                buffer.clear();
+
+                position = recordEnd;
+                offset = baseOffset + recordEnd;
+            }
+            if (i + 1 < segments.size()) {
+                offset = segments.get(i + 1).getBaseOffset();
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the offset at which the next record will be appended.
+     */
+    public long getEndOffset() {
+        JournalSegment segment = _currentSegment;
+        return segment.getBaseOffset() + Math.min(segment.getReservedPosition(), segment.getCapacity());
+    }
+
+    /**
+     * Forces every record that has been appended so far to the storage device.
+     */
+    public void flush() {
+        commit(_completedWrites.get());
+    }
+
+    /**
+     * Stops the commit thread, and forces every appended record to the storage device.  Subsequent appends are
+     * rejected, but the journal can still be replayed.
+     */
+    public void close() {
+        _open = false;
+        LockSupport.unpark(_commitThread);
+        try {
+            _commitThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * Encodes the notification into the calling thread's encode buffer, growing it as needed.
+     */
+    private ByteBuffer encode(Notification notification) {
+        ByteBuffer buffer = _encodeBuffers.get();
+        while (true) {
+            buffer.clear();
+            try {
+                NotificationCodec.encode(notification, buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                if (buffer.capacity() >= _segmentSize) {
+                    throw new IllegalArgumentException("The notification " + notification.getNotificationName() +
+                            " is too large for the journal's segments.");
+                }
+                buffer = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, _segmentSize));
+                _encodeBuffers.set(buffer);
+            }
+        }
+    }
+
+    /**
+     * Replaces the full segment with a new one, unless another thread has already done so.
+     */
+    private synchronized void roll(JournalSegment fullSegment) {
+        if (_currentSegment != fullSegment) {
+            return;
+        }
+        fullSegment.seal();
+        try {
+            JournalSegment segment = JournalSegment.create(_directory,
+                    fullSegment.getBaseOffset() + fullSegment.getCapacity(), _segmentSize);
+            _segments.add(segment);
+            _rolledSegments.add(fullSegment);
+            _currentSegment = segment;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create a new journal segment.", e);
+        }
+    }
+
+    /**
+     * Waits until the write with the specified number has been committed.
+     */
+    private void awaitCommit(long writeNumber) {
+        LockSupport.unpark(_commitThread);
+        int counter = 0;
+        while (_committedWrites < writeNumber) {
+            counter = WaitStrategy.PARK.idle(counter);
+        }
+    }
+
+    /**
+     * The commit thread's loop.  Each pass commits every write completed since the previous pass.
+     */
+    private void commitLoop() {
+        while (_open) {
+            LockSupport.parkNanos(this, _flushIntervalNanos);
+            long completedWrites = _completedWrites.get();
+            if (completedWrites > _committedWrites) {
+                commit(completedWrites);
+            }
+        }
+    }
+
+    /**
+     * Forces the segments that may hold uncommitted writes, and then records that the specified number of writes have
+     * been committed.  A rolled segment is forgotten once it has been forced with no writes still pending.
+     */
+    private void commit(long completedWrites) {
+        synchronized (_commitLock) {
+            for (JournalSegment curSegment : _rolledSegments) {
+                boolean pending = curSegment.hasPendingWrites();
+                curSegment.force();
+                if (!pending) {
+                    _rolledSegments.remove(curSegment);
+                }
+            }
+            _currentSegment.force();
+            if (completedWrites > _committedWrites) {
+                _committedWrites = completedWrites;
+            }
+        }
+    }
+
+    /**
+     * Opens Notification Journals.
+     */
+    public static class Builder {
+
+        private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+        private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+
+        private final File _directory;
+        private int _segmentSize = DEFAULT_SEGMENT_SIZE;
+        private long _flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_FLUSH_INTERVAL_MILLIS);
+        private boolean _syncWrites;
+
+        /**
+         * Creates a builder for a journal stored in the specified directory.  If the directory already holds a journal,
+         * the opened journal continues it.
+         *
+         * @param directory The directory that holds the journal's segment files.
+         *
+         * @throws IllegalArgumentException If no directory is specified.
+         */
+        public Builder(File directory) {
+            if (directory == null) {
+                throw new IllegalArgumentException("Journal directory must be specified.");
+            }
+            _directory = directory;
+        }
+
+        /**
+         * Sets the size of newly created segment files.  The default is 64 MB.
+         *
+         * @throws IllegalArgumentException If the size is too small to hold a record.
+         */
+        public Builder segmentSize(int segmentSize) {
+            if (segmentSize <= JournalSegment.RECORD_HEADER_SIZE) {
+                throw new IllegalArgumentException("Segment size is too small.");
+            }
+            _segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Sets how often the commit thread forces appended records to the storage device when posters are not waiting
+         * for it.  The default is 10 milliseconds.
+         *
+         * @throws IllegalArgumentException If the interval is not positive.
+         */
+        public Builder flushInterval(long interval, TimeUnit unit) {
+            if (interval <= 0) {
+                throw new IllegalArgumentException("Flush interval must be positive.");
+            }
+            _flushIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * Configures whether appending waits until the record has been forced to the storage device.  Off by default.
+         */
+        public Builder syncWrites(boolean syncWrites) {
+            _syncWrites = syncWrites;
+            return this;
+        }
+
+        /**
+         * Opens the journal.
+         *
+         * @return The opened journal.
+         *
+         * @throws IOException If the journal's directory or segment files cannot be created or mapped.
+         */
+        public NotificationJournal open() throws IOException {
+            return new NotificationJournal(this);
+        }
+    }
+}
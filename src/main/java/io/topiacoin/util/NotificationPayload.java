@@ -0,0 +1,508 @@
+package io.topiacoin.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A typed set of values carried by a Notification.  Primitive values are stored unboxed, so posting a block height or
+ * an amount does not allocate a wrapper object, and reading it back does not unbox one.
+ * <p>
+ * The values are held in flat arrays that form an open-addressing hash table keyed by the value name.  A payload is
+ * built by the poster with the put methods, and becomes read only once it is passed to a Notification.  Payloads that
+ * are posted through {@link NotificationCenter#postPooledPayload(String, String, NotificationPayload)} are not
+ * frozen, so that the poster can {@link #clear()} and refill the same payload for its next post.
+ * <p>
+ * {@link #asMap()} provides a read-only Map view of the payload for callers that use
+ * {@link Notification#getNotificationInfo()}.  Values are boxed as they are read through the view.
+ */
+public final class NotificationPayload {
+
+    /** An empty, read-only payload. */
+    public static final NotificationPayload EMPTY = new NotificationPayload(1).freeze();
+
+    static final byte TYPE_NONE = 0;
+    static final byte TYPE_INT = 1;
+    static final byte TYPE_LONG = 2;
+    static final byte TYPE_DOUBLE = 3;
+    static final byte TYPE_BOOLEAN = 4;
+    static final byte TYPE_BYTES = 5;
+    static final byte TYPE_STRING = 6;
+    static final byte TYPE_OBJECT = 7;
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /** The largest table, which is the largest power of two that an array can hold. */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /** The most values a payload can hold, since the table is kept at most half full. */
+    static final int MAX_SIZE = MAX_CAPACITY / 2;
+
+    private String[] _keys;
+    private byte[] _types;
+    private long[] _primitives;
+    private Object[] _objects;
+    private int _size;
+    private boolean _frozen;
+    private Map<String, Object> _mapView;
+
+    /**
+     * Constructs a new, empty payload.
+     */
+    public NotificationPayload() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty payload sized to hold the specified number of values without growing.
+     *
+     * @param expectedSize The number of values that the payload is expected to hold.
+     *
+     * @throws IllegalArgumentException If the expected size is negative, or more values than a payload can hold.
+     */
+    public NotificationPayload(int expectedSize) {
+        if (expectedSize < 0 || expectedSize > MAX_SIZE) {
+            throw new IllegalArgumentException("Payload size must be between 0 and " + MAX_SIZE + ".");
+        }
+        // The expected size is at most half the largest capacity, so doubling it cannot overflow.
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Constructs a copy of the specified payload.
+     */
+    private NotificationPayload(NotificationPayload source) {
+        _keys = source._keys.clone();
+        _types = source._types.clone();
+        _primitives = source._primitives.clone();
+        _objects = source._objects.clone();
+        _size = source._size;
+    }
+
+    /**
+     * Creates a read-only payload containing the entries of the specified map.  Boxed primitives, byte arrays and
+     * Strings are stored in their typed form, and any other value is stored as an object.
+     *
+     * @param map The map to copy the entries from.
+     *
+     * @return The new payload.
+     */
+    public static NotificationPayload fromMap(Map<String, Object> map) {
+        NotificationPayload payload = new NotificationPayload(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            payload.putValue(entry.getKey(), entry.getValue());
+        }
+        return payload.freeze();
+    }
+
+    // -------- Put Methods --------
+
+    public NotificationPayload putInt(String key, int value) {
+        return put(key, TYPE_INT, value, null);
+    }
+
+    public NotificationPayload putLong(String key, long value) {
+        return put(key, TYPE_LONG, value, null);
+    }
+
+    public NotificationPayload putDouble(String key, double value) {
+        return put(key, TYPE_DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    public NotificationPayload putBoolean(String key, boolean value) {
+        return put(key, TYPE_BOOLEAN, value ? 1L : 0L, null);
+    }
+
+    /**
+     * Stores a byte array in the payload.  The array is not copied, and must not be modified once the payload has been
+     * posted.
+     */
+    public NotificationPayload putBytes(String key, byte[] value) {
+        return put(key, TYPE_BYTES, 0L, value);
+    }
+
+    public NotificationPayload putString(String key, String value) {
+        return put(key, TYPE_STRING, 0L, value);
+    }
+
+    public NotificationPayload putObject(String key, Object value) {
+        return put(key, TYPE_OBJECT, 0L, value);
+    }
+
+    /**
+     * Removes all values from the payload, so that it can be refilled for another post.
+     *
+     * @throws IllegalStateException If the payload is read only.
+     */
+    public void clear() {
+        checkNotFrozen();
+        Arrays.fill(_keys, null);
+        Arrays.fill(_types, TYPE_NONE);
+        Arrays.fill(_objects, null);
+        _size = 0;
+    }
+
+    // -------- Get Methods --------
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * Returns the int value stored under the key.
+     *
+     * @throws IllegalArgumentException If the key is not present, or does not hold an int.
+     */
+    public int getInt(String key) {
+        return (int) getPrimitive(key, TYPE_INT);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        int index = indexOf(key);
+        return (index >= 0 && _types[index] == TYPE_INT ? (int) _primitives[index] : defaultValue);
+    }
+
+    /**
+     * Returns the long value stored under the key.  Int values are widened.
+     *
+     * @throws IllegalArgumentException If the key is not present, or does not hold a long or an int.
+     */
+    public long getLong(String key) {
+        int index = indexOf(key);
+        if (index < 0 || (_types[index] != TYPE_LONG && _types[index] != TYPE_INT)) {
+            throw new IllegalArgumentException("Payload does not contain a long for '" + key + "'.");
+        }
+        return _primitives[index];
+    }
+
+    public long getLong(String key, long defaultValue) {
+        int index = indexOf(key);
+        return (index >= 0 && (_types[index] == TYPE_LONG || _types[index] == TYPE_INT) ? _primitives[index] : defaultValue);
+    }
+
+    /**
+     * Returns the double value stored under the key.
+     *
+     * @throws IllegalArgumentException If the key is not present, or does not hold a double.
+     */
+    public double getDouble(String key) {
+        return Double.longBitsToDouble(getPrimitive(key, TYPE_DOUBLE));
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        int index = indexOf(key);
+        return (index >= 0 && _types[index] == TYPE_DOUBLE ? Double.longBitsToDouble(_primitives[index]) : defaultValue);
+    }
+
+    /**
+     * Returns the boolean value stored under the key.
+     *
+     * @throws IllegalArgumentException If the key is not present, or does not hold a boolean.
+     */
+    public boolean getBoolean(String key) {
+        return getPrimitive(key, TYPE_BOOLEAN) != 0L;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        int index = indexOf(key);
+        return (index >= 0 && _types[index] == TYPE_BOOLEAN ? _primitives[index] != 0L : defaultValue);
+    }
+
+    /**
+     * Returns the byte array stored under the key, or null if the key is not present.  The array is not copied, and must
+     * not be modified.
+     *
+     * @throws IllegalArgumentException If the key holds a value of another type.
+     */
+    public byte[] getBytes(String key) {
+        return (byte[]) getReference(key, TYPE_BYTES);
+    }
+
+    /**
+     * Returns the String stored under the key, or null if the key is not present.
+     *
+     * @throws IllegalArgumentException If the key holds a value of another type.
+     */
+    public String getString(String key) {
+        return (String) getReference(key, TYPE_STRING);
+    }
+
+    /**
+     * Returns the value stored under the key as an object, or null if the key is not present.  Primitive values are
+     * boxed.
+     */
+    public Object getObject(String key) {
+        int index = indexOf(key);
+        return (index >= 0 ? valueAt(index) : null);
+    }
+
+    /**
+     * Returns a read-only Map view of this payload.  The view is created the first time it is requested.
+     */
+    public Map<String, Object> asMap() {
+        if (_mapView == null) {
+            _mapView = new MapView();
+        }
+        return _mapView;
+    }
+
+    /**
+     * Returns a read-only copy of this payload.
+     */
+    public NotificationPayload copy() {
+        return new NotificationPayload(this).freeze();
+    }
+
+    public boolean isFrozen() {
+        return _frozen;
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+
+    // -------- Package Methods --------
+
+    /**
+     * Makes the payload read only.
+     */
+    NotificationPayload freeze() {
+        _frozen = true;
+        return this;
+    }
+
+    /**
+     * Stores a value of unknown type, using the typed form for boxed primitives, byte arrays and Strings.
+     */
+    NotificationPayload putValue(String key, Object value) {
+        if (value instanceof Integer) {
+            return putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+            return putLong(key, (Long) value);
+        } else if (value instanceof Double) {
+            return putDouble(key, (Double) value);
+        } else if (value instanceof Boolean) {
+            return putBoolean(key, (Boolean) value);
+        } else if (value instanceof byte[]) {
+            return putBytes(key, (byte[]) value);
+        } else if (value instanceof String) {
+            return putString(key, (String) value);
+        }
+        return putObject(key, value);
+    }
+
+    /** Returns the number of slots in the table.  Slots are addressed by index from 0 to capacity - 1. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Returns the key in the slot, or null if the slot is empty. */
+    String keyAt(int index) {
+        return _keys[index];
+    }
+
+    byte typeAt(int index) {
+        return _types[index];
+    }
+
+    long primitiveAt(int index) {
+        return _primitives[index];
+    }
+
+    Object objectAt(int index) {
+        return _objects[index];
+    }
+
+    /** Returns the value in the slot as an object, boxing primitive values. */
+    Object valueAt(int index) {
+        switch (_types[index]) {
+            case TYPE_INT:
+                return (int) _primitives[index];
+            case TYPE_LONG:
+                return _primitives[index];
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(_primitives[index]);
+            case TYPE_BOOLEAN:
+                return _primitives[index] != 0L;
+            default:
+                return _objects[index];
+        }
+    }
+
+    // -------- Internal Methods --------
+
+    private void allocate(int capacity) {
+        _keys = new String[capacity];
+        _types = new byte[capacity];
+        _primitives = new long[capacity];
+        _objects = new Object[capacity];
+    }
+
+    private NotificationPayload put(String key, byte type, long primitive, Object object) {
+        if (key == null) {
+            throw new IllegalArgumentException("Payload key must be specified.");
+        }
+        checkNotFrozen();
+
+        int index = slotFor(key, _keys);
+        if (_keys[index] == null) {
+            if ((_size + 1) * 2 > _keys.length) {
+                grow();
+                index = slotFor(key, _keys);
+            }
+            _keys[index] = key;
+            _size++;
+        }
+        _types[index] = type;
+        _primitives[index] = primitive;
+        _objects[index] = object;
+        return this;
+    }
+
+    private long getPrimitive(String key, byte type) {
+        int index = indexOf(key);
+        if (index < 0 || _types[index] != type) {
+            throw new IllegalArgumentException("Payload does not contain a value of the requested type for '" + key + "'.");
+        }
+        return _primitives[index];
+    }
+
+    private Object getReference(String key, byte type) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        if (_types[index] != type) {
+            throw new IllegalArgumentException("Payload does not contain a value of the requested type for '" + key + "'.");
+        }
+        return _objects[index];
+    }
+
+    private int indexOf(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int index = slotFor(key, _keys);
+        return (_keys[index] != null ? index : -1);
+    }
+
+    /**
+     * Returns the slot holding the key, or the empty slot where it would be inserted.  The table is never full, so
+     * probing always terminates.
+     */
+    private static int slotFor(String key, String[] keys) {
+        int mask = keys.length - 1;
+        int hash = key.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        while (keys[index] != null && !keys[index].equals(key)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void grow() {
+        if (_keys.length >= MAX_CAPACITY) {
+            throw new IllegalStateException("The payload cannot hold more than " + MAX_SIZE + " values.");
+        }
+        String[] oldKeys = _keys;
+        byte[] oldTypes = _types;
+        long[] oldPrimitives = _primitives;
+        Object[] oldObjects = _objects;
+
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = slotFor(oldKeys[i], _keys);
+                _keys[index] = oldKeys[i];
+                _types[index] = oldTypes[i];
+                _primitives[index] = oldPrimitives[i];
+                _objects[index] = oldObjects[i];
+            }
+        }
+    }
+
+    private void checkNotFrozen() {
+        if (_frozen) {
+            throw new IllegalStateException("The payload is read only.");
+        }
+    }
+
+    /**
+     * A read-only Map view over the payload's table.
+     */
+    private class MapView extends AbstractMap<String, Object> {
+
+        @Override
+        public int size() {
+            return _size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && indexOf((String) key) >= 0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return (key instanceof String ? getObject((String) key) : null);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public int size() {
+                    return _size;
+                }
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int _next = advance(0);
+
+                        public boolean hasNext() {
+                            return _next < _keys.length;
+                        }
+
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int index = _next;
+                            _next = advance(index + 1);
+                            return new SimpleImmutableEntry<String, Object>(_keys[index], valueAt(index));
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+
+                        private int advance(int index) {
+                            while (index < _keys.length && _keys[index] == null) {
+                                index++;
+                            }
+                            return index;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
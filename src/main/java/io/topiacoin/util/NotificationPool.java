@@ -0,0 +1,47 @@
+package io.topiacoin.util;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of reusable Notifications for the Notification Center's pooled posting path.  Each thread has its own pool, so
+ * acquiring and releasing a notification takes no locks, and a handler that posts from within its callback receives a
+ * different notification from the one it is handling.
+ */
+class NotificationPool {
+
+    /**
+     * The maximum number of idle notifications kept for each thread.  This bounds the nesting depth of posts from
+     * handler callbacks that can be served without allocating.
+     */
+    private static final int MAX_IDLE_PER_THREAD = 16;
+
+    private final ThreadLocal<ArrayDeque<Notification>> _idleNotifications = new ThreadLocal<ArrayDeque<Notification>>() {
+        @Override
+        protected ArrayDeque<Notification> initialValue() {
+            return new ArrayDeque<Notification>(MAX_IDLE_PER_THREAD);
+        }
+    };
+
+    /**
+     * Returns an empty reusable notification, taking it from the calling thread's pool if one is available.
+     */
+    Notification acquire() {
+        Notification notification = _idleNotifications.get().pollFirst();
+        return (notification != null ? notification : new Notification());
+    }
+
+    /**
+     * Returns a notification to the calling thread's pool once its delivery has completed.  Notifications that were
+     * retained by a handler are not returned to the pool.
+     */
+    void release(Notification notification) {
+        if (notification.isRetained()) {
+            return;
+        }
+        notification.clear();
+        ArrayDeque<Notification> idleNotifications = _idleNotifications.get();
+        if (idleNotifications.size() < MAX_IDLE_PER_THREAD) {
+            idleNotifications.addFirst(notification);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.topiacoin.util;
+
+/**
+ * Receives the notifications that a Notification Center rejects because their dispatch queue is full and the center's
+ * overflow policy is {@link OverflowPolicy#FAIL_FAST}.
+ */
+public interface NotificationRejectionHandler {
+
+    /**
+     * Called on the posting thread when a notification is rejected.
+     *
+     * @param notification The notification that was rejected.  It is not delivered to any handler.
+     */
+    void notificationRejected(Notification notification);
+}
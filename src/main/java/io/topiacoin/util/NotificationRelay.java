@@ -0,0 +1,816 @@
+package io.topiacoin.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards notifications between the Notification Centers of different nodes over TCP connections.
+ * <p>
+ * A relay is attached to a local center, and connects to the relays of other nodes, or accepts their connections.
+ * Each relay subscribes to the notifications it wants from its peers with {@link #subscribe(String, String)}, using
+ * the same notification name and classifier semantics as
+ * {@link NotificationCenter#addHandler(NotificationHandler, String, String)}, including patterns.  A relay sends its
+ * subscriptions to every peer as soon as it is connected, and a peer registers a handler for each of them with its own
+ * center, provided the subscription is one that the peer's relay allows with
+ * {@link Builder#allowSubscription(String, String)}.  The notifications delivered to that handler are queued for the
+ * subscriber, and nothing else is sent.
+ * Notifications received from a peer are posted to the local center, and are never sent back to the peer they came
+ * from.  Peers should therefore be connected as a tree, since a notification forwarded around a cycle of relays
+ * returns to the node that posted it.
+ * <p>
+ * All network I/O is performed by a single thread using a non-blocking selector.  Queued notifications are not sent
+ * one at a time.  Instead, the first notification queued for an idle peer opens a flush window, and everything queued
+ * for the peer by the end of the window is encoded with a {@link NotificationCodec.Encoder} kept for the connection
+ * and written in as few frames as possible.  A peer's notifications are also written early once enough of them are
+ * waiting, and while earlier frames are still waiting to be written, new notifications keep queuing and are batched
+ * into the next write.  Notifications received from a peer are posted to the local center by the relay's thread, so
+ * handlers of relayed notifications that may block should be registered with an executor.
+ * <p>
+ * A relay keeps what it holds for each peer bounded.  Once {@link Builder#maxQueueSize(int)} notifications are queued
+ * for a peer that is not keeping up, further notifications for it are dropped and counted in
+ * {@link #getDroppedCount()}, as are notifications whose info cannot be encoded and notifications larger than a frame.
+ * Frames larger than {@link Builder#maxFrameSize(int)} are rejected, as are streams that define more names or
+ * classifiers than a {@link NotificationCodec.Decoder} keeps, so relays that exchange notifications must be built with
+ * the same frame size.  A peer that sends a malformed frame is disconnected.
+ * <p>
+ * Connections that fail or are closed by the peer are not re-established.  Their subscriptions are removed from the
+ * local center.
+ * <p>
+ * The relay does not authenticate its peers or encrypt its connections.  Any process that can connect to a listening
+ * relay can subscribe to the notifications it allows, and can post notifications to the local center.  A relay must
+ * therefore only listen on trusted networks, and should only allow the subscriptions its peers need.
+ */
+public final class NotificationRelay implements Closeable {
+
+    private static final byte FRAME_SUBSCRIBE = 1;
+    private static final byte FRAME_NOTIFICATIONS = 2;
+
+    /**
+     * The size of the length and type that precede each frame body.  The length covers the type and the body.
+     */
+    private static final int FRAME_HEADER_SIZE = 5;
+    private static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    private final NotificationCenter _center;
+    private final long _flushWindowNanos;
+    private final int _maxFrameSize;
+    private final int _maxBatchSize;
+    private final int _maxQueueSize;
+    private final List<String[]> _allowedSubscriptions;
+
+    private final Selector _selector;
+    private final ServerSocketChannel _serverChannel;
+    private final List<Peer> _peers = new ArrayList<Peer>();
+    private final List<String[]> _subscriptions = new CopyOnWriteArrayList<String[]>();
+    private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final Queue<Peer> _readyPeers = new ConcurrentLinkedQueue<Peer>();
+
+    private final AtomicInteger _peerCount = new AtomicInteger();
+    private final AtomicInteger _remoteSubscriptionCount = new AtomicInteger();
+    private final AtomicLong _forwardedCount = new AtomicLong();
+    private final AtomicLong _receivedCount = new AtomicLong();
+    private final AtomicLong _frameCount = new AtomicLong();
+    private final AtomicLong _droppedCount = new AtomicLong();
+    private final AtomicLong _rejectedSubscriptionCount = new AtomicLong();
+
+    private final Thread _selectorThread;
+    private volatile boolean _open = true;
+
+    private NotificationRelay(Builder builder) throws IOException {
+        _center = builder._center;
+        _flushWindowNanos = builder._flushWindowNanos;
+        _maxFrameSize = builder._maxFrameSize;
+        _maxBatchSize = builder._maxBatchSize;
+        _maxQueueSize = builder._maxQueueSize;
+        _allowedSubscriptions = new ArrayList<String[]>(builder._allowedSubscriptions);
+
+        _selector = Selector.open();
+        if (builder._listenAddress != null) {
+            _serverChannel = ServerSocketChannel.open();
+            _serverChannel.configureBlocking(false);
+            _serverChannel.socket().bind(builder._listenAddress);
+            _serverChannel.register(_selector, SelectionKey.OP_ACCEPT);
+        } else {
+            _serverChannel = null;
+        }
+
+        _selectorThread = new Thread(new Runnable() {
+            public void run() {
+                selectLoop();
+            }
+        }, "NotificationRelay-selector");
+        _selectorThread.setDaemon(true);
+        _selectorThread.start();
+    }
+
+    /**
+     * Returns the address the relay accepts connections on, or null if it does not listen for connections.
+     */
+    public InetSocketAddress getLocalAddress() {
+        return (_serverChannel != null ? (InetSocketAddress) _serverChannel.socket().getLocalSocketAddress() : null);
+    }
+
+    /**
+     * Starts connecting to the relay of another node.  The connection is completed in the background, and the relay's
+     * subscriptions are sent to the peer once it is established.
+     *
+     * @param address The address the peer's relay accepts connections on.
+     *
+     * @throws IOException           If the connection cannot be started.
+     * @throws IllegalStateException If the relay has been closed.
+     */
+    public void connect(InetSocketAddress address) throws IOException {
+        if (!_open) {
+            throw new IllegalStateException("The relay has been closed.");
+        }
+        final SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        final boolean connected = channel.connect(address);
+        submit(new Runnable() {
+            public void run() {
+                register(channel, connected);
+            }
+        });
+    }
+
+    /**
+     * Subscribes to the notifications with the specified name and classifier posted on every peer, current and future.
+     * The received notifications are posted to the local center.  A notification that matches more than one
+     * subscription is sent once for each of them.
+     *
+     * @param notificationName The name of the notifications to receive, or a pattern matching them.  If null,
+     *                         notifications with any name that match the classifier are received.
+     * @param classifier       The classifier of the notifications to receive.  If null, notifications with any
+     *                         classifier that match the notification name are received.
+     */
+    public void subscribe(final String notificationName, final String classifier) {
+        _subscriptions.add(new String[]{notificationName, classifier});
+        submit(new Runnable() {
+            public void run() {
+                for (Peer curPeer : _peers) {
+                    curPeer.sendSubscription(notificationName, classifier);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the number of peers the relay is connected to.
+     */
+    public int getPeerCount() {
+        return _peerCount.get();
+    }
+
+    /**
+     * Returns the number of subscriptions that connected peers have registered with the local center.
+     */
+    public int getRemoteSubscriptionCount() {
+        return _remoteSubscriptionCount.get();
+    }
+
+    /**
+     * Returns the number of notifications sent to peers.
+     */
+    public long getForwardedCount() {
+        return _forwardedCount.get();
+    }
+
+    /**
+     * Returns the number of notifications received from peers and posted to the local center.
+     */
+    public long getReceivedCount() {
+        return _receivedCount.get();
+    }
+
+    /**
+     * Returns the number of frames of notifications sent to peers.
+     */
+    public long getFrameCount() {
+        return _frameCount.get();
+    }
+
+    /**
+     * Returns the number of notifications for peers that were dropped because the peer's queue was full, because their
+     * info could not be encoded, or because they were larger than a frame.
+     */
+    public long getDroppedCount() {
+        return _droppedCount.get();
+    }
+
+    /**
+     * Returns the number of subscriptions that peers requested and that the relay does not allow.
+     */
+    public long getRejectedSubscriptionCount() {
+        return _rejectedSubscriptionCount.get();
+    }
+
+    /**
+     * Closes every connection, stops accepting new ones, and removes the peers' subscriptions from the local center.
+     * Notifications that are still queued for a peer are discarded.
+     */
+    public void close() {
+        _open = false;
+        _selector.wakeup();
+        try {
+            _selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * Runs a task on the selector thread.
+     */
+    private void submit(Runnable task) {
+        _tasks.add(task);
+        _selector.wakeup();
+    }
+
+    /**
+     * The selector thread's loop.  Runs submitted tasks, flushes the peers whose flush window has ended, and performs
+     * the I/O that is ready, until the relay is closed.
+     */
+    private void selectLoop() {
+        try {
+            while (_open) {
+                long waitNanos = runPendingWork();
+                if (waitNanos == 0) {
+                    _selector.selectNow();
+                } else if (waitNanos < 0) {
+                    _selector.select();
+                } else {
+                    _selector.select(Math.max(1, (waitNanos + 999999) / 1000000));
+                }
+
+                Iterator<SelectionKey> iterator = _selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    handleKey(key);
+                }
+            }
+        } catch (IOException e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Runs the submitted tasks, opens flush windows for peers that have notifications queued, and flushes the peers
+     * whose window has ended.
+     *
+     * @return The time until the next flush window ends, in nanoseconds, or -1 if no window is open.  Peers that are
+     *         still writing earlier frames are left out, since they are flushed once those frames have been written.
+     */
+    private long runPendingWork() {
+        Runnable task;
+        while ((task = _tasks.poll()) != null) {
+            task.run();
+        }
+
+        long now = System.nanoTime();
+        Peer peer;
+        while ((peer = _readyPeers.poll()) != null) {
+            if (!peer.scheduled) {
+                peer.scheduled = true;
+                peer.flushDeadline = now + _flushWindowNanos;
+            }
+        }
+
+        long waitNanos = -1;
+        for (Peer curPeer : new ArrayList<Peer>(_peers)) {
+            if (!curPeer.scheduled) {
+                continue;
+            }
+            long remaining = curPeer.flushDeadline - now;
+            if (remaining <= 0 || curPeer.flushNow) {
+                curPeer.flush();
+            }
+            // A peer that is still writing earlier frames is woken by OP_WRITE, and is flushed once they have been
+            // written, so its deadline would only make the selector spin until then.
+            if (curPeer.scheduled && curPeer.output.position() == 0) {
+                remaining = Math.max(0, remaining);
+                waitNanos = (waitNanos < 0 ? remaining : Math.min(waitNanos, remaining));
+            }
+        }
+        return waitNanos;
+    }
+
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        Peer peer = (Peer) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                peer.channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                established(peer);
+            }
+            if (key.isValid() && key.isReadable()) {
+                peer.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                peer.write();
+            }
+        } catch (IOException e) {
+            disconnect(peer);
+        } catch (IllegalArgumentException e) {
+            // The peer sent a malformed frame.
+            disconnect(peer);
+        } catch (RuntimeException e) {
+            // Only the peer whose frame could not be handled is dropped, rather than the selector thread and with it
+            // every other peer.
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            disconnect(peer);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = _serverChannel.accept();
+            if (channel != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                register(channel, true);
+            }
+        } catch (IOException e) {
+            // The connection was abandoned before it could be accepted.
+        }
+    }
+
+    private void register(SocketChannel channel, boolean connected) {
+        Peer peer = new Peer(channel);
+        try {
+            peer.key = channel.register(_selector, (connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT), peer);
+        } catch (IOException e) {
+            closeChannel(channel);
+            return;
+        }
+        if (connected) {
+            established(peer);
+        }
+    }
+
+    /**
+     * Starts exchanging notifications with a peer whose connection has been established.
+     */
+    private void established(Peer peer) {
+        _peers.add(peer);
+        _peerCount.incrementAndGet();
+        for (String[] curSubscription : _subscriptions) {
+            peer.sendSubscription(curSubscription[0], curSubscription[1]);
+        }
+    }
+
+    private void disconnect(Peer peer) {
+        if (_peers.remove(peer)) {
+            _peerCount.decrementAndGet();
+        }
+        _center.removeHandler(peer);
+        _remoteSubscriptionCount.addAndGet(-peer.subscriptionCount);
+        peer.subscriptionCount = 0;
+        peer.key.cancel();
+        closeChannel(peer.channel);
+    }
+
+    private void closeAll() {
+        for (Peer curPeer : new ArrayList<Peer>(_peers)) {
+            disconnect(curPeer);
+        }
+        for (SelectionKey curKey : _selector.keys()) {
+            if (curKey.channel() instanceof SocketChannel) {
+                closeChannel((SocketChannel) curKey.channel());
+            }
+        }
+        try {
+            if (_serverChannel != null) {
+                _serverChannel.close();
+            }
+            _selector.close();
+        } catch (IOException e) {
+            // Nothing more can be done with a channel or selector that fails to close.
+        }
+    }
+
+    private static void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing more can be done with a channel that fails to close.
+        }
+    }
+
+    /**
+     * Returns true if the relay allows peers to subscribe with the specified notification name and classifier.
+     */
+    private boolean isAllowed(String notificationName, String classifier) {
+        for (String[] curAllowed : _allowedSubscriptions) {
+            if ((curAllowed[0] == null || curAllowed[0].equals(notificationName))
+                    && (curAllowed[1] == null || curAllowed[1].equals(classifier))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int nullableStringSize(String value) {
+        if (value == null) {
+            return 1;
+        }
+        int length = NotificationCodec.stringSize(value);
+        return NotificationCodec.varIntSize(length + 1) + length;
+    }
+
+    private static void putNullableString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            NotificationCodec.putVarInt(buffer, 0);
+            return;
+        }
+        // A length of zero means null, so the length is offset by one.
+        NotificationCodec.putVarInt(buffer, NotificationCodec.stringSize(value) + 1);
+        NotificationCodec.putString(buffer, value);
+    }
+
+    private static String getNullableString(ByteBuffer buffer) {
+        int length = NotificationCodec.getVarInt(buffer);
+        return (length == 0 ? null : NotificationCodec.getString(buffer, length - 1));
+    }
+
+    /**
+     * A connection to another node's relay.  The peer is the handler registered with the local center for the
+     * subscriptions it has sent, and queues the notifications delivered to it for sending, up to the relay's maximum
+     * queue size.  Apart from that queue and its counter, a peer is only used by the selector thread.
+     */
+    private class Peer implements NotificationHandler {
+
+        final SocketChannel channel;
+        SelectionKey key;
+
+        final Queue<Notification> queue = new ConcurrentLinkedQueue<Notification>();
+        final AtomicInteger queued = new AtomicInteger();
+        volatile boolean flushNow;
+        boolean scheduled;
+        long flushDeadline;
+        int subscriptionCount;
+        final Set<List<String>> subscriptions = new HashSet<List<String>>();
+
+        final NotificationCodec.Encoder encoder = new NotificationCodec.Encoder();
+        final NotificationCodec.Decoder decoder = new NotificationCodec.Decoder();
+        ByteBuffer output = ByteBuffer.allocate(_maxFrameSize + FRAME_HEADER_SIZE);
+        ByteBuffer input = ByteBuffer.allocate(_maxFrameSize + FRAME_HEADER_SIZE);
+
+        Peer(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Queues a notification delivered by the local center for sending to the peer, unless it came from the peer.
+         */
+        public void handleNotification(Notification notification) {
+            if (notification.getOrigin() == this) {
+                return;
+            }
+            int count = queued.getAndIncrement();
+            if (count >= _maxQueueSize) {
+                // The peer is not keeping up, so the notification is dropped rather than held without bound.
+                queued.decrementAndGet();
+                _droppedCount.incrementAndGet();
+                return;
+            }
+            queue.add(notification.retain());
+            if (count == 0) {
+                _readyPeers.add(this);
+                _selector.wakeup();
+            } else if (count + 1 == _maxBatchSize) {
+                flushNow = true;
+                _selector.wakeup();
+            }
+        }
+
+        void sendSubscription(String notificationName, String classifier) {
+            int bodySize = nullableStringSize(notificationName) + nullableStringSize(classifier);
+            ensureOutput(FRAME_HEADER_SIZE + bodySize);
+            output.putInt(1 + bodySize);
+            output.put(FRAME_SUBSCRIBE);
+            putNullableString(output, notificationName);
+            putNullableString(output, classifier);
+            tryWrite();
+        }
+
+        /**
+         * Encodes the queued notifications into frames and writes them, unless earlier frames are still waiting to be
+         * written.  Notifications that cannot be encoded, or that are larger than a frame, are dropped.
+         */
+        void flush() {
+            if (output.position() > 0) {
+                return;
+            }
+            scheduled = false;
+            flushNow = false;
+
+            int frameStart = -1;
+            Notification notification;
+            while ((notification = queue.peek()) != null) {
+                if (frameStart < 0) {
+                    ensureOutput(FRAME_HEADER_SIZE + _maxFrameSize);
+                    frameStart = output.position();
+                    output.position(frameStart + FRAME_HEADER_SIZE);
+                    // Notifications are only encoded up to the end of the frame, so no frame is larger than peers accept.
+                    output.limit(frameStart + FRAME_HEADER_SIZE + _maxFrameSize);
+                }
+                boolean encoded = true;
+                try {
+                    encoder.encode(notification, output);
+                } catch (IllegalArgumentException e) {
+                    encoded = false;
+                } catch (BufferOverflowException e) {
+                    if (output.position() > frameStart + FRAME_HEADER_SIZE) {
+                        endFrame(frameStart);
+                        frameStart = -1;
+                        continue;
+                    }
+                    encoded = false;
+                }
+                queue.poll();
+                queued.decrementAndGet();
+                if (encoded) {
+                    _forwardedCount.incrementAndGet();
+                } else {
+                    _droppedCount.incrementAndGet();
+                }
+                if (output.position() == output.limit()) {
+                    endFrame(frameStart);
+                    frameStart = -1;
+                }
+            }
+            if (frameStart >= 0) {
+                if (output.position() > frameStart + FRAME_HEADER_SIZE) {
+                    endFrame(frameStart);
+                } else {
+                    // Every notification of the frame was dropped.
+                    output.limit(output.capacity());
+                    output.position(frameStart);
+                }
+            }
+            tryWrite();
+        }
+
+        void read() throws IOException {
+            if (channel.read(input) < 0) {
+                disconnect(this);
+                return;
+            }
+            input.flip();
+            while (input.remaining() >= FRAME_HEADER_SIZE) {
+                int length = input.getInt(input.position());
+                // The input buffer holds the largest frame allowed, so a peer cannot make it grow.
+                if (length < 1 || length > _maxFrameSize + 1) {
+                    throw new IllegalArgumentException("Invalid frame length " + length);
+                }
+                if (input.remaining() < 4 + length) {
+                    break;
+                }
+                input.getInt();
+                byte type = input.get();
+                // Decoded notifications read their payloads from the frame lazily, so each frame gets its own copy.
+                byte[] body = new byte[length - 1];
+                input.get(body);
+                handleFrame(type, ByteBuffer.wrap(body));
+            }
+            input.compact();
+        }
+
+        void write() throws IOException {
+            output.flip();
+            channel.write(output);
+            output.compact();
+            if (output.position() > 0) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                // A flush that was put off while earlier frames were being written is made once its window has ended.
+                if (scheduled && (flushNow || flushDeadline - System.nanoTime() <= 0)) {
+                    flush();
+                }
+            }
+        }
+
+        private void handleFrame(byte type, ByteBuffer body) {
+            switch (type) {
+                case FRAME_SUBSCRIBE:
+                    String notificationName = getNullableString(body);
+                    String classifier = getNullableString(body);
+                    if (!isAllowed(notificationName, classifier)) {
+                        _rejectedSubscriptionCount.incrementAndGet();
+                        break;
+                    }
+                    // A repeated subscription would register the peer again, and have it sent everything twice.
+                    if (!subscriptions.add(Arrays.asList(notificationName, classifier))) {
+                        break;
+                    }
+                    _center.addHandler(this, notificationName, classifier);
+                    subscriptionCount++;
+                    _remoteSubscriptionCount.incrementAndGet();
+                    break;
+                case FRAME_NOTIFICATIONS:
+                    while (body.hasRemaining()) {
+                        Notification notification = decoder.decode(body);
+                        notification.setOrigin(this);
+                        _receivedCount.incrementAndGet();
+                        try {
+                            _center.postNotification(notification);
+                        } catch (RuntimeException e) {
+                            Thread thread = Thread.currentThread();
+                            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown frame type " + type);
+            }
+        }
+
+        private void endFrame(int frameStart) {
+            output.limit(output.capacity());
+            output.putInt(frameStart, output.position() - frameStart - 4);
+            output.put(frameStart + 4, FRAME_NOTIFICATIONS);
+            _frameCount.incrementAndGet();
+        }
+
+        private void ensureOutput(int size) {
+            if (output.remaining() < size) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + size));
+                output.flip();
+                larger.put(output);
+                output = larger;
+            }
+        }
+
+        private void tryWrite() {
+            try {
+                write();
+            } catch (IOException e) {
+                disconnect(this);
+            }
+        }
+    }
+
+    /**
+     * Opens Notification Relays.
+     */
+    public static class Builder {
+
+        private static final long DEFAULT_FLUSH_WINDOW_MICROS = 500;
+        private static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024;
+        private static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+        private static final int DEFAULT_MAX_QUEUE_SIZE = 64 * 1024;
+
+        private final NotificationCenter _center;
+        private InetSocketAddress _listenAddress;
+        private long _flushWindowNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_FLUSH_WINDOW_MICROS);
+        private int _maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+        private int _maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private int _maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+        private final List<String[]> _allowedSubscriptions = new ArrayList<String[]>();
+
+        /**
+         * Creates a builder for a relay attached to the specified center.
+         *
+         * @throws IllegalArgumentException If no center is specified.
+         */
+        public Builder(NotificationCenter center) {
+            if (center == null) {
+                throw new IllegalArgumentException("Notification center must be specified.");
+            }
+            _center = center;
+        }
+
+        /**
+         * Configures the relay to accept connections from other relays on the specified address.  A port of zero
+         * chooses a free port, which can be found with {@link NotificationRelay#getLocalAddress()}.
+         */
+        public Builder listen(InetSocketAddress address) {
+            _listenAddress = address;
+            return this;
+        }
+
+        /**
+         * Sets how long notifications queued for an idle peer wait for more to be batched with them.  The default is
+         * 500 microseconds.  A window of zero sends each notification as soon as the relay's thread gets to it, still
+         * batching those that are queued while it is busy.
+         *
+         * @throws IllegalArgumentException If the window is negative.
+         */
+        public Builder flushWindow(long window, TimeUnit unit) {
+            if (window < 0) {
+                throw new IllegalArgumentException("Flush window cannot be negative.");
+            }
+            _flushWindowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * Allows peers to subscribe to the notifications with the specified name and classifier.  A peer's
+         * subscription is allowed if its name and classifier are those of an allowed subscription, where a null name or
+         * classifier in the allowed subscription allows any.  Patterns are compared as strings, so allowing a pattern
+         * allows peers to subscribe with that pattern, but not with the names it matches.  Subscriptions that are not
+         * allowed are ignored, and counted in {@link NotificationRelay#getRejectedSubscriptionCount()}.
+         * <p>
+         * By default, no subscriptions are allowed, so a relay only receives notifications from its peers.  Allowing a
+         * null name and classifier lets peers subscribe to every notification posted to the local center.
+         *
+         * @param notificationName The notification name peers may subscribe with, or null to allow any.
+         * @param classifier       The classifier peers may subscribe with, or null to allow any.
+         *
+         * @return This builder.
+         */
+        public Builder allowSubscription(String notificationName, String classifier) {
+            _allowedSubscriptions.add(new String[]{notificationName, classifier});
+            return this;
+        }
+
+        /**
+         * Sets the size of the encoded notifications in a frame beyond which a new frame is started.  The default is
+         * 64 KB.  A notification larger than this is dropped, and a frame larger than this received from a peer is
+         * treated as malformed, so relays that exchange notifications must use the same frame size.
+         *
+         * @throws IllegalArgumentException If the size is not positive.
+         */
+        public Builder maxFrameSize(int maxFrameSize) {
+            if (maxFrameSize < 1 || maxFrameSize > MAX_FRAME_LENGTH - 1) {
+                throw new IllegalArgumentException("Frame size must be positive and at most " + (MAX_FRAME_LENGTH - 1));
+            }
+            _maxFrameSize = maxFrameSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of notifications queued for a peer that ends its flush window early.  The default is 1024.
+         *
+         * @throws IllegalArgumentException If the size is not positive.
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be positive.");
+            }
+            _maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of notifications that can be queued for a peer.  Once that many are queued, further
+         * notifications for the peer are dropped until it catches up.  The default is 65536.
+         *
+         * @throws IllegalArgumentException If the size is not positive.
+         */
+        public Builder maxQueueSize(int maxQueueSize) {
+            if (maxQueueSize < 1) {
+                throw new IllegalArgumentException("Queue size must be positive.");
+            }
+            _maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        /**
+         * Opens the relay, binding its listening address if one was configured.
+         *
+         * @return The opened relay.
+         *
+         * @throws IOException If the selector cannot be opened or the address cannot be bound.
+         */
+        public NotificationRelay open() throws IOException {
+            return new NotificationRelay(this);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.topiacoin.util;
+
+/**
+ * The policies that decide what happens to a notification that is posted to a bounded dispatch queue that is full.
+ * Every post that finds its queue full is counted as an overflow in the center's
+ * {@link NotificationCenterStats#getOverflowCount() stats}, whichever policy is in effect.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The posting thread waits until the queue has room for the notification.  Posting to a full queue from a handler
+     * that is being called from that same queue never completes, so handlers of a blocking center should not post
+     * notifications that may be assigned to their own queue.
+     */
+    BLOCK,
+
+    /**
+     * The oldest notification waiting in the queue is discarded to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new notification is discarded, and the queue is left unchanged.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The new notification replaces the most recently queued notification with the same name and classifier, which
+     * has not been delivered yet and is now out of date.  If the queue holds no such notification, the oldest
+     * notification is discarded instead, as with {@link #DROP_OLDEST}.
+     */
+    COALESCE,
+
+    /**
+     * The new notification is rejected immediately.  The center's
+     * {@link NotificationRejectionHandler rejection handler} is told about the notification, or, if the center has no
+     * rejection handler, the post throws a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    FAIL_FAST
+}
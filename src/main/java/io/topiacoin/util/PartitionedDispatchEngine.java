@@ -0,0 +1,329 @@
+package io.topiacoin.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A dispatch engine that delivers notifications asynchronously, in order for each classifier.
+ * <p>
+ * Each notification is assigned to one of a fixed number of lanes by hashing its classifier, so notifications with the
+ * same classifier always share a lane.  A lane is a queue that is drained by at most one thread at a time, which keeps
+ * its notifications in the order they were posted.  Lanes are not tied to threads: whenever a lane has notifications
+ * waiting, a drain task for it is submitted to a shared work-stealing pool, so an idle worker picks up whichever lane
+ * is ready.  Since a lane never has more than one drain task scheduled, stealing the task cannot reorder the lane.
+ * <p>
+ * A drain task delivers a limited number of notifications before rescheduling itself, so that a busy lane does not
+ * keep a worker from the other lanes.
+ * <p>
+ * Lanes can be bounded, in which case a notification posted to a full lane is handled according to the engine's
+ * {@link OverflowPolicy}.
+ */
+class PartitionedDispatchEngine extends DispatchEngine {
+
+    /**
+     * The number of notifications a drain task delivers before giving the worker up to other lanes.
+     */
+    private static final int MAX_DRAIN = 64;
+
+    private final Lane[] _lanes;
+    private final int _laneCapacity;
+    private final OverflowPolicy _overflowPolicy;
+    private final NotificationRejectionHandler _rejectionHandler;
+    private final ForkJoinPool _pool;
+    private final StripedCounter _overflowCount = new StripedCounter();
+    private volatile boolean _running = true;
+
+    /**
+     * Constructs a new Partitioned Dispatch Engine.
+     *
+     * @param laneCount        The number of lanes that classifiers are hashed to.
+     * @param laneCapacity     The number of notifications that can wait in each lane.
+     * @param overflowPolicy   What to do with a notification that is posted to a full lane.
+     * @param rejectionHandler The handler told about notifications rejected by the {@link OverflowPolicy#FAIL_FAST}
+     *                         policy, or null to reject them by throwing an exception to the poster.
+     *
+     * @throws IllegalArgumentException If the lane count or capacity is not positive, or no overflow policy is
+     *                                  specified.
+     */
+    PartitionedDispatchEngine(int laneCount, int laneCapacity, OverflowPolicy overflowPolicy,
+                              NotificationRejectionHandler rejectionHandler) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("Lane count must be positive.");
+        }
+        if (laneCapacity < 1) {
+            throw new IllegalArgumentException("Lane capacity must be positive.");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy must be specified.");
+        }
+        _laneCapacity = laneCapacity;
+        _overflowPolicy = overflowPolicy;
+        _rejectionHandler = rejectionHandler;
+
+        _lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            _lanes[i] = new Lane();
+        }
+        _pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new LaneThreadFactory(), null, true);
+    }
+
+    @Override
+    void dispatch(Notification notification, Registration[] registrations) {
+        if (registrations.length == 0) {
+            return;
+        }
+        if (!_running) {
+            throw new IllegalStateException("The Notification Center has been shut down.");
+        }
+
+        // The notification is delivered after the post returns, so a pooled notification must be retained.
+        laneFor(notification.getClassifier()).enqueue(new Entry(notification.retain(), registrations));
+    }
+
+    /**
+     * Enqueues each notification of the batch on its lane.  Lanes deliver notifications one at a time, so batch
+     * handlers receive the notifications individually.
+     */
+    @Override
+    void dispatchBatch(List<Notification> notifications, Registration[][] registrations) {
+        for (int i = 0; i < notifications.size(); i++) {
+            dispatch(notifications.get(i), registrations[i]);
+        }
+    }
+
+    @Override
+    int getQueueDepth() {
+        int depth = 0;
+        for (Lane curLane : _lanes) {
+            depth += curLane._size.get();
+        }
+        return depth;
+    }
+
+    @Override
+    long getOverflowCount() {
+        return _overflowCount.sum();
+    }
+
+    @Override
+    void shutdown() {
+        _running = false;
+        _pool.shutdown();
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * Returns the lane that notifications with the classifier are assigned to.
+     */
+    private Lane laneFor(String classifier) {
+        if (classifier == null) {
+            return _lanes[0];
+        }
+        int hash = classifier.hashCode();
+        hash ^= (hash >>> 16);
+        return _lanes[(hash & 0x7fffffff) % _lanes.length];
+    }
+
+    /**
+     * Delivers a notification to a single registration.  Anything thrown by a handler, errors included, is passed to
+     * the worker thread's uncaught exception handler, so that it neither stops delivery to the remaining handlers nor
+     * ends the lane's drain before the lane is released, which would strand its queue and block posters forever.
+     */
+    private void deliver(Registration registration, Notification notification) {
+        try {
+            registration.deliver(notification);
+        } catch (Throwable e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    /**
+     * A notification waiting in a lane, with the registrations it is to be delivered to.  The notification is taken
+     * out of the entry atomically, either by the lane for delivery or by a poster that discards it, so that it is never
+     * both delivered and discarded.  A coalescing poster replaces it only while it is still waiting.
+     */
+    private static class Entry {
+        final AtomicReference<Notification> notification;
+        final Registration[] registrations;
+
+        Entry(Notification notification, Registration[] registrations) {
+            this.notification = new AtomicReference<Notification>(notification);
+            this.registrations = registrations;
+        }
+
+        /**
+         * Takes the notification out of the entry, returning null if it has already been taken.
+         */
+        Notification take() {
+            return notification.getAndSet(null);
+        }
+
+        /**
+         * Replaces the notification if the entry is for the same name and classifier and is still waiting.
+         */
+        boolean coalesce(Entry replacement) {
+            Notification current = notification.get();
+            return isSameTopic(current, replacement) && notification.compareAndSet(current, replacement.notification.get());
+        }
+
+        /**
+         * Returns true if the notification is waiting and has the same name, classifier and registrations as the
+         * replacement entry.
+         */
+        boolean isSameTopic(Notification current, Entry replacement) {
+            Notification notification = replacement.notification.get();
+            return current != null
+                    && Arrays.equals(registrations, replacement.registrations)
+                    && current.getNotificationName().equals(notification.getNotificationName())
+                    && (current.getClassifier() == null ?
+                        notification.getClassifier() == null :
+                        current.getClassifier().equals(notification.getClassifier()));
+        }
+    }
+
+    /**
+     * A queue of notifications that is drained by at most one thread at a time.
+     */
+    private class Lane implements Runnable {
+
+        private final Queue<Entry> _queue = new ConcurrentLinkedQueue<Entry>();
+        private final AtomicInteger _size = new AtomicInteger();
+        private final AtomicBoolean _scheduled = new AtomicBoolean();
+
+        /**
+         * Adds the entry to the lane, applying the overflow policy if the lane is full.
+         */
+        void enqueue(Entry entry) {
+            boolean overflowed = false;
+            int counter = 0;
+            while (true) {
+                int size = _size.get();
+                if (size < _laneCapacity) {
+                    if (_size.compareAndSet(size, size + 1)) {
+                        _queue.offer(entry);
+                        schedule();
+                        return;
+                    }
+                    continue;
+                }
+
+                if (!overflowed) {
+                    _overflowCount.increment();
+                    overflowed = true;
+                }
+                switch (_overflowPolicy) {
+                    case BLOCK:
+                        counter = WaitStrategy.PARK.idle(counter);
+                        break;
+                    case DROP_NEWEST:
+                        return;
+                    case COALESCE:
+                        if (coalesce(entry)) {
+                            return;
+                        }
+                        dropOldest();
+                        break;
+                    case DROP_OLDEST:
+                        dropOldest();
+                        break;
+                    case FAIL_FAST:
+                        Notification notification = entry.take();
+                        if (_rejectionHandler == null) {
+                            throw new RejectedExecutionException("The dispatch lane for " +
+                                    notification.getNotificationName() + " is full.");
+                        }
+                        _rejectionHandler.notificationRejected(notification);
+                        return;
+                }
+            }
+        }
+
+        /**
+         * Drains the lane.  Only one drain runs at a time, since the lane is only rescheduled once this one finishes.
+         */
+        public void run() {
+            int delivered = 0;
+            Entry entry;
+            while ((delivered < MAX_DRAIN || !_running) && (entry = _queue.poll()) != null) {
+                _size.decrementAndGet();
+                Notification notification = entry.take();
+                if (notification != null) {
+                    for (Registration curRegistration : entry.registrations) {
+                        deliver(curRegistration, notification);
+                    }
+                }
+                delivered++;
+            }
+
+            _scheduled.set(false);
+            if (!_queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        /**
+         * Discards the oldest waiting notification, if the lane has not been drained in the meantime.
+         */
+        private void dropOldest() {
+            Entry oldest = _queue.poll();
+            if (oldest != null) {
+                _size.decrementAndGet();
+                oldest.take();
+            }
+        }
+
+        /**
+         * Replaces the most recently queued notification with the same name and classifier as the entry, returning
+         * false if there is none.
+         */
+        private boolean coalesce(Entry entry) {
+            Entry latest = null;
+            for (Entry curEntry : _queue) {
+                if (curEntry.isSameTopic(curEntry.notification.get(), entry)) {
+                    latest = curEntry;
+                }
+            }
+            return latest != null && latest.coalesce(entry);
+        }
+
+        /**
+         * Submits a drain task for the lane, unless one is already scheduled or running.
+         */
+        private void schedule() {
+            if (_scheduled.compareAndSet(false, true)) {
+                try {
+                    _pool.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // The engine was shut down while the notification was being posted, so it is drained here.
+                    run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the daemon worker threads that drain the lanes.
+     */
+    private static class LaneThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final AtomicInteger _threadNumber = new AtomicInteger();
+
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+            };
+            thread.setName("NotificationCenter-lane-" + _threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
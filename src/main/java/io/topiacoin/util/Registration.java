@@ -0,0 +1,384 @@
+package io.topiacoin.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * An entry in the Notification Center's dispatch table.  A registration ties a handler to the notification name and
+ * classifier it was registered for, and to the executor that is used to deliver notifications to it.  The registration
+ * criteria are immutable so that registrations can be shared between dispatch snapshots.
+ * <p>
+ * A coalescing registration keeps a {@link PendingDelivery} for each notification name and classifier that has a
+ * notification waiting for its executor, so that a newer notification can replace a waiting one.  Each pending delivery
+ * has at most one task submitted to the executor at a time, and the task delivers whichever notification is waiting
+ * when it runs.  So the handler is never called concurrently for the same key, even on a multi-threaded executor, and
+ * the last notification it receives for a key is the latest one posted.
+ * <p>
+ * A weak registration refers to its handler through a {@link HandlerReference}, so that the registration does not keep
+ * the handler reachable.  Once the handler has been garbage collected, the registration delivers nothing, and its
+ * reference is enqueued so that the Notification Center can remove the registration from the dispatch table.
+ * <p>
+ * A registration whose options debounce, throttle or rate limit its handler offers each notification to a
+ * {@link DeliveryShaper}, which passes on the notifications that are to be delivered.
+ */
+final class Registration {
+
+    private final NotificationHandler handler;
+    private final HandlerReference handlerReference;
+    private final int handlerHash;
+    private final String notificationName;
+    private final String classifier;
+    private final Executor executor;
+    private final LatencyHistogram latency;
+    private final ConcurrentMap<PendingKey, PendingDelivery> pending;
+    private final DeliveryShaper shaper;
+
+    /**
+     * Constructs a new Registration.
+     *
+     * @param handler          The handler that notifications are delivered to.
+     * @param notificationName The notification name the handler is registered for, or null to match any name.
+     * @param classifier       The classifier the handler is registered for, or null to match any classifier.
+     * @param executor         The executor that is used to deliver notifications to the handler, or null if
+     *                         notifications are to be delivered on the posting thread.
+     * @param latency          The histogram that the time taken by each call to the handler is recorded in, or null if
+     *                         latencies are not recorded.
+     * @param options          The handler's delivery options, or null for the defaults.
+     * @param referenceQueue   The queue that the reference to a weakly registered handler is enqueued on once the
+     *                         handler has been garbage collected.
+     * @param timingWheel      The timing wheel that notifications held back by a debounce or throttle are delivered
+     *                         from, or null if the options do not hold notifications back.
+     */
+    Registration(NotificationHandler handler, String notificationName, String classifier, Executor executor,
+                 LatencyHistogram latency, HandlerOptions options, ReferenceQueue<NotificationHandler> referenceQueue,
+                 TimingWheel timingWheel) {
+        if (options != null && options.isWeak()) {
+            this.handler = null;
+            this.handlerReference = new HandlerReference(handler, referenceQueue, this);
+        } else {
+            this.handler = handler;
+            this.handlerReference = null;
+        }
+        this.handlerHash = handler.hashCode();
+        this.notificationName = notificationName;
+        this.classifier = classifier;
+        this.executor = executor;
+        this.latency = latency;
+        this.pending = (executor != null && options != null && options.isCoalescing() ?
+                new ConcurrentHashMap<PendingKey, PendingDelivery>() :
+                null);
+        this.shaper = DeliveryShaper.forOptions(options, timingWheel, this);
+    }
+
+    /**
+     * Returns the registered handler, or null if the handler was registered weakly and has been garbage collected.
+     */
+    NotificationHandler getHandler() {
+        return (handlerReference == null ? handler : handlerReference.get());
+    }
+
+    /**
+     * Returns the hash code of the registered handler, which remains available after a weakly registered handler has
+     * been garbage collected.
+     */
+    int getHandlerHash() {
+        return handlerHash;
+    }
+
+    String getNotificationName() {
+        return notificationName;
+    }
+
+    String getClassifier() {
+        return classifier;
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns true if this registration is for the specified handler.
+     */
+    boolean isFor(NotificationHandler handler) {
+        NotificationHandler registeredHandler = getHandler();
+        return registeredHandler != null && registeredHandler.equals(handler);
+    }
+
+    /**
+     * Returns true if this registration is for the specified handler, notification name and classifier.
+     */
+    boolean matches(NotificationHandler handler, String notificationName, String classifier) {
+        return isFor(handler)
+                && (this.notificationName == null ? notificationName == null : this.notificationName.equals(notificationName))
+                && (this.classifier == null ? classifier == null : this.classifier.equals(classifier));
+    }
+
+    /**
+     * Delivers the notification to the handler, either directly or by handing it to the registration's executor.  If
+     * the registration's deliveries are shaped, the notification may instead be delivered later, or not at all.
+     *
+     * @param notification The notification that is being delivered.
+     */
+    void deliver(Notification notification) {
+        if (shaper != null) {
+            shaper.offer(notification);
+        } else {
+            deliverNow(notification);
+        }
+    }
+
+    /**
+     * Delivers the notification to the handler without shaping, either directly or by handing it to the
+     * registration's executor.
+     */
+    void deliverNow(Notification notification) {
+        if (executor == null) {
+            invoke(notification);
+        } else if (pending != null) {
+            deliverCoalesced(notification);
+        } else {
+            // A reusable notification is refilled as soon as dispatch completes, so it is retained for the executor.
+            final Notification deliveredNotification = notification.retain();
+            executor.execute(new Runnable() {
+                public void run() {
+                    invoke(deliveredNotification);
+                }
+            });
+        }
+    }
+
+    /**
+     * Delivers a batch of notifications to the handler.  A {@link BatchNotificationHandler} receives the whole batch in
+     * a single call, either directly or through the registration's executor.  Any other handler has each notification
+     * delivered to it in turn.
+     *
+     * @param notifications The notifications that are being delivered, in the order they were posted.
+     */
+    void deliverBatch(final List<Notification> notifications) {
+        if (!(getHandler() instanceof BatchNotificationHandler) || pending != null || shaper != null) {
+            for (Notification curNotification : notifications) {
+                deliver(curNotification);
+            }
+        } else if (executor == null) {
+            invokeBatch(notifications);
+        } else {
+            executor.execute(new Runnable() {
+                public void run() {
+                    invokeBatch(notifications);
+                }
+            });
+        }
+    }
+
+    /**
+     * Discards any notifications that the registration is holding back for later delivery, once it has been removed
+     * from the dispatch table.
+     */
+    void discard() {
+        if (shaper != null) {
+            shaper.discard();
+        }
+    }
+
+    /**
+     * Makes the notification the one waiting for delivery under its name and classifier.  A pending delivery that has
+     * just finished may already have been retired, in which case a new one is started for the key.
+     */
+    private void deliverCoalesced(Notification notification) {
+        PendingKey key = new PendingKey(notification.getNotificationName(), notification.getClassifier());
+        Notification retained = notification.retain();
+        while (true) {
+            PendingDelivery delivery = pending.get(key);
+            if (delivery == null) {
+                delivery = new PendingDelivery(key);
+                PendingDelivery existing = pending.putIfAbsent(key, delivery);
+                if (existing != null) {
+                    delivery = existing;
+                }
+            }
+            if (delivery.offer(retained)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Calls the handler, recording how long it takes if latencies are being recorded.
+     */
+    private void invoke(Notification notification) {
+        NotificationHandler currentHandler = getHandler();
+        if (currentHandler == null) {
+            return;
+        }
+        if (latency == null) {
+            currentHandler.handleNotification(notification);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            currentHandler.handleNotification(notification);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Calls the batch handler, recording how long it takes if latencies are being recorded.  The whole batch counts as
+     * a single invocation.
+     */
+    private void invokeBatch(List<Notification> notifications) {
+        BatchNotificationHandler batchHandler = (BatchNotificationHandler) getHandler();
+        if (batchHandler == null) {
+            return;
+        }
+        if (latency == null) {
+            batchHandler.handleNotifications(notifications);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            batchHandler.handleNotifications(notifications);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * A weak reference to a handler that remembers the registration it belongs to, so that the registration can be
+     * found when the reference is enqueued.
+     */
+    static final class HandlerReference extends WeakReference<NotificationHandler> {
+        private final Registration registration;
+
+        HandlerReference(NotificationHandler handler, ReferenceQueue<NotificationHandler> queue, Registration registration) {
+            super(handler, queue);
+            this.registration = registration;
+        }
+
+        Registration getRegistration() {
+            return registration;
+        }
+    }
+
+    /**
+     * The latest notification waiting for delivery under a notification name and classifier of a coalescing
+     * registration.  The pending delivery submits itself to the executor when a notification arrives and it is not
+     * already submitted or running.  When it runs, it delivers the waiting notification, and then either submits itself
+     * again, if a newer notification arrived in the meantime, or retires, removing itself from the registration.  Its
+     * state is guarded by its own lock, which is never held while the handler is called.
+     */
+    private final class PendingDelivery implements Runnable {
+        private final PendingKey key;
+        private Notification latest;
+        private boolean submitted;
+        private boolean retired;
+
+        PendingDelivery(PendingKey key) {
+            this.key = key;
+        }
+
+        /**
+         * Makes the notification the one waiting for delivery, submitting the delivery if it is idle.
+         *
+         * @return False if the delivery has retired, and the notification must be offered to a new one.
+         */
+        boolean offer(Notification notification) {
+            synchronized (this) {
+                if (retired) {
+                    return false;
+                }
+                latest = notification;
+                if (submitted) {
+                    return true;
+                }
+                submitted = true;
+            }
+            submit();
+            return true;
+        }
+
+        public void run() {
+            Notification notification;
+            synchronized (this) {
+                notification = latest;
+                latest = null;
+            }
+            try {
+                if (notification != null) {
+                    invoke(notification);
+                }
+            } finally {
+                boolean resubmit;
+                synchronized (this) {
+                    resubmit = (latest != null);
+                    if (!resubmit) {
+                        submitted = false;
+                        retire();
+                    }
+                }
+                if (resubmit) {
+                    submit();
+                }
+            }
+        }
+
+        private void submit() {
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                // The delivery would otherwise stay submitted forever, and swallow every later notification.
+                synchronized (this) {
+                    latest = null;
+                    submitted = false;
+                    retire();
+                }
+                throw e;
+            }
+        }
+
+        private void retire() {
+            retired = true;
+            pending.remove(key, this);
+        }
+    }
+
+    /**
+     * The notification name and classifier under which a coalescing registration keeps a waiting notification.
+     */
+    private static final class PendingKey {
+        private final String notificationName;
+        private final String classifier;
+
+        PendingKey(String notificationName, String classifier) {
+            this.notificationName = notificationName;
+            this.classifier = classifier;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PendingKey)) {
+                return false;
+            }
+            PendingKey other = (PendingKey) o;
+            return notificationName.equals(other.notificationName)
+                    && (classifier == null ? other.classifier == null : classifier.equals(other.classifier));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * notificationName.hashCode() + (classifier == null ? 0 : classifier.hashCode());
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package io.topiacoin.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A dispatch engine that hands notifications to a dedicated consumer thread through a preallocated ring buffer.
+ * <p>
+ * Publishers claim a slot by incrementing a shared sequence counter, copy the notification into the reusable
+ * Notification held by the slot, and then mark the slot as published.  The consumer thread processes every published
+ * slot that is available in a single batch, delivering each notification to its registrations before advancing its own
+ * sequence and releasing the slots for reuse.  No locks are taken and nothing is allocated on either side.
+ * <p>
+ * When the ring buffer is full, publishers wait for the consumer using the configured {@link WaitStrategy}.  The same
+ * strategy is used by the consumer while waiting for notifications to be published.
+ * <p>
+ * Handlers receive the slot's reusable Notification, which is only valid for the duration of the callback unless the
+ * handler retains it.  A retained notification is replaced in its slot with a new one.
+ * <p>
+ * A handler that posts a notification is running on the consumer thread, which is the only thread that frees slots, so
+ * waiting for space in a full ring buffer would never end.  Notifications posted from the consumer thread are therefore
+ * delivered directly on it, before the post returns, rather than through the ring buffer.  They are delivered ahead of
+ * any notifications still waiting in the ring buffer.
+ */
+class RingBufferDispatchEngine extends DispatchEngine {
+
+    private final Entry[] _entries;
+    private final int _mask;
+    private final int _indexShift;
+    private final AtomicIntegerArray _published;
+    private final WaitStrategy _waitStrategy;
+
+    private final Sequence _claimSequence = new Sequence();
+    private final Sequence _consumerSequence = new Sequence();
+
+    private final Thread _consumerThread;
+    private volatile boolean _running = true;
+
+    /**
+     * Constructs a new Ring Buffer Dispatch Engine and starts its consumer thread.
+     *
+     * @param bufferSize   The number of slots in the ring buffer.  This must be a power of two.
+     * @param waitStrategy The strategy used by the consumer and publishers while they wait for each other.
+     *
+     * @throws IllegalArgumentException If the buffer size is not a positive power of two.
+     */
+    RingBufferDispatchEngine(int bufferSize, WaitStrategy waitStrategy) {
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("Ring buffer size must be a power of two.");
+        }
+        if (waitStrategy == null) {
+            throw new IllegalArgumentException("Wait strategy must be specified.");
+        }
+
+        _entries = new Entry[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            _entries[i] = new Entry();
+        }
+        _mask = bufferSize - 1;
+        _indexShift = Integer.numberOfTrailingZeros(bufferSize);
+        _published = new AtomicIntegerArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            _published.set(i, -1);
+        }
+        _waitStrategy = waitStrategy;
+
+        _consumerThread = new Thread(new Runnable() {
+            public void run() {
+                consume();
+            }
+        }, "NotificationCenter-ringBuffer");
+        _consumerThread.setDaemon(true);
+        _consumerThread.start();
+    }
+
+    @Override
+    void dispatch(Notification notification, Registration[] registrations) {
+        if (registrations.length == 0) {
+            return;
+        }
+        if (!_running) {
+            throw new IllegalStateException("The Notification Center has been shut down.");
+        }
+        if (Thread.currentThread() == _consumerThread) {
+            for (Registration curRegistration : registrations) {
+                deliver(curRegistration, notification);
+            }
+            return;
+        }
+
+        long sequence = _claimSequence.incrementAndGet();
+
+        // Wait until the consumer has released the slot from its previous trip around the ring.
+        long wrapPoint = sequence - _entries.length;
+        int counter = 0;
+        while (wrapPoint > _consumerSequence.get()) {
+            counter = _waitStrategy.idle(counter);
+        }
+
+        Entry entry = _entries[(int) sequence & _mask];
+        entry.notification.reset(notification);
+        entry.registrations = registrations;
+
+        _published.lazySet((int) sequence & _mask, (int) (sequence >>> _indexShift));
+    }
+
+    /**
+     * Publishes each notification of the batch to its own slot.  The consumer thread delivers slots one at a time, so
+     * batch handlers receive the notifications individually.
+     */
+    @Override
+    void dispatchBatch(List<Notification> notifications, Registration[][] registrations) {
+        for (int i = 0; i < notifications.size(); i++) {
+            dispatch(notifications.get(i), registrations[i]);
+        }
+    }
+
+    @Override
+    int getQueueDepth() {
+        long depth = _claimSequence.get() - _consumerSequence.get();
+        return (int) Math.max(0, Math.min(depth, _entries.length));
+    }
+
+    @Override
+    void shutdown() {
+        _running = false;
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * The consumer loop.  Waits for published slots and delivers them in batches until the engine is shut down and the
+     * ring buffer has been drained.
+     */
+    private void consume() {
+        long nextSequence = _consumerSequence.get() + 1;
+        int counter = 0;
+        while (true) {
+            long availableSequence = highestPublished(nextSequence, _claimSequence.get());
+            if (availableSequence < nextSequence) {
+                if (!_running && _claimSequence.get() < nextSequence) {
+                    return;
+                }
+                counter = _waitStrategy.idle(counter);
+                continue;
+            }
+            counter = 0;
+
+            for (long sequence = nextSequence; sequence <= availableSequence; sequence++) {
+                Entry entry = _entries[(int) sequence & _mask];
+                try {
+                    for (Registration curRegistration : entry.registrations) {
+                        deliver(curRegistration, entry.notification);
+                    }
+                } finally {
+                    entry.registrations = null;
+                    if (entry.notification.isRetained()) {
+                        entry.notification = new Notification();
+                    } else {
+                        entry.notification.clear();
+                    }
+                }
+            }
+
+            _consumerSequence.lazySet(availableSequence);
+            nextSequence = availableSequence + 1;
+        }
+    }
+
+    /**
+     * Returns the highest sequence, starting at the given sequence, up to which every slot has been published.  Returns
+     * one less than the starting sequence if the starting slot has not been published yet.
+     */
+    private long highestPublished(long lowSequence, long claimedSequence) {
+        for (long sequence = lowSequence; sequence <= claimedSequence; sequence++) {
+            if (_published.get((int) sequence & _mask) != (int) (sequence >>> _indexShift)) {
+                return sequence - 1;
+            }
+        }
+        return claimedSequence;
+    }
+
+    /**
+     * Delivers a notification to a single registration.  Anything thrown by a handler, errors included, is passed to
+     * the consumer thread's uncaught exception handler, so that it neither stops delivery to the remaining handlers nor
+     * ends the consumer thread, which would leave publishers waiting forever for a full ring buffer.
+     */
+    private void deliver(Registration registration, Notification notification) {
+        try {
+            registration.deliver(notification);
+        } catch (Throwable e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    /**
+     * A slot in the ring buffer.
+     */
+    private static class Entry {
+        Notification notification = new Notification();
+        Registration[] registrations;
+    }
+
+    /**
+     * A sequence counter padded so that it does not share a cache line with the other sequence.
+     */
+    @SuppressWarnings("unused")
+    private static class Sequence extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+
+        long p1, p2, p3, p4, p5, p6, p7;
+
+        Sequence() {
+            super(-1L);
+        }
+    }
+}
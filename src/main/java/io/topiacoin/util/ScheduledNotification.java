@@ -0,0 +1,50 @@
+package io.topiacoin.util;
+
+/**
+ * A notification that has been scheduled to be posted later, by
+ * {@link NotificationCenter#postNotificationAfter(long, java.util.concurrent.TimeUnit, Notification)} or
+ * {@link NotificationCenter#postNotificationAt(long, Notification)}.  The scheduled post can be cancelled until the
+ * notification has been posted.
+ */
+public final class ScheduledNotification {
+
+    private final Notification _notification;
+    private final TimingWheel.Timeout _timeout;
+
+    ScheduledNotification(Notification notification, TimingWheel.Timeout timeout) {
+        _notification = notification;
+        _timeout = timeout;
+    }
+
+    /**
+     * Returns the notification that is scheduled to be posted.
+     */
+    public Notification getNotification() {
+        return _notification;
+    }
+
+    /**
+     * Cancels the scheduled post, unless the notification has already been posted.  Cancelling takes constant time, no
+     * matter how many notifications are scheduled.
+     *
+     * @return True if the post was cancelled by this call, or false if the notification has already been posted or the
+     * post was already cancelled.
+     */
+    public boolean cancel() {
+        return _timeout.cancel();
+    }
+
+    /**
+     * Returns true if the scheduled post was cancelled before the notification was posted.
+     */
+    public boolean isCancelled() {
+        return _timeout.isCancelled();
+    }
+
+    /**
+     * Returns true if the notification has been posted, or is being posted.
+     */
+    public boolean isPosted() {
+        return _timeout.isExpired();
+    }
+}
@@ -0,0 +1,357 @@
+package io.topiacoin.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A notification center made of independent shards, each of them a {@link NotificationCenter} with its own dispatch
+ * table, dispatch engine and metrics, so that subsystems such as the peer-to-peer layer, the wallet and mining do not
+ * contend for the same dispatch structures.
+ * <p>
+ * Each shard is assigned a notification name prefix, and a notification is routed to the shard with the longest prefix
+ * that its name starts with, segment by segment.  For example, with shards for "p2p" and "wallet", "p2p.peer.connected"
+ * is routed to the "p2p" shard, while "wallets.loaded" and "chain.tip.updated" are routed to the default shard, which
+ * receives every notification whose name matches no prefix.  Routing compares the name with each prefix in turn, so it
+ * takes no locks and allocates nothing.
+ * <p>
+ * A handler is registered with the shard that its notification name is routed to.  A handler registered for a pattern
+ * is registered with every shard whose notifications the pattern may match, and a handler registered without a
+ * notification name is registered with every shard.  Since each notification is posted to exactly one shard, such a
+ * handler still receives each notification once.
+ * <p>
+ * Notifications posted to different shards are dispatched independently, so their relative order is only preserved
+ * within a shard.  The shards themselves remain available through {@link #getShard(String)}, for features that are not
+ * routed through the sharded center, such as statistics and publishers.
+ */
+public final class ShardedNotificationCenter {
+
+    private final String[] _prefixes;
+    private final NotificationCenter[] _shards;
+    private final NotificationCenter _defaultShard;
+
+    private ShardedNotificationCenter(Builder builder) {
+        // Longer prefixes are tried first, so that the first match is the longest.
+        List<String> prefixes = new ArrayList<String>(builder._shards.keySet());
+        Collections.sort(prefixes, new Comparator<String>() {
+            public int compare(String first, String second) {
+                return second.length() - first.length();
+            }
+        });
+        _prefixes = prefixes.toArray(new String[prefixes.size()]);
+        _shards = new NotificationCenter[_prefixes.length];
+        for (int i = 0; i < _prefixes.length; i++) {
+            _shards[i] = builder._shards.get(_prefixes[i]);
+        }
+        _defaultShard = (builder._defaultShard != null ? builder._defaultShard : new NotificationCenter());
+    }
+
+    /**
+     * Returns the shard that notifications with the specified name are routed to.
+     *
+     * @param notificationName The name of a notification.  This cannot be a pattern.
+     *
+     * @return The shard for the name, which is the default shard if the name matches no prefix.
+     *
+     * @throws IllegalArgumentException If the notification name is not specified.
+     */
+    public NotificationCenter getShard(String notificationName) {
+        if (notificationName == null) {
+            throw new IllegalArgumentException("Notification name must be specified.");
+        }
+        return route(notificationName);
+    }
+
+    /**
+     * Returns the default shard, which receives the notifications whose names match no prefix.
+     */
+    public NotificationCenter getDefaultShard() {
+        return _defaultShard;
+    }
+
+    /**
+     * Adds a handler to the shards that its notification name is routed to.
+     *
+     * @see NotificationCenter#addHandler(NotificationHandler, String, String)
+     */
+    public void addHandler(NotificationHandler handler, String notificationName, String classifier) {
+        addHandler(handler, notificationName, classifier, null, null);
+    }
+
+    /**
+     * Adds a handler, with the executor that is used to deliver notifications to it, to the shards that its notification
+     * name is routed to.
+     *
+     * @see NotificationCenter#addHandler(NotificationHandler, String, String, Executor)
+     */
+    public void addHandler(NotificationHandler handler, String notificationName, String classifier, Executor executor) {
+        addHandler(handler, notificationName, classifier, executor, null);
+    }
+
+    /**
+     * Adds a handler, with an optional executor and delivery options, to the shards that its notification name is
+     * routed to.  A handler that is registered with several shards is shaped, and receives the latest notifications of
+     * a sticky shard, separately for each of them.
+     *
+     * @see NotificationCenter#addHandler(NotificationHandler, String, String, Executor, HandlerOptions)
+     */
+    public void addHandler(NotificationHandler handler, String notificationName, String classifier, Executor executor,
+                           HandlerOptions options) {
+        for (NotificationCenter curShard : shardsFor(notificationName)) {
+            curShard.addHandler(handler, notificationName, classifier, executor, options);
+        }
+    }
+
+    /**
+     * Removes the handler from every shard.
+     *
+     * @see NotificationCenter#removeHandler(NotificationHandler)
+     */
+    public void removeHandler(NotificationHandler handler) {
+        for (NotificationCenter curShard : _shards) {
+            curShard.removeHandler(handler);
+        }
+        _defaultShard.removeHandler(handler);
+    }
+
+    /**
+     * Removes the matching registrations of the handler from the shards that the notification name is routed to.
+     *
+     * @see NotificationCenter#removeHandler(NotificationHandler, String, String)
+     */
+    public void removeHandler(NotificationHandler handler, String notificationName, String classifier) {
+        for (NotificationCenter curShard : shardsFor(notificationName)) {
+            curShard.removeHandler(handler, notificationName, classifier);
+        }
+    }
+
+    /**
+     * Creates a notification and posts it to the shard that its name is routed to.
+     *
+     * @see NotificationCenter#postNotification(String, String, java.util.Map)
+     */
+    public void postNotification(String notificationName, String classifier, Map<String, Object> notificationInfo) {
+        postNotification(new Notification(notificationName, classifier, notificationInfo));
+    }
+
+    /**
+     * Posts the notification to the shard that its name is routed to.
+     *
+     * @see NotificationCenter#postNotification(Notification)
+     */
+    public void postNotification(Notification notification) {
+        route(notification.getNotificationName()).postNotification(notification);
+    }
+
+    /**
+     * Posts a batch of notifications, split into a batch for each shard that keeps the order of the notifications
+     * routed to that shard.
+     *
+     * @throws IllegalArgumentException If the collection contains a null notification.
+     * @see NotificationCenter#postNotifications(Collection)
+     */
+    public void postNotifications(Collection<Notification> notifications) {
+        Map<NotificationCenter, List<Notification>> batches =
+                new IdentityHashMap<NotificationCenter, List<Notification>>();
+        for (Notification curNotification : notifications) {
+            if (curNotification == null) {
+                throw new IllegalArgumentException("Notifications in a batch cannot be null.");
+            }
+            NotificationCenter shard = route(curNotification.getNotificationName());
+            List<Notification> batch = batches.get(shard);
+            if (batch == null) {
+                batch = new ArrayList<Notification>();
+                batches.put(shard, batch);
+            }
+            batch.add(curNotification);
+        }
+        for (Map.Entry<NotificationCenter, List<Notification>> curBatch : batches.entrySet()) {
+            curBatch.getKey().postNotifications(curBatch.getValue());
+        }
+    }
+
+    /**
+     * Posts a notification through the pooled path of the shard that its name is routed to.
+     *
+     * @see NotificationCenter#postPooledNotification(String, String, java.util.Map)
+     */
+    public void postPooledNotification(String notificationName, String classifier, Map<String, Object> notificationInfo) {
+        if (notificationName == null || notificationName.trim().length() == 0) {
+            throw new IllegalArgumentException("Notification name must be specified.");
+        }
+        route(notificationName).postPooledNotification(notificationName, classifier, notificationInfo);
+    }
+
+    /**
+     * Posts the notification asynchronously to the shard that its name is routed to.
+     *
+     * @see NotificationCenter#postNotificationAsync(Notification)
+     */
+    public Future<Void> postNotificationAsync(Notification notification) {
+        return route(notification.getNotificationName()).postNotificationAsync(notification);
+    }
+
+    /**
+     * Schedules the notification to be posted, after the delay, to the shard that its name is routed to.
+     *
+     * @see NotificationCenter#postNotificationAfter(long, TimeUnit, Notification)
+     */
+    public ScheduledNotification postNotificationAfter(long delay, TimeUnit unit, Notification notification) {
+        if (notification == null) {
+            throw new IllegalArgumentException("The notification cannot be null.");
+        }
+        return route(notification.getNotificationName()).postNotificationAfter(delay, unit, notification);
+    }
+
+    /**
+     * Shuts down every shard, including the default shard.
+     *
+     * @see NotificationCenter#shutdown()
+     */
+    public void shutdown() {
+        for (NotificationCenter curShard : _shards) {
+            curShard.shutdown();
+        }
+        _defaultShard.shutdown();
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * Returns the shard with the longest prefix that the name starts with, or the default shard.
+     */
+    private NotificationCenter route(String notificationName) {
+        for (int i = 0; i < _prefixes.length; i++) {
+            if (startsWithSegments(notificationName, _prefixes[i])) {
+                return _shards[i];
+            }
+        }
+        return _defaultShard;
+    }
+
+    /**
+     * Returns the shards that notifications matching the registered name may be posted to.  A plain name is routed to
+     * a single shard.  A pattern matches names that start with its literal segments, the ones before its first
+     * wildcard, so it is registered with the shard those segments are routed to, and with every shard whose prefix
+     * extends them.
+     */
+    private Set<NotificationCenter> shardsFor(String notificationName) {
+        Set<NotificationCenter> shards = new LinkedHashSet<NotificationCenter>();
+        if (notificationName != null && !TopicTrie.isPattern(notificationName)) {
+            shards.add(route(notificationName));
+            return shards;
+        }
+
+        String literalPrefix = (notificationName != null ? literalPrefix(notificationName) : "");
+        shards.add(literalPrefix.length() > 0 ? route(literalPrefix) : _defaultShard);
+        for (int i = 0; i < _prefixes.length; i++) {
+            if (literalPrefix.length() == 0 || startsWithSegments(_prefixes[i], literalPrefix)) {
+                shards.add(_shards[i]);
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Returns the segments of a pattern before its first wildcard segment, joined by periods.
+     */
+    private static String literalPrefix(String pattern) {
+        StringBuilder prefix = new StringBuilder();
+        for (String curSegment : pattern.split("\\.")) {
+            if (curSegment.equals("*") || curSegment.equals("#")) {
+                break;
+            }
+            if (prefix.length() > 0) {
+                prefix.append('.');
+            }
+            prefix.append(curSegment);
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Returns true if the name starts with the prefix, and the prefix ends at a segment boundary of the name.
+     */
+    private static boolean startsWithSegments(String name, String prefix) {
+        return name.startsWith(prefix) && (name.length() == prefix.length() || name.charAt(prefix.length()) == '.');
+    }
+
+    /**
+     * Builds a sharded notification center from a set of shards and their name prefixes.
+     */
+    public static class Builder {
+
+        private final Map<String, NotificationCenter> _shards = new LinkedHashMap<String, NotificationCenter>();
+        private NotificationCenter _defaultShard;
+
+        /**
+         * Adds a shard, with a new synchronous Notification Center, for the notifications whose names start with the
+         * prefix.
+         *
+         * @throws IllegalArgumentException If the prefix is not specified, is a pattern, or already has a shard.
+         */
+        public Builder shard(String prefix) {
+            return shard(prefix, new NotificationCenter());
+        }
+
+        /**
+         * Adds a shard, with the specified Notification Center, for the notifications whose names start with the
+         * prefix.  The prefix is matched by whole segments, so "wallet" matches "wallet" and "wallet.balance.updated",
+         * but not "wallets".  Giving each shard a center built with its own {@link NotificationCenter.Builder} lets each
+         * subsystem use the dispatch engine that suits it.
+         *
+         * @throws IllegalArgumentException If the prefix or center is not specified, the prefix is a pattern, or the
+         *                                  prefix already has a shard.
+         */
+        public Builder shard(String prefix, NotificationCenter center) {
+            if (prefix == null || prefix.trim().length() == 0) {
+                throw new IllegalArgumentException("Shard prefix must be specified.");
+            }
+            if (TopicTrie.isPattern(prefix)) {
+                throw new IllegalArgumentException("Shard prefix cannot be a pattern: " + prefix);
+            }
+            if (center == null) {
+                throw new IllegalArgumentException("Notification center must be specified.");
+            }
+            if (_shards.containsKey(prefix)) {
+                throw new IllegalArgumentException("A shard has already been added for " + prefix);
+            }
+            _shards.put(prefix, center);
+            return this;
+        }
+
+        /**
+         * Sets the center that receives the notifications whose names match no prefix.  By default, a new synchronous
+         * Notification Center is used.  Passing {@link NotificationCenter#defaultCenter()} keeps the notifications of
+         * subsystems without a shard on the application's shared center.
+         *
+         * @throws IllegalArgumentException If the center is not specified.
+         */
+        public Builder defaultShard(NotificationCenter center) {
+            if (center == null) {
+                throw new IllegalArgumentException("Notification center must be specified.");
+            }
+            _defaultShard = center;
+            return this;
+        }
+
+        /**
+         * Builds the sharded center.
+         *
+         * @return The new sharded center.
+         */
+        public ShardedNotificationCenter build() {
+            return new ShardedNotificationCenter(this);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package io.topiacoin.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connects Notification Centers in two processes on the same host through a pair of memory-mapped ring files.
+ * <p>
+ * Each process opens a bridge with the same two files, swapped: the file one process writes to is the file the other
+ * reads from.  The bridge registers a handler with its local center for each notification name, or pattern, that it is
+ * configured to forward, encodes the notifications delivered to that handler with the {@link NotificationCodec}, and
+ * writes them to its outbound ring.  A receiver thread reads the records that the peer writes to the inbound ring and
+ * posts them to the local center, where they are delivered like any other notification.  Notifications whose names are
+ * not forwarded never leave the process.  A notification received from the peer is never forwarded back to it, even if
+ * its name is forwarded in both directions.
+ * <p>
+ * Forwarding never blocks the posting thread.  A notification that does not fit in the outbound ring, because the peer
+ * is not reading or has exited, is dropped and counted in {@link #getDroppedCount()}.  Notifications left in a ring
+ * when a process exits are delivered once a bridge is opened on the ring again.
+ * <p>
+ * Forwarded notifications reach the peer's center within a few microseconds when the receiver thread uses a spinning
+ * {@link WaitStrategy}.  Only notifications whose info values are primitives, strings, byte arrays or nulls can be
+ * forwarded, and any other notification is dropped.
+ */
+public final class SharedMemoryBridge implements Closeable {
+
+    private static final int INITIAL_ENCODE_BUFFER_SIZE = 1024;
+
+    private final NotificationCenter _center;
+    private final SharedMemoryRing _outbound;
+    private final SharedMemoryRing _inbound;
+    private final WaitStrategy _waitStrategy;
+    private final NotificationHandler _forwarder;
+
+    private final AtomicLong _forwardedCount = new AtomicLong();
+    private final AtomicLong _droppedCount = new AtomicLong();
+    private final AtomicLong _receivedCount = new AtomicLong();
+
+    private final Thread _receiverThread;
+    private volatile boolean _open = true;
+
+    private final ThreadLocal<ByteBuffer> _encodeBuffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(INITIAL_ENCODE_BUFFER_SIZE);
+        }
+    };
+
+    private SharedMemoryBridge(Builder builder) throws IOException {
+        _center = builder._center;
+        _waitStrategy = builder._waitStrategy;
+        _outbound = SharedMemoryRing.open(builder._outboundFile, builder._capacity);
+        _inbound = SharedMemoryRing.open(builder._inboundFile, builder._capacity);
+        _outbound.openForWriting();
+        _inbound.openForReading();
+
+        _forwarder = new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                forward(notification);
+            }
+        };
+        for (String curName : builder._forwardedNames) {
+            _center.addHandler(_forwarder, curName, null);
+        }
+
+        _receiverThread = new Thread(new Runnable() {
+            public void run() {
+                receive();
+            }
+        }, "NotificationCenter-bridge");
+        _receiverThread.setDaemon(true);
+        _receiverThread.start();
+    }
+
+    /**
+     * Returns the number of notifications written to the outbound ring.
+     */
+    public long getForwardedCount() {
+        return _forwardedCount.get();
+    }
+
+    /**
+     * Returns the number of notifications that were not forwarded because the outbound ring was full, because they
+     * were larger than the ring, or because their info could not be encoded.
+     */
+    public long getDroppedCount() {
+        return _droppedCount.get();
+    }
+
+    /**
+     * Returns the number of records with an invalid length found in the inbound ring.  The rest of the ring is skipped
+     * after each one, so notifications written after a corrupt record may be lost.
+     */
+    public long getCorruptCount() {
+        return _inbound.getCorruptCount();
+    }
+
+    /**
+     * Returns the number of notifications read from the inbound ring and posted to the local center.
+     */
+    public long getReceivedCount() {
+        return _receivedCount.get();
+    }
+
+    /**
+     * Stops forwarding and receiving notifications.  Records that the peer writes afterwards are left in the inbound
+     * ring for the next bridge opened on it.
+     */
+    public void close() {
+        _center.removeHandler(_forwarder);
+        _open = false;
+        try {
+            _receiverThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * Writes a locally posted notification to the outbound ring.
+     */
+    private void forward(Notification notification) {
+        if (notification.getOrigin() == this) {
+            return;
+        }
+        ByteBuffer body = encode(notification);
+        if (body != null && _outbound.offer(body)) {
+            _forwardedCount.incrementAndGet();
+        } else {
+            _droppedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Encodes the notification into the calling thread's encode buffer, growing it as needed.  Returns null if the
+     * encoded notification would not fit in the outbound ring, or its info cannot be encoded.
+     */
+    private ByteBuffer encode(Notification notification) {
+        ByteBuffer buffer = _encodeBuffers.get();
+        while (true) {
+            buffer.clear();
+            try {
+                NotificationCodec.encode(notification, buffer);
+                buffer.flip();
+                return buffer;
+            } catch (IllegalArgumentException e) {
+                return null;
+            } catch (BufferOverflowException e) {
+                if (buffer.capacity() >= _outbound.getCapacity()) {
+                    return null;
+                }
+                buffer = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, _outbound.getCapacity()));
+                _encodeBuffers.set(buffer);
+            }
+        }
+    }
+
+    /**
+     * The receiver loop.  Posts each record read from the inbound ring to the local center until the bridge is closed.
+     * An exception thrown while posting is passed to the receiver thread's uncaught exception handler so that it does
+     * not stop the bridge.
+     */
+    private void receive() {
+        int counter = 0;
+        while (_open) {
+            ByteBuffer body = _inbound.poll();
+            if (body == null) {
+                counter = _waitStrategy.idle(counter);
+                continue;
+            }
+            counter = 0;
+
+            try {
+                Notification notification = NotificationCodec.decode(body);
+                notification.setOrigin(this);
+                _receivedCount.incrementAndGet();
+                _center.postNotification(notification);
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    /**
+     * Opens Shared Memory Bridges.
+     */
+    public static class Builder {
+
+        private static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+        private final NotificationCenter _center;
+        private final File _outboundFile;
+        private final File _inboundFile;
+        private final List<String> _forwardedNames = new ArrayList<String>();
+        private int _capacity = DEFAULT_CAPACITY;
+        private WaitStrategy _waitStrategy = WaitStrategy.YIELD;
+
+        /**
+         * Creates a builder for a bridge between the specified center and a peer process.  The peer must open its
+         * bridge with the same files, swapped.
+         *
+         * @param center       The local center that notifications are forwarded from and received into.
+         * @param outboundFile The ring file that this process writes forwarded notifications to.
+         * @param inboundFile  The ring file that the peer writes its forwarded notifications to.
+         *
+         * @throws IllegalArgumentException If the center or either file is not specified, or both files are the same.
+         */
+        public Builder(NotificationCenter center, File outboundFile, File inboundFile) {
+            if (center == null) {
+                throw new IllegalArgumentException("Notification center must be specified.");
+            }
+            if (outboundFile == null || inboundFile == null) {
+                throw new IllegalArgumentException("Ring files must be specified.");
+            }
+            if (outboundFile.equals(inboundFile)) {
+                throw new IllegalArgumentException("Outbound and inbound ring files must be different.");
+            }
+            _center = center;
+            _outboundFile = outboundFile;
+            _inboundFile = inboundFile;
+        }
+
+        /**
+         * Forwards the notifications with the specified name to the peer.  The name may be a pattern, as described for
+         * {@link NotificationCenter#addHandler(NotificationHandler, String, String)}, so "#" forwards every
+         * notification.  Patterns should not overlap, since a notification matching two of them is forwarded twice.
+         *
+         * @throws IllegalArgumentException If the name is not specified.
+         */
+        public Builder forward(String notificationName) {
+            if (notificationName == null || notificationName.trim().length() == 0) {
+                throw new IllegalArgumentException("Notification name must be specified.");
+            }
+            _forwardedNames.add(notificationName);
+            return this;
+        }
+
+        /**
+         * Sets the capacity of newly created ring files, in bytes.  The default is 4 MB.  A ring file that already
+         * exists keeps its capacity.
+         *
+         * @throws IllegalArgumentException If the capacity is not a positive multiple of eight.
+         */
+        public Builder capacity(int capacity) {
+            if (capacity < SharedMemoryRing.recordSize(1) || capacity % 8 != 0) {
+                throw new IllegalArgumentException("Ring capacity must be a positive multiple of eight.");
+            }
+            _capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets the strategy the receiver thread uses while waiting for the peer to write.  The default is
+         * {@link WaitStrategy#YIELD}.
+         *
+         * @throws IllegalArgumentException If no wait strategy is specified.
+         */
+        public Builder waitStrategy(WaitStrategy waitStrategy) {
+            if (waitStrategy == null) {
+                throw new IllegalArgumentException("Wait strategy must be specified.");
+            }
+            _waitStrategy = waitStrategy;
+            return this;
+        }
+
+        /**
+         * Opens the bridge, creating the ring files if they do not exist yet, and starts forwarding and receiving
+         * notifications.
+         *
+         * @return The opened bridge.
+         *
+         * @throws IOException If a ring file cannot be created or mapped.
+         */
+        public SharedMemoryBridge open() throws IOException {
+            return new SharedMemoryBridge(this);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package io.topiacoin.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ring of records in a memory-mapped file, written by the threads of one process and read by a single thread of
+ * another.  Used by a {@link SharedMemoryBridge} to carry notifications from one process to the other.
+ * <p>
+ * The file starts with a header holding a magic number, the capacity of the ring, and the reader's position, which the
+ * writer uses to tell how much of the ring is free.  The ring itself follows the header.  Each record is made up of the
+ * length of its body followed by the body, and is aligned to eight bytes.  A record that does not fit before the end of
+ * the ring is preceded by a padding marker that sends the reader back to the start.
+ * <p>
+ * Positions in the ring grow without wrapping, and are reduced modulo the capacity to find a record.  Writers reserve
+ * space for a record by advancing the claimed position atomically, copy in the body, and write the length last, so the
+ * reader never sees a partially written record.  The reader zero fills each record once it has copied it out, before
+ * advancing its position, so that a zero length always marks a record that has not been written yet.
+ * <p>
+ * The file can be written by another process, so the reader checks each length before using it.  A length that does
+ * not fit in the ring leaves no way to find the next record, so the reader skips the rest of the ring, as it does for
+ * padding, and counts the corrupt record.
+ */
+final class SharedMemoryRing {
+
+    private static final int MAGIC = 0x4E435247;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    // The reader's position is kept on its own cache line, away from the fields that only change when the file is
+    // created.
+    private static final int READ_POSITION_OFFSET = 64;
+
+    /**
+     * The size of the file header that precedes the ring.
+     */
+    static final int HEADER_SIZE = 128;
+
+    /**
+     * The size of the length that precedes each record body.
+     */
+    static final int RECORD_HEADER_SIZE = 4;
+
+    private static final int ALIGNMENT = 8;
+    private static final int PADDING = -1;
+    private static final byte[] ZEROS = new byte[4096];
+
+    private final MappedByteBuffer _buffer;
+    private final int _capacity;
+    private final AtomicLong _claimed = new AtomicLong();
+    private long _readPosition;
+    private volatile long _corruptCount;
+
+    /**
+     * Written after the contents of a record or the zero fill of a consumed one, and read before them, to keep the
+     * writes to the mapped file in order.
+     */
+    private volatile int _fence;
+
+    private SharedMemoryRing(MappedByteBuffer buffer, int capacity) {
+        _buffer = buffer;
+        _capacity = capacity;
+    }
+
+    /**
+     * Opens the ring stored in the specified file, creating the file if it does not exist yet.  An existing ring keeps
+     * the capacity it was created with.
+     *
+     * @param file     The file holding the ring.
+     * @param capacity The capacity of a newly created ring, in bytes.  This must be a positive multiple of eight.
+     *
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    static SharedMemoryRing open(File file, int capacity) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            boolean existing = (randomAccessFile.length() >= HEADER_SIZE && randomAccessFile.readInt() == MAGIC);
+            if (existing) {
+                capacity = randomAccessFile.readInt();
+            }
+            // The mapping remains valid after the channel is closed.
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + capacity);
+            if (!existing) {
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+            }
+            return new SharedMemoryRing(buffer, capacity);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    int getCapacity() {
+        return _capacity;
+    }
+
+    /**
+     * Returns the number of records with an invalid length that the reader has skipped.
+     */
+    long getCorruptCount() {
+        return _corruptCount;
+    }
+
+    /**
+     * Prepares the ring for writing by this process.  The records left unread by a previous writer are kept, and
+     * anything after them, including a record the previous writer did not finish, is cleared.
+     */
+    void openForWriting() {
+        long readPosition = _buffer.getLong(READ_POSITION_OFFSET);
+        long end = readPosition + _capacity;
+        long position = readPosition;
+        while (position < end) {
+            int index = index(position);
+            int length = _buffer.getInt(HEADER_SIZE + index);
+            if (length == PADDING) {
+                position += _capacity - index;
+            } else if (length > 0 && length <= _capacity - index - RECORD_HEADER_SIZE) {
+                position += recordSize(length);
+            } else {
+                break;
+            }
+        }
+        for (long curPosition = position; curPosition < end; ) {
+            int index = index(curPosition);
+            int length = (int) Math.min(end - curPosition, _capacity - index);
+            zero(index, length);
+            curPosition += length;
+        }
+        _claimed.set(position);
+    }
+
+    /**
+     * Prepares the ring for reading by this process, continuing from where the previous reader stopped.
+     */
+    void openForReading() {
+        _readPosition = _buffer.getLong(READ_POSITION_OFFSET);
+    }
+
+    /**
+     * Returns the number of bytes a record with a body of the specified size takes up in the ring.
+     */
+    static int recordSize(int bodySize) {
+        return (RECORD_HEADER_SIZE + bodySize + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Writes a record to the ring, unless the ring does not have room for it.  May be called by several threads at
+     * once.
+     *
+     * @param body The body of the record, between its position and limit.  This must not be empty.
+     *
+     * @return True if the record was written, false if the ring is full.
+     */
+    boolean offer(ByteBuffer body) {
+        int bodySize = body.remaining();
+        int recordSize = recordSize(bodySize);
+        if (recordSize > _capacity) {
+            return false;
+        }
+
+        long position;
+        int padding;
+        do {
+            position = _claimed.get();
+            int index = index(position);
+            padding = (index + recordSize > _capacity ? _capacity - index : 0);
+            if (position + padding + recordSize - _buffer.getLong(READ_POSITION_OFFSET) > _capacity) {
+                return false;
+            }
+        } while (!_claimed.compareAndSet(position, position + padding + recordSize));
+
+        int index = index(position + padding);
+        ByteBuffer target = _buffer.duplicate();
+        target.position(HEADER_SIZE + index + RECORD_HEADER_SIZE);
+        target.put(body);
+        _fence = bodySize;
+        _buffer.putInt(HEADER_SIZE + index, bodySize);
+        if (padding > 0) {
+            _buffer.putInt(HEADER_SIZE + index(position), PADDING);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the next record from the ring.  Must only be called by a single thread.
+     *
+     * @return A copy of the body of the next record, or null if the next record has not been written yet.  Records
+     *         with an invalid length are skipped rather than returned.
+     */
+    ByteBuffer poll() {
+        while (true) {
+            int index = index(_readPosition);
+            int length = _buffer.getInt(HEADER_SIZE + index);
+            if (length == 0) {
+                return null;
+            }
+            if (length == PADDING) {
+                consume(index, _capacity - index);
+                continue;
+            }
+            if (length < 0 || length > _capacity - index - RECORD_HEADER_SIZE) {
+                // Only the reader thread updates the count.
+                _corruptCount++;
+                consume(index, _capacity - index);
+                continue;
+            }
+
+            // Reading the fence keeps the body from being read before its length.
+            if (_fence == Integer.MIN_VALUE) {
+                continue;
+            }
+            byte[] body = new byte[length];
+            ByteBuffer source = _buffer.duplicate();
+            source.position(HEADER_SIZE + index + RECORD_HEADER_SIZE);
+            source.get(body);
+            consume(index, recordSize(length));
+            return ByteBuffer.wrap(body);
+        }
+    }
+
+    // -------- Internal Methods --------
+
+    private int index(long position) {
+        return (int) (position % _capacity);
+    }
+
+    /**
+     * Zero fills a consumed record and then advances the reader's position past it, releasing its space to the writer.
+     */
+    private void consume(int index, int size) {
+        zero(index, size);
+        _readPosition += size;
+        _fence = size;
+        _buffer.putLong(READ_POSITION_OFFSET, _readPosition);
+    }
+
+    private void zero(int index, int length) {
+        ByteBuffer target = _buffer.duplicate();
+        target.position(HEADER_SIZE + index);
+        while (length > 0) {
+            int chunk = Math.min(length, ZEROS.length);
+            target.put(ZEROS, 0, chunk);
+            length -= chunk;
+        }
+    }
+}
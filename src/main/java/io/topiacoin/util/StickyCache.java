@@ -0,0 +1,170 @@
+package io.topiacoin.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A bounded cache of the latest notification posted with each notification name and classifier, for a sticky
+ * Notification Center.
+ * <p>
+ * The notifications are kept in a concurrent map, so caching a notification and looking one up take no locks.  Each
+ * entry records when it was last written or read, and once the cache grows past its capacity, the least recently used
+ * entries are evicted.  Eviction sorts the entries by when they were last used, so to keep its cost constant per post,
+ * it removes an eighth of the capacity beyond the excess at a time.  Only one thread evicts at a time, and posters that
+ * find an eviction in progress carry on without waiting for it.
+ */
+final class StickyCache {
+
+    private final int _capacity;
+    private final int _evictionBatch;
+    private final ConcurrentMap<Key, Entry> _entries = new ConcurrentHashMap<Key, Entry>();
+    private final AtomicBoolean _evicting = new AtomicBoolean();
+
+    /**
+     * Constructs a new Sticky Cache.
+     *
+     * @param capacity The maximum number of notifications kept, beyond which the least recently used are evicted.
+     *
+     * @throws IllegalArgumentException If the capacity is not positive.
+     */
+    StickyCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Sticky cache capacity must be positive.");
+        }
+        _capacity = capacity;
+        _evictionBatch = capacity / 8;
+    }
+
+    /**
+     * Makes the notification the latest one for its notification name and classifier.  The notification must be safe
+     * to keep.
+     * <p>
+     * Entries are replaced rather than updated in place, so a put that races with another put or with an eviction
+     * either installs its entry or retries, and the notification that was put last is never lost.
+     */
+    void put(Notification notification) {
+        Key key = new Key(notification.getNotificationName(), notification.getClassifier());
+        Entry entry = new Entry(notification);
+        while (true) {
+            Entry previous = _entries.putIfAbsent(key, entry);
+            if (previous == null) {
+                if (_entries.size() > _capacity) {
+                    evict();
+                }
+                return;
+            }
+            if (_entries.replace(key, previous, entry)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the latest notification posted with the notification name and classifier, or null if none is cached.
+     */
+    Notification get(String notificationName, String classifier) {
+        Entry entry = _entries.get(new Key(notificationName, classifier));
+        if (entry == null) {
+            return null;
+        }
+        entry.lastUsedNanos = System.nanoTime();
+        return entry.notification;
+    }
+
+    /**
+     * Returns all of the cached notifications, in no particular order.
+     */
+    List<Notification> getAll() {
+        List<Notification> notifications = new ArrayList<Notification>(_entries.size());
+        for (Entry curEntry : _entries.values()) {
+            notifications.add(curEntry.notification);
+        }
+        return notifications;
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * Evicts the least recently used entries until the cache is an eviction batch below its capacity.
+     */
+    private void evict() {
+        if (!_evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int excess = _entries.size() - _capacity;
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<Key, Entry>> entries = new ArrayList<Map.Entry<Key, Entry>>(_entries.entrySet());
+            // The times are copied first, since readers keep updating them while the entries are sorted.
+            final Map<Key, Long> lastUsed = new HashMap<Key, Long>(entries.size() * 2);
+            for (Map.Entry<Key, Entry> curEntry : entries) {
+                lastUsed.put(curEntry.getKey(), curEntry.getValue().lastUsedNanos);
+            }
+            Collections.sort(entries, new Comparator<Map.Entry<Key, Entry>>() {
+                public int compare(Map.Entry<Key, Entry> first, Map.Entry<Key, Entry> second) {
+                    long difference = lastUsed.get(first.getKey()) - lastUsed.get(second.getKey());
+                    return (difference < 0 ? -1 : (difference > 0 ? 1 : 0));
+                }
+            });
+            int evictCount = Math.min(entries.size(), excess + _evictionBatch);
+            for (int i = 0; i < evictCount; i++) {
+                _entries.remove(entries.get(i).getKey(), entries.get(i).getValue());
+            }
+        } finally {
+            _evicting.set(false);
+        }
+    }
+
+    /**
+     * A cached notification, and the time it was last written or read.
+     */
+    private static final class Entry {
+        final Notification notification;
+        volatile long lastUsedNanos;
+
+        Entry(Notification notification) {
+            this.notification = notification;
+            this.lastUsedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * The notification name and classifier that a notification is cached under.
+     */
+    private static final class Key {
+        private final String notificationName;
+        private final String classifier;
+
+        Key(String notificationName, String classifier) {
+            this.notificationName = notificationName;
+            this.classifier = classifier;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return notificationName.equals(other.notificationName)
+                    && (classifier == null ? other.classifier == null : classifier.equals(other.classifier));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * notificationName.hashCode() + (classifier == null ? 0 : classifier.hashCode());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.topiacoin.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads its increments over several cells so that threads incrementing it concurrently rarely contend
+ * on the same cache line.  The cell is chosen from the incrementing thread's ID, and the value of the counter is the
+ * sum of all of its cells.  Reading the value is therefore more expensive than incrementing it, which suits counters
+ * that are updated on every post and read only when statistics are gathered.
+ */
+final class StripedCounter {
+
+    /**
+     * The number of longs between cells, so that each cell sits on its own cache line.
+     */
+    private static final int CELL_STRIDE = 8;
+
+    private static final int MAX_STRIPES = 16;
+
+    private static final int STRIPES = stripeCount();
+
+    private final AtomicLongArray _cells = new AtomicLongArray(STRIPES * CELL_STRIDE);
+
+    /**
+     * Adds one to the counter.
+     */
+    void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds the specified amount to the counter.
+     */
+    void add(long amount) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        _cells.getAndAdd(stripe * CELL_STRIDE, amount);
+    }
+
+    /**
+     * Returns the sum of the counter's cells.  The sum is not an atomic snapshot if the counter is being incremented
+     * concurrently.
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += _cells.get(i * CELL_STRIDE);
+        }
+        return sum;
+    }
+
+    private static int stripeCount() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
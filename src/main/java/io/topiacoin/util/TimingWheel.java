@@ -0,0 +1,354 @@
+package io.topiacoin.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hierarchical timing wheel that runs tasks after a delay, driven by a single timer thread.
+ * <p>
+ * Time is divided into ticks.  The wheel has several levels of 64 slots each.  The slots of the lowest level are one
+ * tick wide, and those of each higher level are 64 times as wide as those of the level below, so six levels cover more
+ * than two years at a tick of one millisecond.  A timeout is placed in the lowest level whose range covers its
+ * deadline, in the slot its deadline falls in.  Each time the lowest level completes a revolution, the current slot of
+ * the level above is emptied and its timeouts are placed again, now in a lower level, and so on up the levels.  So a
+ * timeout moves down at most once per level before it expires, and the timer thread only ever looks at the slots
+ * whose time has come, however many timeouts are pending.
+ * <p>
+ * Each slot holds its timeouts in a doubly linked list, so a timeout is added and removed in constant time.
+ * Scheduling and cancelling never touch the wheel directly.  Instead, new and cancelled timeouts are passed to the
+ * timer thread through lock-free queues, and the thread applies them before it advances the wheel.  The timer thread
+ * sleeps while no timeouts are pending, and is woken when one is scheduled.
+ * <p>
+ * Tasks are run on the timer thread, so they should be short.  An exception thrown by a task is passed to the timer
+ * thread's uncaught exception handler.
+ */
+final class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    /**
+     * The furthest a timeout can be placed ahead of the current tick.  A timeout further away than this is placed at
+     * this distance, and placed again, closer to its deadline, when its slot comes around.
+     */
+    private static final long MAX_DISTANCE = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long _tickNanos;
+    private final long _startNanos;
+    private final Slot[][] _slots;
+    private long _currentTick;
+
+    private final Queue<Timeout> _scheduled = new ConcurrentLinkedQueue<Timeout>();
+    private final Queue<Timeout> _cancelled = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicLong _pendingCount = new AtomicLong();
+    private final List<Timeout> _expired = new ArrayList<Timeout>();
+
+    private Thread _timerThread;
+    private volatile boolean _running = true;
+    private volatile boolean _idle;
+
+    /**
+     * Constructs a new Timing Wheel.  The wheel does not advance until its timer thread is started with
+     * {@link #start(String)}.
+     *
+     * @param tickNanos The duration of a tick, in nanoseconds.  Tasks run at most one tick after their deadline.
+     *
+     * @throws IllegalArgumentException If the tick is not positive.
+     */
+    TimingWheel(long tickNanos) {
+        if (tickNanos < 1) {
+            throw new IllegalArgumentException("Tick duration must be positive.");
+        }
+        _tickNanos = tickNanos;
+        _startNanos = System.nanoTime();
+        _slots = new Slot[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                _slots[level][slot] = new Slot();
+            }
+        }
+    }
+
+    /**
+     * Starts the timer thread, which advances the wheel in step with the clock.
+     */
+    synchronized void start(String threadName) {
+        _timerThread = new Thread(new Runnable() {
+            public void run() {
+                timerLoop();
+            }
+        }, threadName);
+        _timerThread.setDaemon(true);
+        _timerThread.start();
+    }
+
+    /**
+     * Stops the timer thread.  Pending timeouts are discarded without running.
+     */
+    synchronized void shutdown() {
+        _running = false;
+        if (_timerThread != null) {
+            LockSupport.unpark(_timerThread);
+        }
+    }
+
+    /**
+     * Schedules a task to run once the specified delay has passed.
+     *
+     * @param delayNanos The delay, in nanoseconds.  A delay of zero or less runs the task on the next tick.  A delay
+     *                   whose deadline lies beyond the last tick the wheel can count to is cut short at that tick,
+     *                   which is centuries away, so such a task in effect never runs.
+     * @param task       The task to run.
+     *
+     * @return The timeout, which can be used to cancel the task.
+     *
+     * @throws IllegalStateException If the wheel has been shut down.
+     */
+    Timeout schedule(long delayNanos, Runnable task) {
+        long nowNanos = System.nanoTime() - _startNanos;
+        long delay = Math.max(0, delayNanos);
+        // The deadline saturates rather than overflowing, which would wrap it into the past.
+        long elapsedNanos = (delay > Long.MAX_VALUE - nowNanos ? Long.MAX_VALUE : nowNanos + delay);
+        // The deadline is rounded up, so that the task never runs early.
+        long deadlineTick = elapsedNanos / _tickNanos + (elapsedNanos % _tickNanos == 0 ? 0 : 1);
+        return scheduleAtTick(deadlineTick, task);
+    }
+
+    /**
+     * Schedules a task to run on the specified tick.
+     */
+    Timeout scheduleAtTick(long deadlineTick, Runnable task) {
+        if (!_running) {
+            throw new IllegalStateException("The timing wheel has been shut down.");
+        }
+        Timeout timeout = new Timeout(this, deadlineTick, task);
+        _pendingCount.incrementAndGet();
+        _scheduled.add(timeout);
+        if (_idle) {
+            LockSupport.unpark(_timerThread);
+        }
+        return timeout;
+    }
+
+    /**
+     * Returns the number of timeouts that have been scheduled and have neither run nor been cancelled.
+     */
+    long getPendingCount() {
+        return _pendingCount.get();
+    }
+
+    /**
+     * Returns the last tick that the wheel has advanced to.  Only meaningful on the timer thread.
+     */
+    long getCurrentTick() {
+        return _currentTick;
+    }
+
+    /**
+     * Applies the scheduled and cancelled timeouts, and advances the wheel to the specified tick, running the tasks
+     * that expire on the way.  Must only be called by the timer thread.
+     */
+    void advanceTo(long tick) {
+        Timeout timeout;
+        while ((timeout = _scheduled.poll()) != null) {
+            if (!timeout.isCancelled()) {
+                place(timeout);
+            }
+        }
+        while ((timeout = _cancelled.poll()) != null) {
+            if (timeout.slot != null) {
+                timeout.slot.remove(timeout);
+            }
+        }
+        runExpired();
+
+        while (_currentTick < tick) {
+            if (_pendingCount.get() == 0 && _scheduled.isEmpty()) {
+                // Nothing is waiting in the wheel, so there is nothing to cascade or expire on the way.
+                _currentTick = tick;
+                break;
+            }
+            long currentTick = ++_currentTick;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(_slots[level][(int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK]);
+                }
+            }
+            Slot slot = _slots[0][(int) currentTick & SLOT_MASK];
+            while ((timeout = slot.head) != null) {
+                slot.remove(timeout);
+                _expired.add(timeout);
+            }
+            runExpired();
+        }
+    }
+
+    // -------- Internal Methods --------
+
+    private void timerLoop() {
+        while (_running) {
+            advanceTo((System.nanoTime() - _startNanos) / _tickNanos);
+
+            if (_pendingCount.get() == 0) {
+                _idle = true;
+                // A timeout scheduled after the check above sees the idle flag and wakes the thread.
+                if (_scheduled.isEmpty() && _running) {
+                    LockSupport.park(this);
+                }
+                _idle = false;
+            } else {
+                long nextTickNanos = _startNanos + (_currentTick + 1) * _tickNanos;
+                LockSupport.parkNanos(this, Math.max(1, nextTickNanos - System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Places a timeout in the slot of the lowest level that covers its deadline, or queues it to run if its deadline
+     * has already passed.
+     */
+    private void place(Timeout timeout) {
+        long distance = timeout.deadlineTick - _currentTick;
+        if (distance <= 0) {
+            _expired.add(timeout);
+            return;
+        }
+        long deadlineTick = timeout.deadlineTick;
+        if (distance > MAX_DISTANCE) {
+            deadlineTick = _currentTick + MAX_DISTANCE;
+            distance = MAX_DISTANCE;
+        }
+        int level = 0;
+        while (distance >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        _slots[level][(int) (deadlineTick >>> (SLOT_BITS * level)) & SLOT_MASK].add(timeout);
+    }
+
+    /**
+     * Places the timeouts of a higher level slot whose time has come again, in the levels below.
+     */
+    private void cascade(Slot slot) {
+        Timeout timeout;
+        while ((timeout = slot.head) != null) {
+            slot.remove(timeout);
+            place(timeout);
+        }
+    }
+
+    private void runExpired() {
+        for (int i = 0; i < _expired.size(); i++) {
+            _expired.get(i).expire();
+        }
+        _expired.clear();
+    }
+
+    /**
+     * A slot of the wheel, holding a doubly linked list of timeouts.  Only used by the timer thread.
+     */
+    private static final class Slot {
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.slot = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.slot = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+    }
+
+    /**
+     * A task scheduled on the wheel.  A timeout is pending until it either expires, running its task, or is
+     * cancelled, whichever happens first.
+     */
+    static final class Timeout {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final TimingWheel wheel;
+        private final long deadlineTick;
+        private final Runnable task;
+        private volatile int state;
+
+        // The position of the timeout in the wheel, only used by the timer thread.
+        Slot slot;
+        Timeout previous;
+        Timeout next;
+
+        Timeout(TimingWheel wheel, long deadlineTick, Runnable task) {
+            this.wheel = wheel;
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        /**
+         * Cancels the timeout, unless it has already expired or been cancelled.
+         *
+         * @return True if the timeout was cancelled by this call.
+         */
+        boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel._pendingCount.decrementAndGet();
+            wheel._cancelled.add(this);
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        private void expire() {
+            if (!STATE.compareAndSet(this, PENDING, EXPIRED)) {
+                return;
+            }
+            wheel._pendingCount.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                // An error would otherwise end the timer thread, and every timeout scheduled after it would never expire.
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package io.topiacoin.util;
+
+/**
+ * A compact identifier for a notification name and classifier pair that has been interned with a Notification Center.
+ * <p>
+ * Topic IDs are obtained from {@link NotificationCenter#registerTopic(String, String)}.  Notifications posted with a
+ * Topic ID are dispatched using an array lookup on the ID instead of hashing and comparing the notification name and
+ * classifier.  A Topic ID is only meaningful to the Notification Center that issued it.
+ */
+public final class TopicId {
+
+    private final int id;
+    private final String notificationName;
+    private final String classifier;
+
+    TopicId(int id, String notificationName, String classifier) {
+        this.id = id;
+        this.notificationName = notificationName;
+        this.classifier = classifier;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getNotificationName() {
+        return notificationName;
+    }
+
+    public String getClassifier() {
+        return classifier;
+    }
+
+    @Override
+    public String toString() {
+        return "TopicId{" +
+                "id=" + id +
+                ", notificationName='" + notificationName + '\'' +
+                ", classifier='" + classifier + '\'' +
+                '}';
+    }
+}
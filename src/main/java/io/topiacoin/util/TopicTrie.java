@@ -0,0 +1,133 @@
+package io.topiacoin.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A trie of hierarchical notification name patterns, used to find the wildcard registrations that match a notification
+ * name.
+ * <p>
+ * Hierarchical names are made up of segments separated by periods, such as "chain.block.connected".  In a pattern, a
+ * segment consisting of a single <code>*</code> matches exactly one segment, and a segment consisting of a single
+ * <code>#</code> matches zero or more segments.  So "chain.block.*" matches "chain.block.connected" but not
+ * "chain.block", while "chain.#" matches "chain", "chain.block" and "chain.block.connected".  Any other segment must
+ * match exactly.
+ * <p>
+ * A trie is built once, from the wildcard registrations of a dispatch table snapshot, and is not modified afterwards.
+ */
+final class TopicTrie {
+
+    static final String SEPARATOR = ".";
+    static final String SINGLE_WILDCARD = "*";
+    static final String MULTI_WILDCARD = "#";
+
+    private final Node _root = new Node();
+    private boolean _empty = true;
+
+    /**
+     * Returns true if the notification name is a pattern containing a wildcard segment.
+     */
+    static boolean isPattern(String notificationName) {
+        if (notificationName == null) {
+            return false;
+        }
+        for (String segment : split(notificationName)) {
+            if (SINGLE_WILDCARD.equals(segment) || MULTI_WILDCARD.equals(segment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a registration whose notification name is a pattern.
+     */
+    void add(Registration registration) {
+        Node node = _root;
+        for (String segment : split(registration.getNotificationName())) {
+            if (SINGLE_WILDCARD.equals(segment)) {
+                if (node.singleWildcard == null) {
+                    node.singleWildcard = new Node();
+                }
+                node = node.singleWildcard;
+            } else if (MULTI_WILDCARD.equals(segment)) {
+                if (node.multiWildcard == null) {
+                    node.multiWildcard = new Node();
+                }
+                node = node.multiWildcard;
+            } else {
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+        }
+        node.registrations.add(registration);
+        _empty = false;
+    }
+
+    boolean isEmpty() {
+        return _empty;
+    }
+
+    /**
+     * Adds every registration whose pattern matches the notification name to the result set.
+     *
+     * @param notificationName The concrete notification name.
+     * @param results          The set that the matching registrations are added to.
+     */
+    void match(String notificationName, Set<Registration> results) {
+        if (!_empty) {
+            match(_root, split(notificationName), 0, results);
+        }
+    }
+
+    // -------- Internal Methods --------
+
+    private static void match(Node node, String[] segments, int index, Set<Registration> results) {
+        if (node.multiWildcard != null) {
+            // The multi-segment wildcard may consume any number of the remaining segments, including none.
+            for (int i = index; i <= segments.length; i++) {
+                match(node.multiWildcard, segments, i, results);
+            }
+        }
+        if (index == segments.length) {
+            results.addAll(node.registrations);
+            return;
+        }
+        Node child = node.children.get(segments[index]);
+        if (child != null) {
+            match(child, segments, index + 1, results);
+        }
+        if (node.singleWildcard != null) {
+            match(node.singleWildcard, segments, index + 1, results);
+        }
+    }
+
+    private static String[] split(String notificationName) {
+        List<String> segments = new ArrayList<String>();
+        int start = 0;
+        int end;
+        while ((end = notificationName.indexOf(SEPARATOR, start)) >= 0) {
+            segments.add(notificationName.substring(start, end));
+            start = end + SEPARATOR.length();
+        }
+        segments.add(notificationName.substring(start));
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    /**
+     * A node of the trie, reached by following one segment of a pattern.
+     */
+    private static class Node {
+        final Map<String, Node> children = new HashMap<String, Node>();
+        Node singleWildcard;
+        Node multiWildcard;
+        final List<Registration> registrations = new ArrayList<Registration>();
+    }
+}
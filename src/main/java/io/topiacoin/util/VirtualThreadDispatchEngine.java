@@ -0,0 +1,193 @@
+package io.topiacoin.util;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A dispatch engine that runs each handler invocation on a thread of its own, so that handlers which block on I/O do
+ * not hold up the poster or each other.
+ * <p>
+ * On runtimes that support virtual threads, each invocation runs on a new virtual thread.  Blocking a virtual thread
+ * does not tie up an operating system thread, so handlers can block freely.  On older runtimes, the engine falls back
+ * to a cached pool of daemon platform threads.  Virtual threads are created reflectively, so the library itself
+ * remains compatible with older runtimes.
+ * <p>
+ * The number of handler invocations in progress at once is limited by a semaphore.  When the limit is reached, posting
+ * waits until an invocation completes, which pushes back on posters instead of letting invocations pile up without
+ * bound.
+ * <p>
+ * Invocations run concurrently, so a handler may receive notifications in a different order than they were posted,
+ * and may be called by several threads at once.  Notifications posted in a batch are delivered to each handler as a
+ * single invocation.  Handlers registered with their own executor are handed their notifications on the posting thread,
+ * since the executor already runs them elsewhere.
+ */
+class VirtualThreadDispatchEngine extends DispatchEngine {
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+
+    private final Semaphore _permits;
+    private final int _maxConcurrency;
+    private final Executor _executor;
+    private volatile boolean _running = true;
+
+    /**
+     * Constructs a new Virtual Thread Dispatch Engine.
+     *
+     * @param maxConcurrency The maximum number of handler invocations that may be in progress at once.
+     *
+     * @throws IllegalArgumentException If the maximum concurrency is not positive.
+     */
+    VirtualThreadDispatchEngine(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Maximum concurrency must be positive.");
+        }
+        _maxConcurrency = maxConcurrency;
+        _permits = new Semaphore(maxConcurrency);
+
+        if (VIRTUAL_THREAD_FACTORY != null) {
+            _executor = new Executor() {
+                public void execute(Runnable command) {
+                    VIRTUAL_THREAD_FACTORY.newThread(command).start();
+                }
+            };
+        } else {
+            // The semaphore bounds the number of busy threads, so the pool itself is left unbounded, and never rejects
+            // a task because a thread that has just released its permit has not yet returned to the pool.
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new PlatformThreadFactory());
+            _executor = pool;
+        }
+    }
+
+    /**
+     * Returns true if handler invocations run on virtual threads, or false if the runtime does not support them and
+     * platform threads are used instead.
+     */
+    static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    @Override
+    void dispatch(Notification notification, Registration[] registrations) {
+        if (registrations.length == 0) {
+            return;
+        }
+        if (!_running) {
+            throw new IllegalStateException("The Notification Center has been shut down.");
+        }
+
+        // A reusable notification is refilled as soon as dispatch completes, so it is retained for the invocations.
+        final Notification deliveredNotification = notification.retain();
+        for (final Registration curRegistration : registrations) {
+            if (curRegistration.getExecutor() != null) {
+                curRegistration.deliver(deliveredNotification);
+                continue;
+            }
+            run(new Runnable() {
+                public void run() {
+                    curRegistration.deliver(deliveredNotification);
+                }
+            });
+        }
+    }
+
+    @Override
+    void deliverSlice(final Registration registration, final List<Notification> slice) {
+        if (!_running) {
+            throw new IllegalStateException("The Notification Center has been shut down.");
+        }
+        if (registration.getExecutor() != null) {
+            registration.deliverBatch(slice);
+            return;
+        }
+        run(new Runnable() {
+            public void run() {
+                registration.deliverBatch(slice);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of handler invocations in progress.
+     */
+    @Override
+    int getQueueDepth() {
+        return _maxConcurrency - _permits.availablePermits();
+    }
+
+    @Override
+    void shutdown() {
+        _running = false;
+        if (_executor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) _executor).shutdown();
+        }
+    }
+
+    // -------- Internal Methods --------
+
+    /**
+     * Runs a handler invocation on a thread of its own once a permit is available.  An exception thrown by a handler is
+     * passed to the invoking thread's uncaught exception handler.
+     */
+    private void run(final Runnable invocation) {
+        _permits.acquireUninterruptibly();
+        try {
+            _executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        invocation.run();
+                    } catch (RuntimeException e) {
+                        Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                    } finally {
+                        _permits.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            _permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a factory for virtual threads, or null if the runtime does not support them.  Virtual threads are final
+     * as of Java 21.  On Java 19 and 20, where they are a preview feature, creating the builder fails unless preview
+     * features are enabled, and platform threads are used instead.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, "NotificationCenter-virtual-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the daemon platform threads that run handler invocations on runtimes without virtual threads.
+     */
+    private static class PlatformThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger _threadNumber = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "NotificationCenter-handler-" + _threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
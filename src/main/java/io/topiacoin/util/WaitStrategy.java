@@ -0,0 +1,63 @@
+package io.topiacoin.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The strategies that a ring buffer consumer can use while waiting for notifications to be published, and that
+ * publishers use while waiting for space in a full ring buffer.  The strategies trade CPU usage for latency.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spins in a tight loop.  Gives the lowest latency, but keeps a core fully busy even when no notifications are being
+     * posted.  Only appropriate when a core can be dedicated to the consumer.
+     */
+    BUSY_SPIN {
+        @Override
+        int idle(int counter) {
+            return counter + 1;
+        }
+    },
+
+    /**
+     * Spins briefly, then yields the processor to other threads between checks.  Gives low latency with less impact on
+     * other threads than busy spinning.
+     */
+    YIELD {
+        @Override
+        int idle(int counter) {
+            if (counter < SPIN_TRIES) {
+                return counter + 1;
+            }
+            Thread.yield();
+            return counter;
+        }
+    },
+
+    /**
+     * Spins briefly, then parks the waiting thread for a short interval between checks.  Uses very little CPU while
+     * idle, at the cost of higher wake-up latency.
+     */
+    PARK {
+        @Override
+        int idle(int counter) {
+            if (counter < SPIN_TRIES) {
+                return counter + 1;
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+            return counter;
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 50000L;
+
+    /**
+     * Waits once, according to the strategy.
+     *
+     * @param counter The number of times the caller has already waited for the current condition.
+     *
+     * @return The value to pass as the counter on the next call.
+     */
+    abstract int idle(int counter);
+}
@@ -0,0 +1,468 @@
+package io.topiacoin.util;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Publisher} of the notifications that a Notification Center delivers for a notification name and
+ * classifier, for consumers built as reactive pipelines.
+ * <p>
+ * Each subscriber gets a subscription of its own, which registers a handler with the center for the publisher's
+ * notification name and classifier, with the same matching rules as
+ * {@link NotificationCenter#addHandler(NotificationHandler, String, String)}.  The handler places each notification in
+ * the subscription's bounded buffer, and the notifications are passed to the subscriber's
+ * {@link Flow.Subscriber#onNext(Object)} as it signals demand with {@link Flow.Subscription#request(long)}.  The
+ * subscriber is signalled on the publisher's executor, one signal at a time, and never on the posting thread.
+ * <p>
+ * When a subscriber falls behind and its buffer fills up, the publisher's {@link OverflowPolicy} decides what happens to
+ * the next notification.  With {@link OverflowPolicy#BLOCK}, the default, the thread delivering the notification waits
+ * until the subscriber requests more, which pushes back on posters rather than queueing without bound.  Posting then
+ * blocks until the subscriber catches up, so a blocking publisher suits centers with an asynchronous engine, or
+ * subscribers that keep up.  With {@link OverflowPolicy#FAIL_FAST}, the subscription is cancelled, and the subscriber is
+ * signalled {@link Flow.Subscriber#onError(Throwable)} with a {@link RejectedExecutionException}.  Every notification
+ * that finds a buffer full is counted in {@link #getOverflowCount()}.
+ * <p>
+ * Closing the publisher completes its subscriptions: each subscriber receives the notifications left in its buffer as
+ * it requests them, and then {@link Flow.Subscriber#onComplete()}.
+ */
+public final class NotificationPublisher implements Flow.Publisher<Notification>, Closeable {
+
+    private final NotificationCenter _center;
+    private final String _notificationName;
+    private final String _classifier;
+    private final int _bufferSize;
+    private final OverflowPolicy _overflowPolicy;
+    private final Executor _executor;
+
+    private final Set<NotificationSubscription> _subscriptions = new CopyOnWriteArraySet<NotificationSubscription>();
+    private final AtomicLong _overflowCount = new AtomicLong();
+    private volatile boolean _closed;
+
+    private NotificationPublisher(Builder builder) {
+        _center = builder._center;
+        _notificationName = builder._notificationName;
+        _classifier = builder._classifier;
+        _bufferSize = builder._bufferSize;
+        _overflowPolicy = builder._overflowPolicy;
+        _executor = builder._executor;
+    }
+
+    /**
+     * Subscribes the subscriber to the notifications of this publisher.  A subscriber that subscribes after the
+     * publisher has been closed is completed immediately.
+     *
+     * @throws NullPointerException If the subscriber is null, as required by the Reactive Streams specification.
+     */
+    public void subscribe(Flow.Subscriber<? super Notification> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber must be specified.");
+        }
+        NotificationSubscription subscription = new NotificationSubscription(subscriber);
+        _subscriptions.add(subscription);
+        subscription.start();
+        if (_closed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Returns the number of subscriptions that have not been cancelled or completed.
+     */
+    public int getSubscriptionCount() {
+        return _subscriptions.size();
+    }
+
+    /**
+     * Returns the number of notifications that found a subscriber's buffer full.
+     */
+    public long getOverflowCount() {
+        return _overflowCount.get();
+    }
+
+    /**
+     * Completes every subscription.  Subscribers receive the notifications left in their buffers as they request them,
+     * followed by {@link Flow.Subscriber#onComplete()}.
+     */
+    public void close() {
+        _closed = true;
+        for (NotificationSubscription curSubscription : _subscriptions) {
+            curSubscription.complete();
+        }
+    }
+
+    /**
+     * A subscription to the publisher.  The subscription is the handler that its notifications are delivered to, and
+     * keeps them in a circular buffer guarded by its own lock.  Signals to the subscriber are made by a drain task on the
+     * publisher's executor.  A count of the requests for a drain ensures that only one drain runs at a time, and that a
+     * request made while a drain is running is picked up by that drain.
+     */
+    private final class NotificationSubscription implements Flow.Subscription, NotificationHandler, Runnable {
+
+        private final Flow.Subscriber<? super Notification> _subscriber;
+        private final Notification[] _buffer = new Notification[_bufferSize];
+        private int _head;
+        private int _count;
+        private long _demand;
+        private boolean _cancelled;
+        private boolean _completed;
+        private Throwable _error;
+        private boolean _terminated;
+        private final AtomicInteger _drainRequests = new AtomicInteger();
+
+        NotificationSubscription(Flow.Subscriber<? super Notification> subscriber) {
+            _subscriber = subscriber;
+        }
+
+        void start() {
+            try {
+                _subscriber.onSubscribe(this);
+            } catch (RuntimeException e) {
+                cancel();
+                reportSubscriberFailure(e);
+                return;
+            }
+            if (!isCancelled()) {
+                _center.addHandler(this, _notificationName, _classifier);
+                // A subscription cancelled while the handler was being added would otherwise keep it registered.
+                if (isCancelled()) {
+                    _center.removeHandler(this);
+                }
+            }
+        }
+
+        public void handleNotification(Notification notification) {
+            Notification retained = notification.retain();
+            boolean overflowed = false;
+            boolean failed = false;
+            synchronized (this) {
+                while (!_cancelled && !_completed && _count == _buffer.length) {
+                    if (!overflowed) {
+                        _overflowCount.incrementAndGet();
+                        overflowed = true;
+                    }
+                    switch (_overflowPolicy) {
+                        case BLOCK:
+                            try {
+                                wait();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                            break;
+                        case DROP_NEWEST:
+                            return;
+                        case COALESCE:
+                            if (coalesce(retained)) {
+                                return;
+                            }
+                            dropOldest();
+                            break;
+                        case DROP_OLDEST:
+                            dropOldest();
+                            break;
+                        case FAIL_FAST:
+                            fail(new RejectedExecutionException("The subscriber's buffer of " + _buffer.length +
+                                    " notifications is full."));
+                            break;
+                    }
+                }
+                if (_error != null) {
+                    failed = true;
+                } else if (_cancelled || _completed) {
+                    return;
+                } else {
+                    _buffer[(_head + _count) % _buffer.length] = retained;
+                    _count++;
+                    if (_demand == 0) {
+                        return;
+                    }
+                }
+            }
+            if (failed) {
+                end();
+            } else {
+                drain();
+            }
+        }
+
+        public void request(long n) {
+            synchronized (this) {
+                if (_cancelled) {
+                    return;
+                }
+                if (n > 0) {
+                    _demand = (_demand + n < 0 ? Long.MAX_VALUE : _demand + n);
+                } else {
+                    fail(new IllegalArgumentException("Requested demand must be positive, but was " + n));
+                }
+            }
+            if (n > 0) {
+                drain();
+            } else {
+                end();
+            }
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                if (_cancelled) {
+                    return;
+                }
+                _cancelled = true;
+                clearBuffer();
+                notifyAll();
+            }
+            _center.removeHandler(this);
+            _subscriptions.remove(this);
+        }
+
+        /**
+         * Removes the subscription after it has failed, and signals the error to the subscriber.  Removing the handler
+         * while the center is dispatching to it is safe, since dispatch works from a snapshot of the registrations.
+         */
+        private void end() {
+            _center.removeHandler(this);
+            _subscriptions.remove(this);
+            drain();
+        }
+
+        /**
+         * Completes the subscription once the subscriber has received the notifications left in its buffer.
+         */
+        void complete() {
+            synchronized (this) {
+                if (_cancelled || _completed) {
+                    return;
+                }
+                _completed = true;
+                notifyAll();
+            }
+            _center.removeHandler(this);
+            _subscriptions.remove(this);
+            drain();
+        }
+
+        /**
+         * Signals the subscriber until it has no demand or its buffer is empty, signalling completion or an error once
+         * the subscription has ended.
+         */
+        public void run() {
+            int missed = 1;
+            do {
+                drainBuffer();
+                missed = _drainRequests.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        // -------- Internal Methods --------
+
+        private synchronized boolean isCancelled() {
+            return _cancelled;
+        }
+
+        /**
+         * Requests a drain, and submits the drain task unless one is already running.
+         */
+        private void drain() {
+            if (_drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+            try {
+                _executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                _drainRequests.set(0);
+                cancel();
+            }
+        }
+
+        private void drainBuffer() {
+            while (true) {
+                Notification notification = null;
+                Throwable error = null;
+                boolean complete = false;
+                synchronized (this) {
+                    if (_terminated) {
+                        return;
+                    }
+                    if (_error != null) {
+                        error = _error;
+                        _terminated = true;
+                    } else if (_cancelled) {
+                        return;
+                    } else if (_count > 0 && _demand > 0) {
+                        notification = _buffer[_head];
+                        _buffer[_head] = null;
+                        _head = (_head + 1) % _buffer.length;
+                        _count--;
+                        if (_demand != Long.MAX_VALUE) {
+                            _demand--;
+                        }
+                        notifyAll();
+                    } else if (_completed && _count == 0) {
+                        complete = true;
+                        _terminated = true;
+                    } else {
+                        return;
+                    }
+                }
+
+                try {
+                    if (error != null) {
+                        _subscriber.onError(error);
+                        return;
+                    }
+                    if (complete) {
+                        _subscriber.onComplete();
+                        return;
+                    }
+                    _subscriber.onNext(notification);
+                } catch (RuntimeException e) {
+                    // Subscribers must not throw, so one that does is treated as having cancelled its subscription.
+                    cancel();
+                    reportSubscriberFailure(e);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Cancels the subscription because of an error, which is signalled to the subscriber in place of any buffered
+         * notifications once the caller has released the lock and called {@link #end()}.  Must be called while holding
+         * the subscription's lock.
+         */
+        private void fail(Throwable error) {
+            _error = error;
+            _cancelled = true;
+            clearBuffer();
+            notifyAll();
+        }
+
+        /**
+         * Replaces the most recently buffered notification with the same name and classifier, returning false if there
+         * is none.  Must be called while holding the subscription's lock.
+         */
+        private boolean coalesce(Notification notification) {
+            for (int i = _count - 1; i >= 0; i--) {
+                int index = (_head + i) % _buffer.length;
+                Notification buffered = _buffer[index];
+                if (buffered.getNotificationName().equals(notification.getNotificationName())
+                        && (buffered.getClassifier() == null ?
+                            notification.getClassifier() == null :
+                            buffered.getClassifier().equals(notification.getClassifier()))) {
+                    _buffer[index] = notification;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void dropOldest() {
+            _buffer[_head] = null;
+            _head = (_head + 1) % _buffer.length;
+            _count--;
+        }
+
+        private void clearBuffer() {
+            for (int i = 0; i < _buffer.length; i++) {
+                _buffer[i] = null;
+            }
+            _head = 0;
+            _count = 0;
+        }
+
+        private void reportSubscriberFailure(RuntimeException e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    /**
+     * Builds a publisher for a notification name and classifier of a Notification Center.
+     */
+    public static class Builder {
+
+        private final NotificationCenter _center;
+        private final String _notificationName;
+        private final String _classifier;
+        private int _bufferSize = Flow.defaultBufferSize();
+        private OverflowPolicy _overflowPolicy = OverflowPolicy.BLOCK;
+        private Executor _executor = ForkJoinPool.commonPool();
+
+        /**
+         * Creates a builder for a publisher of the notifications with the specified name and classifier.
+         *
+         * @param center           The center that the notifications are posted to.
+         * @param notificationName The name of the notifications to publish, or a pattern matching them.  If null,
+         *                         notifications with any name that match the classifier are published.
+         * @param classifier       The classifier of the notifications to publish.  If null, notifications with any
+         *                         classifier that match the notification name are published.
+         *
+         * @throws IllegalArgumentException If the center is not specified.
+         */
+        public Builder(NotificationCenter center, String notificationName, String classifier) {
+            if (center == null) {
+                throw new IllegalArgumentException("Notification center must be specified.");
+            }
+            _center = center;
+            _notificationName = notificationName;
+            _classifier = classifier;
+        }
+
+        /**
+         * Sets the number of notifications that can wait for each subscriber's demand.  The default is
+         * {@link Flow#defaultBufferSize()}.
+         *
+         * @throws IllegalArgumentException If the buffer size is not positive.
+         */
+        public Builder bufferSize(int bufferSize) {
+            if (bufferSize < 1) {
+                throw new IllegalArgumentException("Buffer size must be positive.");
+            }
+            _bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Sets what happens to a notification that finds a subscriber's buffer full.  The default is
+         * {@link OverflowPolicy#BLOCK}.
+         *
+         * @throws IllegalArgumentException If no overflow policy is specified.
+         */
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("Overflow policy must be specified.");
+            }
+            _overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the executor that subscribers are signalled on.  The default is the common fork-join pool.
+         *
+         * @throws IllegalArgumentException If no executor is specified.
+         */
+        public Builder executor(Executor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("Executor must be specified.");
+            }
+            _executor = executor;
+            return this;
+        }
+
+        /**
+         * Builds the publisher.  Handlers are only registered with the center as subscribers subscribe.
+         *
+         * @return The new publisher.
+         */
+        public NotificationPublisher build() {
+            return new NotificationPublisher(this);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package io.topiacoin.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DeliveryShaperTest {
+
+    private NotificationCenter notificationCenter;
+
+    @Before
+    public void setUp() {
+        notificationCenter = new NotificationCenter.Builder().build();
+    }
+
+    @After
+    public void tearDown() {
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testDebounceDeliversLatestAfterQuietPeriod() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        notificationCenter.addHandler(handler, "utxoChanged", null, null,
+                new HandlerOptions().debounce(50, TimeUnit.MILLISECONDS));
+
+        for (int i = 1; i <= 10; i++) {
+            postUtxoChanged(i);
+            Thread.sleep(5);
+        }
+        assertTrue(handler.notifications.isEmpty());
+
+        handler.await(1);
+        Thread.sleep(100);
+        assertEquals(Collections.singletonList(10), handler.values("height"));
+    }
+
+    @Test
+    public void testThrottleDeliversLeadingAndTrailingEdges() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        notificationCenter.addHandler(handler, "utxoChanged", null, null,
+                new HandlerOptions().throttle(100, TimeUnit.MILLISECONDS, true, true));
+
+        for (int i = 1; i <= 5; i++) {
+            postUtxoChanged(i);
+        }
+        assertEquals(Collections.singletonList(1), handler.values("height"));
+
+        handler.await(2);
+        Thread.sleep(250);
+        List<Integer> expected = new ArrayList<Integer>();
+        expected.add(1);
+        expected.add(5);
+        assertEquals(expected, handler.values("height"));
+    }
+
+    @Test
+    public void testThrottleWithoutTrailingEdgeDropsTheRest() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        notificationCenter.addHandler(handler, "utxoChanged", null, null,
+                new HandlerOptions().throttle(50, TimeUnit.MILLISECONDS, true, false));
+
+        postUtxoChanged(1);
+        postUtxoChanged(2);
+        Thread.sleep(150);
+        postUtxoChanged(3);
+
+        List<Integer> expected = new ArrayList<Integer>();
+        expected.add(1);
+        expected.add(3);
+        assertEquals(expected, handler.values("height"));
+    }
+
+    @Test
+    public void testRateLimitDropsNotificationsBeyondTheWindow() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        notificationCenter.addHandler(handler, "utxoChanged", null, null,
+                new HandlerOptions().rateLimit(3, 100, TimeUnit.MILLISECONDS));
+
+        for (int i = 1; i <= 10; i++) {
+            postUtxoChanged(i);
+        }
+        assertEquals(3, handler.notifications.size());
+
+        Thread.sleep(150);
+        postUtxoChanged(11);
+        assertEquals(4, handler.notifications.size());
+        assertEquals(Integer.valueOf(11), handler.values("height").get(3));
+    }
+
+    @Test
+    public void testRemovedHandlerDoesNotReceiveHeldNotification() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        notificationCenter.addHandler(handler, "utxoChanged", null, null,
+                new HandlerOptions().debounce(20, TimeUnit.MILLISECONDS));
+
+        postUtxoChanged(1);
+        notificationCenter.removeHandler(handler);
+        Thread.sleep(100);
+
+        assertTrue(handler.notifications.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrottleRequiresAnEdge() {
+        new HandlerOptions().throttle(100, TimeUnit.MILLISECONDS, false, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDebounceRequiresAUnit() {
+        new HandlerOptions().debounce(100, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateLimitRequiresAUnit() {
+        new HandlerOptions().rateLimit(10, 100, null);
+    }
+
+    // -------- Helpers --------
+
+    private void postUtxoChanged(int height) {
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("height", height);
+        notificationCenter.postNotification("utxoChanged", "wallet-1", info);
+    }
+}
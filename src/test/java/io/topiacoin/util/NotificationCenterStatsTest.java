@@ -0,0 +1,179 @@
+package io.topiacoin.util;
+
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NotificationCenterStatsTest {
+
+    @Test
+    public void testPostsAreCountedPerNameAndClassifier() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+
+        for (int i = 0; i < 3; i++) {
+            notificationCenter.postNotification("blockConnected", null, null);
+        }
+        notificationCenter.postNotification("blockConnected", "main", null);
+        TopicId topicId = notificationCenter.registerTopic("walletUpdated", "alice");
+        notificationCenter.postPooledNotification(topicId, null);
+        notificationCenter.postPooledNotification(topicId, null);
+
+        NotificationCenterStats stats = notificationCenter.getStats();
+        assertEquals(6, stats.getPostCount());
+        assertEquals(0, stats.getUntrackedPostCount());
+        assertEquals(3, postCount(stats, "blockConnected", null));
+        assertEquals(1, postCount(stats, "blockConnected", "main"));
+        assertEquals(2, postCount(stats, "walletUpdated", "alice"));
+        assertEquals(3, stats.getTopicStats().size());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testTrackedTopicsAreLimited() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+
+        int extraTopics = 10;
+        for (int i = 0; i < DispatchMetrics.MAX_TRACKED_TOPICS + extraTopics; i++) {
+            notificationCenter.postNotification("notification" + i, null, null);
+        }
+
+        NotificationCenterStats stats = notificationCenter.getStats();
+        assertEquals(DispatchMetrics.MAX_TRACKED_TOPICS + extraTopics, stats.getPostCount());
+        assertEquals(extraTopics, stats.getUntrackedPostCount());
+        assertEquals(DispatchMetrics.MAX_TRACKED_TOPICS, stats.getTopicStats().size());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testHandlerInvocationsAndLatencyAreRecorded() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+
+        NotificationHandler slowHandler = new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        NotificationHandler idleHandler = new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+            }
+        };
+        notificationCenter.addHandler(slowHandler, "slowNotification", null);
+        notificationCenter.addHandler(idleHandler, "otherNotification", null);
+
+        for (int i = 0; i < 5; i++) {
+            notificationCenter.postNotification("slowNotification", null, null);
+        }
+
+        NotificationCenterStats.HandlerStats slowStats = handlerStats(notificationCenter.getStats(), slowHandler);
+        assertEquals(5, slowStats.getInvocationCount());
+        assertEquals("slowNotification", slowStats.getNotificationName());
+        assertTrue(slowStats.getLatency().getValueAtPercentile(50) >= 2000000 * 7 / 8);
+        assertTrue(slowStats.getLatency().getMaxNanos() >= 2000000);
+        assertTrue(slowStats.getLatency().getMeanNanos() >= 2000000);
+
+        NotificationCenterStats.HandlerStats idleStats = handlerStats(notificationCenter.getStats(), idleHandler);
+        assertEquals(0, idleStats.getInvocationCount());
+        assertEquals(0, idleStats.getLatency().getValueAtPercentile(99));
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testHistogramPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+
+        NotificationCenterStats.LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(100000, snapshot.getCount());
+        assertEquals(100000, snapshot.getMaxNanos());
+        assertEquals(50000.5, snapshot.getMeanNanos(), 0.001);
+        assertEquals(50000, snapshot.getValueAtPercentile(50), 50000 / 8);
+        assertEquals(99000, snapshot.getValueAtPercentile(99), 99000 / 8);
+        assertEquals(100000, snapshot.getValueAtPercentile(100));
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        long previousHighest = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long highest = LatencyHistogram.highestValueInBucket(i);
+            assertEquals(i, LatencyHistogram.bucketIndex(previousHighest + 1));
+            assertEquals(i, LatencyHistogram.bucketIndex(highest));
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testDisabledMetrics() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().metrics(false).build();
+
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+            }
+        }, "testNotification", null);
+        notificationCenter.postNotification("testNotification", null, null);
+
+        NotificationCenterStats stats = notificationCenter.getStats();
+        assertEquals(0, stats.getPostCount());
+        assertTrue(stats.getTopicStats().isEmpty());
+        assertTrue(stats.getHandlerStats().isEmpty());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testMBeanPublishesStats() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        String objectName = "io.topiacoin.util:type=NotificationCenter,name=statsTest";
+        notificationCenter.registerMBean(objectName);
+
+        notificationCenter.postNotification("mbeanNotification", "classifier", null);
+
+        ObjectName name = new ObjectName(objectName);
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "PostCount"));
+
+        NotificationCenterMXBean proxy = javax.management.JMX.newMXBeanProxy(
+                ManagementFactory.getPlatformMBeanServer(), name, NotificationCenterMXBean.class);
+        Map<String, Long> topicPostCounts = proxy.getTopicPostCounts();
+        assertEquals(Long.valueOf(1), topicPostCounts.get("mbeanNotification/classifier"));
+
+        notificationCenter.shutdown();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    // -------- Helper Methods --------
+
+    private long postCount(NotificationCenterStats stats, String notificationName, String classifier) {
+        for (NotificationCenterStats.TopicStats curTopic : stats.getTopicStats()) {
+            if (curTopic.getNotificationName().equals(notificationName)
+                    && (classifier == null ? curTopic.getClassifier() == null : classifier.equals(curTopic.getClassifier()))) {
+                return curTopic.getPostCount();
+            }
+        }
+        fail("No stats for " + notificationName + "/" + classifier);
+        return 0;
+    }
+
+    private NotificationCenterStats.HandlerStats handlerStats(NotificationCenterStats stats, NotificationHandler handler) {
+        for (NotificationCenterStats.HandlerStats curHandler : stats.getHandlerStats()) {
+            if (curHandler.getHandler() == handler) {
+                return curHandler;
+            }
+        }
+        fail("No stats for handler " + handler);
+        return null;
+    }
+}
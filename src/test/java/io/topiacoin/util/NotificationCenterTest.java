@@ -1,11 +1,27 @@
 package io.topiacoin.util;
 
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 
@@ -20,6 +36,19 @@ public class NotificationCenterTest {
         }
     }
 
+    private static class CountingNotificationHandler implements NotificationHandler {
+
+        ConcurrentMap<Object, AtomicInteger> receivedCounts = new ConcurrentHashMap<Object, AtomicInteger>();
+
+        public void handleNotification(Notification notification) {
+            Object sequence = notification.getNotificationInfo().get("sequence");
+            AtomicInteger count = receivedCounts.putIfAbsent(sequence, new AtomicInteger(1));
+            if (count != null) {
+                count.incrementAndGet();
+            }
+        }
+    }
+
 
     @Test
     public void testNotificationDeliveryMatrixWithNotifications() {
@@ -592,4 +621,625 @@ public class NotificationCenterTest {
         assertEquals(classifier, receivedNotification.getClassifier());
         assertEquals(notificationInfo, receivedNotification.getNotificationInfo());
     }
+
+    @Test
+    public void testConcurrentRegistrationChangesDuringPosting() throws Exception {
+        final String notificationName = "stressNotification";
+        final String classifier = "stressClassifier";
+        final int posterCount = 4;
+        final int postsPerPoster = 5000;
+        final int churnerCount = 4;
+
+        final NotificationCenter notificationCenter = NotificationCenter.defaultCenter();
+
+        // The stable handler is registered under every key that matches, and must see each notification exactly once.
+        CountingNotificationHandler stableHandler = new CountingNotificationHandler();
+        notificationCenter.addHandler(stableHandler, notificationName, classifier);
+        notificationCenter.addHandler(stableHandler, notificationName, null);
+        notificationCenter.addHandler(stableHandler, null, classifier);
+
+        final List<CountingNotificationHandler> churnHandlers = new ArrayList<CountingNotificationHandler>();
+        for (int i = 0; i < churnerCount; i++) {
+            churnHandlers.add(new CountingNotificationHandler());
+        }
+
+        final AtomicBoolean posting = new AtomicBoolean(true);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        // Churn threads continuously add and remove their handlers while the posters are running.
+        for (final CountingNotificationHandler churnHandler : churnHandlers) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        startLatch.await();
+                        while (posting.get()) {
+                            notificationCenter.addHandler(churnHandler, notificationName, classifier);
+                            notificationCenter.addHandler(churnHandler, notificationName, null);
+                            notificationCenter.removeHandler(churnHandler, notificationName, classifier);
+                            notificationCenter.addHandler(churnHandler, null, classifier);
+                            notificationCenter.removeHandler(churnHandler);
+                        }
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            }));
+        }
+
+        List<Thread> posters = new ArrayList<Thread>();
+        for (int i = 0; i < posterCount; i++) {
+            final int posterID = i;
+            posters.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        startLatch.await();
+                        for (int j = 0; j < postsPerPoster; j++) {
+                            Map<String, Object> info = new HashMap<String, Object>();
+                            info.put("sequence", posterID + ":" + j);
+                            notificationCenter.postNotification(notificationName, classifier, info);
+                        }
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            }));
+        }
+        threads.addAll(posters);
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        startLatch.countDown();
+        for (Thread poster : posters) {
+            poster.join();
+        }
+        posting.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        notificationCenter.removeHandler(stableHandler);
+
+        assertTrue("Unexpected failures: " + failures, failures.isEmpty());
+
+        // No lost deliveries, and no duplicates, for the handler that was registered for the whole run.
+        assertEquals("Stable Handler ReceiveCount Wrong", posterCount * postsPerPoster, stableHandler.receivedCounts.size());
+        for (Map.Entry<Object, AtomicInteger> entry : stableHandler.receivedCounts.entrySet()) {
+            assertEquals("Duplicate delivery of " + entry.getKey(), 1, entry.getValue().get());
+        }
+
+        // Handlers that were churning may have missed notifications, but must never have received one twice.
+        for (CountingNotificationHandler churnHandler : churnHandlers) {
+            for (Map.Entry<Object, AtomicInteger> entry : churnHandler.receivedCounts.entrySet()) {
+                assertEquals("Duplicate delivery of " + entry.getKey(), 1, entry.getValue().get());
+            }
+        }
+
+        // Once everything has been removed, further posts are not delivered to anyone.
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("sequence", "final");
+        notificationCenter.postNotification(notificationName, classifier, info);
+        assertFalse(stableHandler.receivedCounts.containsKey("final"));
+        for (CountingNotificationHandler churnHandler : churnHandlers) {
+            assertFalse(churnHandler.receivedCounts.containsKey("final"));
+        }
+    }
+
+    @Test
+    public void testAsynchronousPostDeliversOnDispatchThread() throws Exception {
+        String notificationName = "asyncNotification";
+        String classifier = "classifier";
+
+        final CountDownLatch deliveredLatch = new CountDownLatch(1);
+        final AtomicReference<Thread> deliveryThread = new AtomicReference<Thread>();
+        NotificationHandler handler = new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                deliveryThread.set(Thread.currentThread());
+                deliveredLatch.countDown();
+            }
+        };
+
+        NotificationCenter notificationCenter = NotificationCenter.defaultCenter();
+        notificationCenter.addHandler(handler, notificationName, classifier);
+
+        Future<Void> future = notificationCenter.postNotificationAsync(new Notification(notificationName, classifier, null));
+        future.get(5, TimeUnit.SECONDS);
+
+        assertTrue(deliveredLatch.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), deliveryThread.get());
+
+        notificationCenter.removeHandler(handler);
+    }
+
+    @Test
+    public void testHandlerExecutorIsUsedForDelivery() throws Exception {
+        String notificationName = "executorNotification";
+        String classifier = "classifier";
+
+        final List<Runnable> queuedTasks = new ArrayList<Runnable>();
+        Executor queueingExecutor = new Executor() {
+            public void execute(Runnable command) {
+                queuedTasks.add(command);
+            }
+        };
+
+        TestNotificationHandler executorHandler = new TestNotificationHandler();
+        TestNotificationHandler directHandler = new TestNotificationHandler();
+
+        NotificationCenter notificationCenter = NotificationCenter.defaultCenter();
+        notificationCenter.addHandler(executorHandler, notificationName, classifier, queueingExecutor);
+        notificationCenter.addHandler(directHandler, notificationName, classifier);
+
+        notificationCenter.postNotification(notificationName, classifier, null);
+
+        // The direct handler was called on the posting thread, the executor handler is still waiting on its executor.
+        assertEquals(1, directHandler.receivedNotifications.size());
+        assertEquals(0, executorHandler.receivedNotifications.size());
+        assertEquals(1, queuedTasks.size());
+
+        queuedTasks.get(0).run();
+        assertEquals(1, executorHandler.receivedNotifications.size());
+
+        notificationCenter.removeHandler(executorHandler);
+        notificationCenter.removeHandler(directHandler);
+    }
+
+    @Test
+    public void testTopicIdDelivery() {
+        String notificationName = "topicNotification";
+        String classifier = "classifier";
+        String otherClassifier = "otherClassifier";
+
+        NotificationCenter notificationCenter = NotificationCenter.defaultCenter();
+
+        TopicId topicId = notificationCenter.registerTopic(notificationName, classifier);
+        TopicId otherTopicId = notificationCenter.registerTopic(notificationName, otherClassifier);
+
+        assertSame(topicId, notificationCenter.registerTopic(notificationName, classifier));
+        assertNotEquals(topicId.getId(), otherTopicId.getId());
+
+        TestNotificationHandler tcHandler = new TestNotificationHandler();
+        TestNotificationHandler tHandler = new TestNotificationHandler();
+        TestNotificationHandler ocHandler = new TestNotificationHandler();
+
+        // Handlers registered after the topic was interned must still be found through the topic.
+        notificationCenter.addHandler(tcHandler, notificationName, classifier);
+        notificationCenter.addHandler(tHandler, notificationName, null);
+        notificationCenter.addHandler(ocHandler, null, otherClassifier);
+
+        notificationCenter.postNotification(topicId, null);
+
+        assertEquals(1, tcHandler.receivedNotifications.size());
+        assertEquals(1, tHandler.receivedNotifications.size());
+        assertEquals(0, ocHandler.receivedNotifications.size());
+        assertSame(topicId, tcHandler.receivedNotifications.get(0).getTopicId());
+        assertEquals(classifier, tcHandler.receivedNotifications.get(0).getClassifier());
+
+        notificationCenter.postNotification(otherTopicId, null);
+
+        assertEquals(1, tcHandler.receivedNotifications.size());
+        assertEquals(2, tHandler.receivedNotifications.size());
+        assertEquals(1, ocHandler.receivedNotifications.size());
+
+        // Posting by name and classifier uses the interned topic.
+        notificationCenter.postNotification(notificationName, classifier, null);
+
+        assertEquals(2, tcHandler.receivedNotifications.size());
+        assertSame(topicId, tcHandler.receivedNotifications.get(1).getTopicId());
+
+        notificationCenter.removeHandler(tcHandler);
+        notificationCenter.postNotification(topicId, null);
+
+        assertEquals(2, tcHandler.receivedNotifications.size());
+        assertEquals(4, tHandler.receivedNotifications.size());
+
+        notificationCenter.removeHandler(tHandler);
+        notificationCenter.removeHandler(ocHandler);
+    }
+
+    @Test
+    public void testSteadyStatePooledPostingAllocatesNothing() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        String notificationName = "pooledNotification";
+        String classifier = "classifier";
+        final int[] receivedCount = new int[1];
+        NotificationHandler handler = new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                if (notification.getPayload().getLong("height") == 1L) {
+                    receivedCount[0]++;
+                }
+            }
+        };
+
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        notificationCenter.addHandler(handler, notificationName, classifier);
+        notificationCenter.addHandler(handler, notificationName, null);
+        notificationCenter.addHandler(new TestNotificationHandler(), "unrelatedNotification", null);
+        TopicId topicId = notificationCenter.registerTopic(notificationName, classifier);
+
+        NotificationPayload payload = new NotificationPayload();
+
+        // Warm up, so that the pool is populated and the posting path has been compiled.
+        for (int i = 0; i < 100000; i++) {
+            payload.clear();
+            payload.putLong("height", 1L);
+            notificationCenter.postPooledPayload(notificationName, classifier, payload);
+            notificationCenter.postPooledPayload(topicId, payload);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        int postCount = 100000;
+        long startBytes = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < postCount; i++) {
+            payload.clear();
+            payload.putLong("height", 1L);
+            notificationCenter.postPooledPayload(notificationName, classifier, payload);
+            notificationCenter.postPooledPayload(topicId, payload);
+        }
+        long allocatedBytes = allocationBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+        assertEquals(4 * postCount, receivedCount[0]);
+
+        // Allow for the handful of bytes the measurement itself may allocate, which is far less than a byte per post.
+        assertTrue("Steady state posting allocated " + allocatedBytes + " bytes", allocatedBytes < 1024);
+    }
+
+    @Test
+    public void testRetainedPooledNotificationRemainsValid() {
+        String notificationName = "pooledNotification";
+
+        final List<Notification> retainedNotifications = new ArrayList<Notification>();
+        final List<Notification> unretainedNotifications = new ArrayList<Notification>();
+        NotificationHandler handler = new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                if ("retain".equals(notification.getClassifier())) {
+                    retainedNotifications.add(notification.retain());
+                } else {
+                    unretainedNotifications.add(notification);
+                }
+            }
+        };
+
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        notificationCenter.addHandler(handler, notificationName, null);
+
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("key", "first");
+        notificationCenter.postPooledNotification(notificationName, "retain", info);
+
+        // The poster is free to reuse its map, and later posts reuse pooled notifications.
+        info.put("key", "second");
+        notificationCenter.postPooledNotification(notificationName, "other", info);
+        notificationCenter.postPooledNotification(notificationName, "other", info);
+
+        assertEquals(1, retainedNotifications.size());
+        Notification retained = retainedNotifications.get(0);
+        assertEquals(notificationName, retained.getNotificationName());
+        assertEquals("retain", retained.getClassifier());
+        assertEquals("first", retained.getNotificationInfo().get("key"));
+
+        // Notifications that were not retained were recycled once their callback returned.
+        assertSame(unretainedNotifications.get(0), unretainedNotifications.get(1));
+        assertNotSame(retained, unretainedNotifications.get(0));
+        assertNull(unretainedNotifications.get(0).getNotificationName());
+    }
+
+    @Test
+    public void testBatchPostingDeliversSlicesInOneCall() throws Exception {
+        final List<List<Notification>> batches = new ArrayList<List<Notification>>();
+        BatchNotificationHandler batchHandler = new BatchNotificationHandler() {
+            public void handleNotifications(List<Notification> notifications) {
+                batches.add(new ArrayList<Notification>(notifications));
+            }
+
+            public void handleNotification(Notification notification) {
+                fail("Batched notifications should be delivered in a single call.");
+            }
+        };
+        TestNotificationHandler singleHandler = new TestNotificationHandler();
+
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        notificationCenter.addHandler(batchHandler, "transaction", null);
+        notificationCenter.addHandler(singleHandler, "transaction", "tx1");
+
+        List<Notification> notifications = new ArrayList<Notification>();
+        for (int i = 0; i < 5; i++) {
+            notifications.add(new Notification("transaction", "tx" + (i % 2), null));
+        }
+        notifications.add(new Notification("block", null, null));
+        notificationCenter.postNotifications(notifications);
+
+        // The batch handler receives its whole slice, in posting order, and the ordinary handler is called per match.
+        assertEquals(1, batches.size());
+        assertEquals(notifications.subList(0, 5), batches.get(0));
+        assertEquals(2, singleHandler.receivedNotifications.size());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testBatchPostingPreservesOrderPerHandler() throws Exception {
+        final List<Notification> received = new ArrayList<Notification>();
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                received.add(notification);
+            }
+        }, null, "shared");
+        notificationCenter.addHandler(new TestNotificationHandler(), "first", null);
+
+        List<Notification> notifications = new ArrayList<Notification>();
+        for (int i = 0; i < 6; i++) {
+            notifications.add(new Notification(i % 3 == 0 ? "first" : "second", "shared", null));
+        }
+        notificationCenter.postNotifications(notifications);
+
+        assertEquals(notifications, received);
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testBatchWithNullNotificationIsRejectedWhole() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().sticky(16).build();
+        TestNotificationHandler handler = new TestNotificationHandler();
+        notificationCenter.addHandler(handler, "first", null);
+
+        try {
+            notificationCenter.postNotifications(Arrays.asList(new Notification("first", null, null), null));
+            fail("A batch with a null notification was posted.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        assertTrue(handler.receivedNotifications.isEmpty());
+        assertNull(notificationCenter.getLatestNotification("first", null));
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testCoalescingHandlerReceivesLatestValue() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        Executor queueingExecutor = new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+        TestNotificationHandler handler = new TestNotificationHandler();
+
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        notificationCenter.addHandler(handler, null, "main", queueingExecutor, new HandlerOptions().coalescing(true));
+
+        Map<String, Object> info = new HashMap<String, Object>();
+        for (int height = 1; height <= 100; height++) {
+            info.put("height", height);
+            notificationCenter.postPooledNotification("chainHeightChanged", "main", info);
+        }
+        info.put("peers", 8);
+        notificationCenter.postPooledNotification("peerCountChanged", "main", info);
+
+        // Only one delivery is waiting for each notification name, and it delivers the latest value.
+        assertEquals(2, tasks.size());
+        for (Runnable curTask : tasks) {
+            curTask.run();
+        }
+        assertEquals(2, handler.receivedNotifications.size());
+        assertEquals("chainHeightChanged", handler.receivedNotifications.get(0).getNotificationName());
+        assertEquals(100, handler.receivedNotifications.get(0).getNotificationInfo().get("height"));
+        assertEquals("peerCountChanged", handler.receivedNotifications.get(1).getNotificationName());
+
+        // Once the waiting notification has been delivered, the next post schedules a new delivery.
+        tasks.clear();
+        info.put("height", 101);
+        notificationCenter.postPooledNotification("chainHeightChanged", "main", info);
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals(101, handler.receivedNotifications.get(2).getNotificationInfo().get("height"));
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testCoalescingHandlerOnThreadPoolFinishesOnLatestValue() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        final AtomicInteger inHandler = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final AtomicBoolean outOfOrder = new AtomicBoolean();
+        final AtomicInteger lastHeight = new AtomicInteger();
+        NotificationHandler handler = new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                if (inHandler.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                int height = (Integer) notification.getNotificationInfo().get("height");
+                if (height <= lastHeight.get()) {
+                    outOfOrder.set(true);
+                }
+                Thread.yield();
+                lastHeight.set(height);
+                inHandler.decrementAndGet();
+            }
+        };
+
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        notificationCenter.addHandler(handler, "chainHeightChanged", "main", pool,
+                new HandlerOptions().coalescing(true));
+
+        Map<String, Object> info = new HashMap<String, Object>();
+        for (int height = 1; height <= 20000; height++) {
+            info.put("height", height);
+            notificationCenter.postPooledNotification("chainHeightChanged", "main", info);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lastHeight.get() < 20000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(20000, lastHeight.get());
+        assertFalse("The handler was called concurrently for the same key", overlapped.get());
+        assertFalse("The handler received an older value after a newer one", outOfOrder.get());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testWeakHandlerIsRemovedOnceCollected() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        TestNotificationHandler keptHandler = new TestNotificationHandler();
+        notificationCenter.addHandler(keptHandler, "sessionClosed", null, null, new HandlerOptions().weak(true));
+        TestNotificationHandler discardedHandler = new TestNotificationHandler();
+        notificationCenter.addHandler(discardedHandler, "sessionClosed", null, null, new HandlerOptions().weak(true));
+        WeakReference<TestNotificationHandler> discardedReference =
+                new WeakReference<TestNotificationHandler>(discardedHandler);
+        discardedHandler = null;
+
+        // The registration alone does not keep the handler reachable, and is removed once the handler is collected.
+        long deadline = System.currentTimeMillis() + 10000;
+        while (discardedReference.get() != null ||
+                notificationCenter.getStats().getHandlerStats().size() > 1) {
+            assertTrue("Weak registration was not removed", System.currentTimeMillis() < deadline);
+            System.gc();
+            Thread.sleep(10);
+            notificationCenter.postNotification("sessionClosed", null, null);
+        }
+
+        assertEquals(1, notificationCenter.getStats().getHandlerStats().size());
+        assertSame(keptHandler, notificationCenter.getStats().getHandlerStats().get(0).getHandler());
+        assertFalse(keptHandler.receivedNotifications.isEmpty());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testRemoveHandlerWithCollidingHashCodes() {
+        class CollidingHandler extends TestNotificationHandler {
+            @Override
+            public int hashCode() {
+                return 42;
+            }
+        }
+        CollidingHandler firstHandler = new CollidingHandler();
+        CollidingHandler secondHandler = new CollidingHandler();
+
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        notificationCenter.addHandler(firstHandler, "blockConnected", null);
+        notificationCenter.addHandler(firstHandler, "blockDisconnected", null);
+        notificationCenter.addHandler(secondHandler, "blockConnected", null);
+
+        notificationCenter.removeHandler(firstHandler);
+        notificationCenter.removeHandler(new TestNotificationHandler());
+        notificationCenter.postNotification("blockConnected", null, null);
+        notificationCenter.postNotification("blockDisconnected", null, null);
+
+        assertTrue(firstHandler.receivedNotifications.isEmpty());
+        assertEquals(1, secondHandler.receivedNotifications.size());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testScheduledNotificationsArePostedAfterTheirDelay() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        final List<String> received = new CopyOnWriteArrayList<String>();
+        final CountDownLatch delivered = new CountDownLatch(2);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                received.add(notification.getClassifier());
+                delivered.countDown();
+            }
+        }, "peerTimedOut", null);
+
+        long startMillis = System.currentTimeMillis();
+        ScheduledNotification later = notificationCenter.postNotificationAfter(60, TimeUnit.MILLISECONDS,
+                new Notification("peerTimedOut", "peer-2", null));
+        ScheduledNotification sooner = notificationCenter.postNotificationAt(startMillis + 20,
+                new Notification("peerTimedOut", "peer-1", null));
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - startMillis >= 60);
+        assertEquals(2, received.size());
+        assertEquals("peer-1", received.get(0));
+        assertEquals("peer-2", received.get(1));
+        assertTrue(sooner.isPosted());
+        assertTrue(later.isPosted());
+        assertFalse(later.cancel());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testCancelledScheduledNotificationIsNotPosted() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        TestNotificationHandler handler = new TestNotificationHandler();
+        notificationCenter.addHandler(handler, "peerTimedOut", null);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                delivered.countDown();
+            }
+        }, "pingSent", null);
+
+        ScheduledNotification timeout = notificationCenter.postNotificationAfter(20, TimeUnit.MILLISECONDS,
+                new Notification("peerTimedOut", "peer-1", null));
+        notificationCenter.postNotificationAfter(50, TimeUnit.MILLISECONDS,
+                new Notification("pingSent", "peer-1", null));
+        assertTrue(timeout.cancel());
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.isPosted());
+        assertTrue(handler.receivedNotifications.isEmpty());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testFarFutureScheduledNotificationsAreNotPosted() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        TestNotificationHandler handler = new TestNotificationHandler();
+        notificationCenter.addHandler(handler, "peerTimedOut", null);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                delivered.countDown();
+            }
+        }, "pingSent", null);
+
+        ScheduledNotification afterDelay = notificationCenter.postNotificationAfter(Long.MAX_VALUE, TimeUnit.DAYS,
+                new Notification("peerTimedOut", "peer-1", null));
+        ScheduledNotification atTime = notificationCenter.postNotificationAt(Long.MAX_VALUE,
+                new Notification("peerTimedOut", "peer-2", null));
+        notificationCenter.postNotificationAt(Long.MIN_VALUE, new Notification("pingSent", "peer-1", null));
+
+        // The notification scheduled long in the past is posted on the next tick.
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        assertTrue(handler.receivedNotifications.isEmpty());
+        assertFalse(afterDelay.isPosted());
+        assertFalse(atTime.isPosted());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testScheduleAfterShutdown() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        notificationCenter.shutdown();
+        notificationCenter.postNotificationAfter(1, TimeUnit.SECONDS, new Notification("peerTimedOut", null, null));
+    }
 }
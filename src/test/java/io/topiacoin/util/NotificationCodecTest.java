@@ -0,0 +1,277 @@
+package io.topiacoin.util;
+
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NotificationCodecTest {
+
+    @Test
+    public void testTypedPayloadRoundTrip() {
+        NotificationPayload payload = new NotificationPayload()
+                .putInt("smallInt", 3)
+                .putInt("negativeInt", -70000)
+                .putInt("minInt", Integer.MIN_VALUE)
+                .putLong("maxLong", Long.MAX_VALUE)
+                .putLong("negativeLong", -1L)
+                .putDouble("double", -2.25)
+                .putBoolean("true", true)
+                .putBoolean("false", false)
+                .putBytes("bytes", new byte[]{0, -1, 127})
+                .putBytes("nullBytes", null)
+                .putString("string", "caf\u00e9 \u20ac \ud83d\ude00")
+                .putString("nullString", null)
+                .putObject("nullObject", null);
+
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        NotificationCodec.encode(Notification.withPayload("blockConnected", "main", payload), buffer);
+        buffer.flip();
+        Notification decoded = NotificationCodec.decode(buffer);
+        assertFalse(buffer.hasRemaining());
+
+        assertEquals("blockConnected", decoded.getNotificationName());
+        assertEquals("main", decoded.getClassifier());
+        NotificationPayload decodedPayload = decoded.getPayload();
+        assertEquals(payload.size(), decodedPayload.size());
+        assertEquals(3, decodedPayload.getInt("smallInt"));
+        assertEquals(-70000, decodedPayload.getInt("negativeInt"));
+        assertEquals(Integer.MIN_VALUE, decodedPayload.getInt("minInt"));
+        assertEquals(Long.MAX_VALUE, decodedPayload.getLong("maxLong"));
+        assertEquals(-1L, decodedPayload.getLong("negativeLong"));
+        assertEquals(-2.25, decodedPayload.getDouble("double"), 0.0);
+        assertTrue(decodedPayload.getBoolean("true"));
+        assertFalse(decodedPayload.getBoolean("false"));
+        assertArrayEquals(new byte[]{0, -1, 127}, decodedPayload.getBytes("bytes"));
+        assertNull(decodedPayload.getBytes("nullBytes"));
+        assertEquals("caf\u00e9 \u20ac \ud83d\ude00", decodedPayload.getString("string"));
+        assertNull(decodedPayload.getString("nullString"));
+        assertNull(decodedPayload.getObject("nullObject"));
+    }
+
+    @Test
+    public void testObjectValuesAreRejected() {
+        NotificationPayload payload = new NotificationPayload()
+                .putInt("height", 12)
+                .putObject("list", new ArrayList<Integer>(Arrays.asList(1, 2)));
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        try {
+            NotificationCodec.encode(Notification.withPayload("blockConnected", "main", payload), buffer);
+            fail("An object value was encoded.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        assertEquals(0, buffer.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSerializedObjectTypeIsNotDecoded() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        NotificationCodec.putVarInt(buffer, 1);
+        NotificationCodec.putVarInt(buffer, 1);
+        NotificationCodec.putString(buffer, "x");
+        buffer.put(NotificationPayload.TYPE_OBJECT);
+        NotificationCodec.putVarInt(buffer, 0);
+        buffer.flip();
+
+        NotificationCodec.decodePayload(buffer);
+    }
+
+    @Test
+    public void testMalformedNotificationsAreRejected() {
+        // A truncated variable length integer.
+        assertMalformed(new byte[]{(byte) 0x81});
+        // A name tag larger than the largest int, which would otherwise be read as negative.
+        assertMalformed(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f});
+        // A name length running past the end of the buffer.
+        assertMalformed(new byte[]{1, 5, 'a', 'b'});
+        // A payload length running past the end of the buffer.
+        assertMalformed(new byte[]{1, 1, 'a', 0, 10, 1});
+        // An empty buffer.
+        assertMalformed(new byte[0]);
+    }
+
+    @Test
+    public void testStringLengthIsCheckedAgainstTheLimitOfAHeapBuffer() {
+        // The backing array holds the whole string, but the buffer's limit cuts it short.
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 4, 'n', 'a', 'm', 'e', 0, 0});
+        buffer.limit(4);
+        try {
+            NotificationCodec.decode(buffer);
+            fail("A name past the buffer's limit was decoded.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testMalformedPayloadsAreRejected() {
+        // An entry count of 600,000,000 that cannot fit in the payload.
+        assertMalformedPayload(new byte[]{(byte) 0x80, (byte) 0x8c, (byte) 0x8d, (byte) 0x9e, 0x02});
+        // An entry count larger than the largest int.
+        assertMalformedPayload(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f});
+        // A key length past the end of the payload.
+        assertMalformedPayload(new byte[]{1, 9, 'k', NotificationPayload.TYPE_BOOLEAN, 1});
+        // A double cut short.
+        assertMalformedPayload(new byte[]{1, 1, 'k', NotificationPayload.TYPE_DOUBLE, 0, 0, 0});
+        // A byte array length larger than the largest int.
+        assertMalformedPayload(new byte[]{1, 1, 'k', NotificationPayload.TYPE_BYTES,
+                (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x08});
+        // A string length past the end of the payload.
+        assertMalformedPayload(new byte[]{1, 1, 'k', NotificationPayload.TYPE_STRING, 20, 'v'});
+        // A second entry without its type.
+        assertMalformedPayload(new byte[]{2, 1, 'a', NotificationPayload.TYPE_BOOLEAN, 1, 1, 'b'});
+    }
+
+    @Test
+    public void testMapAndEmptyNotificationsRoundTrip() {
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("height", 12);
+        info.put("peer", "10.0.0.1");
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        NotificationCodec.encode(new Notification("mapped", null, info), buffer);
+        NotificationCodec.encode(new Notification("empty", null, null), buffer);
+        NotificationCodec.encode(Notification.withPayload("emptyPayload", null, new NotificationPayload()), buffer);
+        buffer.flip();
+
+        Notification mapped = NotificationCodec.decode(buffer);
+        assertNull(mapped.getClassifier());
+        assertEquals(info, mapped.getNotificationInfo());
+
+        Notification empty = NotificationCodec.decode(buffer);
+        assertEquals("empty", empty.getNotificationName());
+        assertNull(empty.getNotificationInfo());
+
+        Notification emptyPayload = NotificationCodec.decode(buffer);
+        assertNotNull(emptyPayload.getNotificationInfo());
+        assertTrue(emptyPayload.getNotificationInfo().isEmpty());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testCompactEncoding() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        NotificationCodec.encode(Notification.withPayload("tx", null, new NotificationPayload().putInt("n", 1)), buffer);
+
+        // Name tag, length and bytes; classifier tag; payload length; entry count; key length and byte; type; value.
+        assertEquals(1 + 1 + 2 + 1 + 1 + 1 + 2 + 1 + 1, buffer.position());
+    }
+
+    @Test
+    public void testDictionariesInternRepeatedNamesAndClassifiers() {
+        NotificationCodec.Encoder encoder = new NotificationCodec.Encoder();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        encoder.encode(new Notification("transactionConfirmed", "wallet-1", null), buffer);
+        int firstSize = buffer.position();
+        encoder.encode(new Notification("transactionConfirmed", "wallet-1", null), buffer);
+        int secondSize = buffer.position() - firstSize;
+        encoder.encode(new Notification("transactionConfirmed", "wallet-2", null), buffer);
+        assertEquals(3, secondSize);
+        buffer.flip();
+
+        NotificationCodec.Decoder decoder = new NotificationCodec.Decoder();
+        Notification first = decoder.decode(buffer);
+        Notification second = decoder.decode(buffer);
+        Notification third = decoder.decode(buffer);
+        assertEquals("transactionConfirmed", second.getNotificationName());
+        assertSame(first.getNotificationName(), second.getNotificationName());
+        assertEquals("wallet-1", second.getClassifier());
+        assertEquals("wallet-2", third.getClassifier());
+    }
+
+    @Test
+    public void testDecoderRejectsDefinitionsBeyondItsDictionarySize() {
+        NotificationCodec.Encoder encoder = new NotificationCodec.Encoder(3);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        for (int i = 0; i < 3; i++) {
+            encoder.encode(new Notification("name-" + i, null, null), buffer);
+        }
+        buffer.flip();
+
+        NotificationCodec.Decoder decoder = new NotificationCodec.Decoder(2);
+        decoder.decode(buffer);
+        decoder.decode(buffer);
+        try {
+            decoder.decode(buffer);
+            fail("A definition beyond the dictionary size was accepted.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testFullDictionaryFallsBackToLiterals() {
+        NotificationCodec.Encoder encoder = new NotificationCodec.Encoder(1);
+        NotificationCodec.Decoder decoder = new NotificationCodec.Decoder();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        for (int i = 0; i < 3; i++) {
+            encoder.encode(new Notification("first", null, null), buffer);
+            encoder.encode(new Notification("second", null, null), buffer);
+        }
+        buffer.flip();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("first", decoder.decode(buffer).getNotificationName());
+            assertEquals("second", decoder.decode(buffer).getNotificationName());
+        }
+    }
+
+    @Test
+    public void testPayloadIsDecodedLazily() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        NotificationCodec.encode(Notification.withPayload("lazy", null, new NotificationPayload().putInt("n", 1)), buffer);
+        buffer.flip();
+
+        // Corrupt the type of the payload's only entry.  The name still decodes, and only reading the payload fails.
+        buffer.put(buffer.limit() - 2, (byte) 99);
+        Notification decoded = NotificationCodec.decode(buffer);
+        assertEquals("lazy", decoded.getNotificationName());
+        try {
+            decoded.getPayload();
+            fail("Decoding the corrupt payload should fail.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testOverflowLeavesBufferUnchanged() {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.put((byte) 1);
+        try {
+            NotificationCodec.encode(new Notification("notificationWithALongName", null, null), buffer);
+            fail("Encoding should overflow the buffer.");
+        } catch (BufferOverflowException e) {
+            assertEquals(1, buffer.position());
+        }
+    }
+
+    // -------- Helpers --------
+
+    private void assertMalformed(byte[] encoded) {
+        try {
+            NotificationCodec.decode(ByteBuffer.wrap(encoded));
+            fail("A malformed notification was decoded.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    private void assertMalformedPayload(byte[] encoded) {
+        try {
+            NotificationCodec.decodePayload(ByteBuffer.wrap(encoded));
+            fail("A malformed payload was decoded.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package io.topiacoin.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NotificationJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAppendAndReplayRoundTrip() throws Exception {
+        NotificationJournal journal = new NotificationJournal.Builder(temporaryFolder.getRoot()).open();
+
+        NotificationPayload payload = new NotificationPayload()
+                .putInt("height", 500123)
+                .putLong("timestamp", 1234567890123L)
+                .putDouble("difficulty", 1.5)
+                .putBoolean("orphan", true)
+                .putBytes("hash", new byte[]{1, 2, 3})
+                .putString("miner", "alice")
+                .putObject("missing", null);
+        long firstOffset = journal.append(Notification.withPayload("blockConnected", "main", payload));
+
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("amount", 42L);
+        long secondOffset = journal.append(new Notification("walletUpdated", null, info));
+
+        List<JournalRecord> records = replayAll(journal, 0);
+        assertEquals(2, records.size());
+
+        JournalRecord first = records.get(0);
+        assertEquals(firstOffset, first.getOffset());
+        assertEquals(secondOffset, first.getNextOffset());
+        assertEquals("blockConnected", first.getNotificationName());
+        assertEquals("main", first.getClassifier());
+        NotificationPayload replayed = first.getPayload();
+        assertEquals(500123, replayed.getInt("height"));
+        assertEquals(1234567890123L, replayed.getLong("timestamp"));
+        assertEquals(1.5, replayed.getDouble("difficulty"), 0.0);
+        assertTrue(replayed.getBoolean("orphan"));
+        assertArrayEquals(new byte[]{1, 2, 3}, replayed.getBytes("hash"));
+        assertEquals("alice", replayed.getString("miner"));
+        assertTrue(replayed.containsKey("missing"));
+        assertNull(replayed.getObject("missing"));
+        assertSame(replayed, first.getPayload());
+
+        JournalRecord second = records.get(1);
+        assertEquals("walletUpdated", second.getNotificationName());
+        assertNull(second.getClassifier());
+        assertEquals(42L, second.toNotification().getNotificationInfo().get("amount"));
+
+        // Replaying from a record's offset starts with that record.
+        List<JournalRecord> fromSecond = replayAll(journal, secondOffset);
+        assertEquals(1, fromSecond.size());
+        assertEquals("walletUpdated", fromSecond.get(0).getNotificationName());
+
+        journal.close();
+    }
+
+    @Test
+    public void testSegmentsRollOver() throws Exception {
+        NotificationJournal journal = new NotificationJournal.Builder(temporaryFolder.getRoot())
+                .segmentSize(512)
+                .open();
+
+        for (int i = 0; i < 100; i++) {
+            journal.append(Notification.withPayload("sequenced", null, new NotificationPayload().putInt("sequence", i)));
+        }
+
+        assertTrue(temporaryFolder.getRoot().listFiles().length > 1);
+        List<JournalRecord> records = replayAll(journal, 0);
+        assertEquals(100, records.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, records.get(i).getPayload().getInt("sequence"));
+        }
+
+        journal.close();
+    }
+
+    @Test
+    public void testReopenedJournalContinuesAtEnd() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        NotificationJournal journal = new NotificationJournal.Builder(directory).segmentSize(4096).open();
+        for (int i = 0; i < 10; i++) {
+            journal.append(new Notification("beforeRestart", null, null));
+        }
+        long endOffset = journal.getEndOffset();
+        journal.close();
+
+        NotificationJournal reopened = new NotificationJournal.Builder(directory).segmentSize(4096).open();
+        assertEquals(endOffset, reopened.getEndOffset());
+        reopened.append(new Notification("afterRestart", null, null));
+
+        List<JournalRecord> records = replayAll(reopened, 0);
+        assertEquals(11, records.size());
+        assertEquals("afterRestart", records.get(10).getNotificationName());
+
+        reopened.close();
+    }
+
+    @Test
+    public void testTornRecordIsIgnoredOnReopen() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        NotificationJournal journal = new NotificationJournal.Builder(directory).segmentSize(4096).open();
+        journal.append(new Notification("complete", null, null));
+        long tornOffset = journal.append(new Notification("torn", null, null));
+        journal.close();
+
+        // Corrupt the last byte of the second record, as if the machine crashed while it was being written.
+        RandomAccessFile segmentFile = new RandomAccessFile(directory.listFiles()[0], "rw");
+        segmentFile.seek(tornOffset + JournalSegment.RECORD_HEADER_SIZE + 2);
+        segmentFile.write(0x7f);
+        segmentFile.close();
+
+        NotificationJournal reopened = new NotificationJournal.Builder(directory).segmentSize(4096).open();
+        assertEquals(tornOffset, reopened.getEndOffset());
+        List<JournalRecord> records = replayAll(reopened, 0);
+        assertEquals(1, records.size());
+        assertEquals("complete", records.get(0).getNotificationName());
+
+        reopened.close();
+    }
+
+    @Test
+    public void testSyncWritesFromManyThreads() throws Exception {
+        final NotificationJournal journal = new NotificationJournal.Builder(temporaryFolder.getRoot())
+                .segmentSize(16 * 1024)
+                .syncWrites(true)
+                .open();
+
+        final int threadCount = 4;
+        final int appendsPerThread = 200;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            final int threadID = t;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    NotificationPayload payload = new NotificationPayload();
+                    for (int i = 0; i < appendsPerThread; i++) {
+                        payload.clear();
+                        payload.putInt("thread", threadID).putInt("sequence", i);
+                        journal.append(Notification.withPayload("concurrent", null, payload.copy()));
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread curThread : threads) {
+            curThread.join();
+        }
+
+        int[] nextSequence = new int[threadCount];
+        for (JournalRecord curRecord : replayAll(journal, 0)) {
+            int threadID = curRecord.getPayload().getInt("thread");
+            assertEquals(nextSequence[threadID]++, curRecord.getPayload().getInt("sequence"));
+        }
+        for (int t = 0; t < threadCount; t++) {
+            assertEquals(appendsPerThread, nextSequence[t]);
+        }
+
+        journal.close();
+    }
+
+    @Test
+    public void testCenterJournalsPostedNotifications() throws Exception {
+        NotificationJournal journal = new NotificationJournal.Builder(temporaryFolder.getRoot()).open();
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().journal(journal).build();
+
+        notificationCenter.postNotification("first", "classifier", null);
+        notificationCenter.postPooledPayload("second", null, new NotificationPayload().putInt("value", 7));
+
+        List<JournalRecord> records = replayAll(journal, 0);
+        assertEquals(2, records.size());
+        assertEquals("first", records.get(0).getNotificationName());
+        assertEquals("classifier", records.get(0).getClassifier());
+        assertEquals(7, records.get(1).getPayload().getInt("value"));
+
+        notificationCenter.shutdown();
+        journal.close();
+    }
+
+    @Test
+    public void testCenterDispatchesNotificationsTheJournalCannotRecord() throws Exception {
+        NotificationJournal journal = new NotificationJournal.Builder(temporaryFolder.getRoot()).open();
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().journal(journal).build();
+        final List<Notification> received = new ArrayList<Notification>();
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                received.add(notification.retain());
+            }
+        }, "update", null);
+
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("ratio", 0.5f);
+        notificationCenter.postNotification("update", "first", null);
+        notificationCenter.postNotification("update", "second", info);
+        notificationCenter.postNotifications(Arrays.asList(
+                new Notification("update", "third", info),
+                new Notification("update", "fourth", null)));
+
+        assertEquals(4, received.size());
+        assertEquals(0.5f, received.get(1).getNotificationInfo().get("ratio"));
+        assertEquals(2, notificationCenter.getStats().getUnjournaledCount());
+        List<JournalRecord> records = replayAll(journal, 0);
+        assertEquals(2, records.size());
+        assertEquals("first", records.get(0).getClassifier());
+        assertEquals("fourth", records.get(1).getClassifier());
+
+        notificationCenter.shutdown();
+        journal.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppendAfterCloseIsRejected() throws Exception {
+        NotificationJournal journal = new NotificationJournal.Builder(temporaryFolder.getRoot()).open();
+        journal.close();
+        journal.append(new Notification("late", null, null));
+    }
+
+    // -------- Helper Methods --------
+
+    private List<JournalRecord> replayAll(NotificationJournal journal, long fromOffset) {
+        final List<JournalRecord> records = new ArrayList<JournalRecord>();
+        journal.replay(fromOffset, new JournalReplayHandler() {
+            public void handleRecord(JournalRecord record) {
+                records.add(record);
+            }
+        });
+        return records;
+    }
+}
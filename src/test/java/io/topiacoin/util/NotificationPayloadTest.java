@@ -0,0 +1,143 @@
+package io.topiacoin.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NotificationPayloadTest {
+
+    @Test
+    public void testTypedValuesRoundTrip() {
+        byte[] hash = new byte[]{1, 2, 3, 4};
+        NotificationPayload payload = new NotificationPayload()
+                .putInt("confirmations", 6)
+                .putLong("height", 512345L)
+                .putDouble("fee", 0.0001)
+                .putBoolean("orphaned", false)
+                .putBytes("hash", hash)
+                .putString("chain", "main")
+                .putObject("peer", Integer.valueOf(7));
+
+        assertEquals(7, payload.size());
+        assertEquals(6, payload.getInt("confirmations"));
+        assertEquals(6L, payload.getLong("confirmations"));
+        assertEquals(512345L, payload.getLong("height"));
+        assertEquals(0.0001, payload.getDouble("fee"), 0.0);
+        assertFalse(payload.getBoolean("orphaned"));
+        assertSame(hash, payload.getBytes("hash"));
+        assertEquals("main", payload.getString("chain"));
+        assertEquals(7, payload.getObject("peer"));
+
+        assertEquals(-1L, payload.getLong("missing", -1L));
+        assertNull(payload.getString("missing"));
+        assertFalse(payload.containsKey("missing"));
+    }
+
+    @Test
+    public void testPutReplacesExistingValue() {
+        NotificationPayload payload = new NotificationPayload();
+        payload.putLong("height", 1L);
+        payload.putString("height", "one");
+
+        assertEquals(1, payload.size());
+        assertEquals("one", payload.getString("height"));
+        assertEquals(-1L, payload.getLong("height", -1L));
+    }
+
+    @Test
+    public void testPayloadGrows() {
+        NotificationPayload payload = new NotificationPayload(1);
+        for (int i = 0; i < 1000; i++) {
+            payload.putLong("key" + i, i);
+        }
+
+        assertEquals(1000, payload.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, payload.getLong("key" + i));
+        }
+    }
+
+    @Test
+    public void testExpectedSizeIsValidated() {
+        try {
+            new NotificationPayload(-1);
+            fail("A negative size was accepted.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            // Doubling this size overflows an int, which would otherwise never finish sizing the table.
+            new NotificationPayload(NotificationPayload.MAX_SIZE + 1);
+            fail("A size larger than a payload can hold was accepted.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        assertEquals(8, new NotificationPayload(0).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongTypeIsRejected() {
+        new NotificationPayload().putString("height", "one").getLong("height");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPostedPayloadIsReadOnly() {
+        NotificationPayload payload = new NotificationPayload().putLong("height", 1L);
+        Notification.withPayload("newBlock", null, payload);
+
+        payload.putLong("height", 2L);
+    }
+
+    @Test
+    public void testMapViewMatchesEquivalentMap() {
+        Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("confirmations", 6);
+        expected.put("height", 512345L);
+        expected.put("orphaned", Boolean.TRUE);
+        expected.put("chain", "main");
+
+        NotificationPayload payload = new NotificationPayload()
+                .putInt("confirmations", 6)
+                .putLong("height", 512345L)
+                .putBoolean("orphaned", true)
+                .putString("chain", "main");
+
+        assertEquals(expected, payload.asMap());
+        assertEquals(payload.asMap(), expected);
+        assertEquals(expected, NotificationPayload.fromMap(expected).asMap());
+    }
+
+    @Test
+    public void testNotificationDerivesMapFromPayload() {
+        NotificationPayload payload = new NotificationPayload().putLong("height", 42L);
+        Notification notification = Notification.withPayload("newBlock", "main", payload);
+
+        assertSame(payload, notification.getPayload());
+        assertEquals(42L, notification.getNotificationInfo().get("height"));
+    }
+
+    @Test
+    public void testNotificationDerivesPayloadFromMap() {
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("height", 42L);
+        Notification notification = new Notification("newBlock", "main", info);
+
+        assertEquals(42L, notification.getPayload().getLong("height"));
+        assertTrue(new Notification("newBlock", "main", (Map<String, Object>) null).getPayload().isEmpty());
+    }
+
+    @Test
+    public void testClearAllowsReuse() {
+        NotificationPayload payload = new NotificationPayload();
+        payload.putLong("height", 1L);
+        payload.clear();
+        payload.putLong("amount", 2L);
+
+        assertEquals(1, payload.size());
+        assertFalse(payload.containsKey("height"));
+        assertEquals(2L, payload.getLong("amount"));
+    }
+}
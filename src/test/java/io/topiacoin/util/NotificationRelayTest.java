@@ -0,0 +1,334 @@
+package io.topiacoin.util;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NotificationRelayTest {
+
+    private NotificationCenter serverCenter;
+    private NotificationCenter clientCenter;
+    private NotificationRelay serverRelay;
+    private NotificationRelay clientRelay;
+
+    @Before
+    public void setUp() {
+        serverCenter = new NotificationCenter.Builder().build();
+        clientCenter = new NotificationCenter.Builder().build();
+    }
+
+    @After
+    public void tearDown() {
+        if (clientRelay != null) {
+            clientRelay.close();
+        }
+        if (serverRelay != null) {
+            serverRelay.close();
+        }
+    }
+
+    @Test
+    public void testSubscriptionsUseHandlerSemantics() throws Exception {
+        openRelays(0);
+        clientRelay.subscribe("wallet.updated", "account-1");
+        clientRelay.subscribe("chain.#", null);
+        connect(2);
+
+        RecordingHandler walletHandler = new RecordingHandler();
+        clientCenter.addHandler(walletHandler, "wallet.updated", null);
+        RecordingHandler chainHandler = new RecordingHandler();
+        clientCenter.addHandler(chainHandler, "chain.#", null);
+
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("balance", 1250L);
+        serverCenter.postNotification("wallet.updated", "account-2", info);
+        serverCenter.postNotification("wallet.updated", "account-1", info);
+        serverCenter.postNotification("peer.connected", null, null);
+        serverCenter.postNotification("chain.block.connected", "main", null);
+
+        chainHandler.await(1);
+        walletHandler.await(1);
+        assertEquals("account-1", walletHandler.notifications.get(0).getClassifier());
+        assertEquals(1250L, walletHandler.notifications.get(0).getNotificationInfo().get("balance"));
+        assertEquals("chain.block.connected", chainHandler.notifications.get(0).getNotificationName());
+        assertEquals(2, serverRelay.getForwardedCount());
+        assertEquals(2, clientRelay.getReceivedCount());
+    }
+
+    @Test
+    public void testBatchesNotificationsWithinFlushWindow() throws Exception {
+        openRelays(TimeUnit.MILLISECONDS.toNanos(50));
+        clientRelay.subscribe("block.connected", null);
+        connect(1);
+
+        RecordingHandler handler = new RecordingHandler();
+        clientCenter.addHandler(handler, "block.connected", null);
+
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> info = new HashMap<String, Object>();
+            info.put("height", i);
+            serverCenter.postNotification("block.connected", "main", info);
+        }
+        handler.await(100);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, handler.notifications.get(i).getNotificationInfo().get("height"));
+        }
+        assertTrue("Expected batched frames, but sent " + serverRelay.getFrameCount(),
+                serverRelay.getFrameCount() < 10);
+    }
+
+    @Test
+    public void testReceivedNotificationsAreNotSentBack() throws Exception {
+        openRelays(0);
+        clientRelay.subscribe("peer.#", null);
+        serverRelay.subscribe("peer.#", null);
+        connect(1);
+        awaitRemoteSubscriptions(clientRelay, 1);
+
+        RecordingHandler serverHandler = new RecordingHandler();
+        serverCenter.addHandler(serverHandler, "peer.#", null);
+        RecordingHandler clientHandler = new RecordingHandler();
+        clientCenter.addHandler(clientHandler, "peer.#", null);
+
+        serverCenter.postNotification("peer.connected", null, null);
+        clientHandler.await(1);
+        Thread.sleep(50);
+
+        assertEquals(1, serverHandler.notifications.size());
+        assertEquals(1, serverRelay.getForwardedCount());
+        assertEquals(0, clientRelay.getForwardedCount());
+    }
+
+    @Test
+    public void testClosedPeerSubscriptionsAreRemoved() throws Exception {
+        openRelays(0);
+        clientRelay.subscribe("block.connected", null);
+        connect(1);
+
+        clientRelay.close();
+        clientRelay = null;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (serverRelay.getPeerCount() > 0 || serverRelay.getRemoteSubscriptionCount() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+
+        serverCenter.postNotification("block.connected", "main", null);
+        assertEquals(0, serverRelay.getForwardedCount());
+    }
+
+    @Test
+    public void testOnlyAllowedSubscriptionsAreRegistered() throws Exception {
+        serverRelay = new NotificationRelay.Builder(serverCenter)
+                .listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .allowSubscription("wallet.updated", null)
+                .open();
+        clientRelay = new NotificationRelay.Builder(clientCenter).open();
+        clientRelay.subscribe("wallet.updated", "account-1");
+        clientRelay.subscribe(null, null);
+        clientRelay.subscribe("wallet.#", null);
+        connect(1);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (serverRelay.getRejectedSubscriptionCount() < 2) {
+            assertTrue("Timed out waiting for rejected subscriptions", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        RecordingHandler handler = new RecordingHandler();
+        clientCenter.addHandler(handler, "wallet.updated", null);
+
+        serverCenter.postNotification("peer.connected", null, null);
+        serverCenter.postNotification("wallet.updated", "account-2", null);
+        serverCenter.postNotification("wallet.updated", "account-1", null);
+        handler.await(1);
+        Thread.sleep(50);
+
+        assertEquals(1, handler.notifications.size());
+        assertEquals("account-1", handler.notifications.get(0).getClassifier());
+        assertEquals(1, serverRelay.getForwardedCount());
+        assertEquals(1, serverRelay.getRemoteSubscriptionCount());
+    }
+
+    @Test
+    public void testStalledPeerIsBoundedAndDoesNotSpin() throws Exception {
+        serverRelay = new NotificationRelay.Builder(serverCenter)
+                .listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .allowSubscription(null, null)
+                .maxQueueSize(16)
+                .open();
+
+        // A peer that subscribes and then never reads.
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverRelay.getLocalAddress().getPort());
+        try {
+            socket.setReceiveBufferSize(4096);
+            sendSubscription(socket, "block.connected");
+            awaitRemoteSubscriptions(serverRelay, 1);
+
+            NotificationPayload payload = new NotificationPayload().putBytes("block", new byte[32 * 1024]);
+            for (int i = 0; i < 1000; i++) {
+                serverCenter.postNotification(Notification.withPayload("block.connected", "main", payload));
+            }
+            assertTrue(serverRelay.getDroppedCount() > 0);
+            assertTrue(serverRelay.getForwardedCount() + serverRelay.getDroppedCount() <= 1000);
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            Assume.assumeTrue(threads.isThreadCpuTimeSupported());
+            long selectorThreadID = selectorThreadID();
+            long startCpuNanos = threads.getThreadCpuTime(selectorThreadID);
+            Thread.sleep(200);
+            long usedCpuNanos = threads.getThreadCpuTime(selectorThreadID) - startCpuNanos;
+
+            // While the peer's socket is full, the selector thread should wait for it rather than poll it.
+            assertTrue("The selector thread used " + usedCpuNanos + " ns of CPU while idle",
+                    usedCpuNanos < TimeUnit.MILLISECONDS.toNanos(100));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testOversizedFrameDisconnectsPeer() throws Exception {
+        serverRelay = new NotificationRelay.Builder(serverCenter)
+                .listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .maxFrameSize(1024)
+                .open();
+
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverRelay.getLocalAddress().getPort());
+        try {
+            awaitPeerCount(serverRelay, 1);
+
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(2048);
+            out.writeByte(2);
+            out.flush();
+
+            awaitPeerCount(serverRelay, 0);
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testMalformedFramesDisconnectOnlyTheirPeer() throws Exception {
+        openRelays(0);
+        clientRelay.subscribe("block.connected", null);
+        connect(1);
+
+        // A notifications frame whose body is cut short after the name's tag.
+        Socket truncated = new Socket(InetAddress.getLoopbackAddress(), serverRelay.getLocalAddress().getPort());
+        try {
+            awaitPeerCount(serverRelay, 2);
+            DataOutputStream out = new DataOutputStream(truncated.getOutputStream());
+            out.writeInt(2);
+            out.writeByte(2);
+            out.writeByte(1);
+            out.flush();
+            awaitPeerCount(serverRelay, 1);
+        } finally {
+            truncated.close();
+        }
+
+        // A subscription frame whose name length is read as a negative int.
+        Socket negative = new Socket(InetAddress.getLoopbackAddress(), serverRelay.getLocalAddress().getPort());
+        try {
+            awaitPeerCount(serverRelay, 2);
+            DataOutputStream out = new DataOutputStream(negative.getOutputStream());
+            out.writeInt(1 + 5 + 1);
+            out.writeByte(1);
+            out.write(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f});
+            out.writeByte(0);
+            out.flush();
+            awaitPeerCount(serverRelay, 1);
+        } finally {
+            negative.close();
+        }
+
+        // The relay still accepts connections, and still relays to the peer that behaved.
+        Socket another = new Socket(InetAddress.getLoopbackAddress(), serverRelay.getLocalAddress().getPort());
+        try {
+            awaitPeerCount(serverRelay, 2);
+        } finally {
+            another.close();
+        }
+        RecordingHandler handler = new RecordingHandler();
+        clientCenter.addHandler(handler, "block.connected", null);
+        serverCenter.postNotification("block.connected", "main", null);
+        handler.await(1);
+    }
+
+    // -------- Helpers --------
+
+    private void openRelays(long flushWindowNanos) throws Exception {
+        serverRelay = new NotificationRelay.Builder(serverCenter)
+                .listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .flushWindow(flushWindowNanos, TimeUnit.NANOSECONDS)
+                .allowSubscription(null, null)
+                .open();
+        clientRelay = new NotificationRelay.Builder(clientCenter)
+                .flushWindow(flushWindowNanos, TimeUnit.NANOSECONDS)
+                .allowSubscription(null, null)
+                .open();
+    }
+
+    /**
+     * Writes a subscription frame for the notification name, with any classifier, as a relay would.
+     */
+    private static void sendSubscription(Socket socket, String notificationName) throws Exception {
+        byte[] name = notificationName.getBytes("UTF-8");
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(1 + 1 + name.length + 1);
+        out.writeByte(1);
+        out.writeByte(name.length + 1);
+        out.write(name);
+        out.writeByte(0);
+        out.flush();
+    }
+
+    private static long selectorThreadID() {
+        for (Thread curThread : Thread.getAllStackTraces().keySet()) {
+            if (curThread.getName().equals("NotificationRelay-selector")) {
+                return curThread.getId();
+            }
+        }
+        throw new AssertionError("No selector thread is running.");
+    }
+
+    /**
+     * Connects the client relay to the server relay, and waits until the server has registered the client's
+     * subscriptions.
+     */
+    private void connect(int subscriptionCount) throws Exception {
+        clientRelay.connect(serverRelay.getLocalAddress());
+        awaitRemoteSubscriptions(serverRelay, subscriptionCount);
+    }
+
+    private static void awaitPeerCount(NotificationRelay relay, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (relay.getPeerCount() != count) {
+            assertTrue("Timed out waiting for " + count + " peers", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitRemoteSubscriptions(NotificationRelay relay, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (relay.getRemoteSubscriptionCount() < count) {
+            assertTrue("Timed out waiting for subscriptions", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package io.topiacoin.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PartitionedDispatchEngineTest {
+
+    @Test
+    public void testDeliveryIsOrderedPerClassifier() throws Exception {
+        final int posterCount = 4;
+        final int classifiersPerPoster = 8;
+        final int postsPerClassifier = 2000;
+        final int totalPosts = posterCount * classifiersPerPoster * postsPerClassifier;
+
+        final NotificationCenter notificationCenter = new NotificationCenter.Builder()
+                .partitioned(4)
+                .build();
+
+        final ConcurrentMap<String, List<Integer>> received = new ConcurrentHashMap<String, List<Integer>>();
+        final CountDownLatch deliveredLatch = new CountDownLatch(totalPosts);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                List<Integer> sequences = received.get(notification.getClassifier());
+                if (sequences == null) {
+                    received.putIfAbsent(notification.getClassifier(), new ArrayList<Integer>());
+                    sequences = received.get(notification.getClassifier());
+                }
+                // Each classifier's list is only touched by the thread currently draining its lane.
+                sequences.add((Integer) notification.getNotificationInfo().get("sequence"));
+                deliveredLatch.countDown();
+            }
+        }, "walletUpdated", null);
+
+        List<Thread> posters = new ArrayList<Thread>();
+        for (int p = 0; p < posterCount; p++) {
+            final int poster = p;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    Map<String, Object> info = new HashMap<String, Object>();
+                    for (int i = 0; i < postsPerClassifier; i++) {
+                        for (int c = 0; c < classifiersPerPoster; c++) {
+                            info.put("sequence", i);
+                            notificationCenter.postPooledNotification("walletUpdated", "wallet-" + poster + "-" + c, info);
+                        }
+                    }
+                }
+            });
+            posters.add(thread);
+            thread.start();
+        }
+        for (Thread curPoster : posters) {
+            curPoster.join();
+        }
+
+        assertTrue(deliveredLatch.await(30, TimeUnit.SECONDS));
+        assertEquals(posterCount * classifiersPerPoster, received.size());
+        for (Map.Entry<String, List<Integer>> curEntry : received.entrySet()) {
+            List<Integer> sequences = curEntry.getValue();
+            assertEquals(postsPerClassifier, sequences.size());
+            for (int i = 0; i < postsPerClassifier; i++) {
+                assertEquals("Out of order delivery for " + curEntry.getKey(), Integer.valueOf(i), sequences.get(i));
+            }
+        }
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testPostReturnsBeforeDelivery() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder()
+                .partitioned(2)
+                .build();
+
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final CountDownLatch deliveredLatch = new CountDownLatch(2);
+        final AtomicReference<Thread> deliveryThread = new AtomicReference<Thread>();
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                deliveryThread.set(Thread.currentThread());
+                try {
+                    releaseLatch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                deliveredLatch.countDown();
+            }
+        }, "blockingNotification", null);
+
+        notificationCenter.postNotification("blockingNotification", "chain", null);
+        notificationCenter.postNotification("blockingNotification", "chain", null);
+        assertEquals(2, deliveredLatch.getCount());
+        assertTrue(notificationCenter.getStats().getEngineQueueDepth() > 0);
+
+        releaseLatch.countDown();
+        assertTrue(deliveredLatch.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), deliveryThread.get());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testShutdownDeliversQueuedNotifications() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder()
+                .partitioned(2)
+                .build();
+
+        final CountDownLatch deliveredLatch = new CountDownLatch(500);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                deliveredLatch.countDown();
+            }
+        }, "queuedNotification", null);
+
+        for (int i = 0; i < 500; i++) {
+            notificationCenter.postNotification("queuedNotification", "classifier" + (i % 3), null);
+        }
+        notificationCenter.shutdown();
+
+        assertTrue(deliveredLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testErrorThrownByHandlerDoesNotStrandLane() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder()
+                .partitioned(1, 4, OverflowPolicy.BLOCK)
+                .build();
+
+        final CountDownLatch deliveredLatch = new CountDownLatch(20);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                deliveredLatch.countDown();
+                throw new AssertionError("Handler failed");
+            }
+        }, "walletUpdated", null);
+
+        // Posting more notifications than the lane holds needs the lane to keep draining.
+        for (int i = 0; i < 20; i++) {
+            notificationCenter.postNotification("walletUpdated", "wallet-1", null);
+        }
+
+        assertTrue(deliveredLatch.await(5, TimeUnit.SECONDS));
+
+        notificationCenter.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLaneCountMustBePositive() {
+        new NotificationCenter.Builder().partitioned(0);
+    }
+
+    @Test
+    public void testDropNewestOverflow() throws Exception {
+        OverflowResult result = overflowLane(OverflowPolicy.DROP_NEWEST, null);
+        assertEquals(Arrays.asList("1", "2", "3"), result.delivered);
+        assertEquals(1, result.overflowCount);
+    }
+
+    @Test
+    public void testDropOldestOverflow() throws Exception {
+        OverflowResult result = overflowLane(OverflowPolicy.DROP_OLDEST, null);
+        assertEquals(Arrays.asList("1", "3", "4"), result.delivered);
+        assertEquals(1, result.overflowCount);
+    }
+
+    @Test
+    public void testCoalesceOverflow() throws Exception {
+        // The fourth notification has the same name as the second, so it takes the second's place in the lane.
+        OverflowResult result = overflowLane(OverflowPolicy.COALESCE, null);
+        assertEquals(Arrays.asList("1", "4", "3"), result.delivered);
+        assertEquals(1, result.overflowCount);
+    }
+
+    @Test
+    public void testBlockOverflow() throws Exception {
+        OverflowResult result = overflowLane(OverflowPolicy.BLOCK, null);
+        assertEquals(Arrays.asList("1", "2", "3", "4"), result.delivered);
+        assertEquals(1, result.overflowCount);
+    }
+
+    @Test
+    public void testFailFastOverflowWithRejectionHandler() throws Exception {
+        final List<Notification> rejected = new ArrayList<Notification>();
+        OverflowResult result = overflowLane(OverflowPolicy.FAIL_FAST, new NotificationRejectionHandler() {
+            public void notificationRejected(Notification notification) {
+                rejected.add(notification);
+            }
+        });
+        assertEquals(Arrays.asList("1", "2", "3"), result.delivered);
+        assertEquals(1, rejected.size());
+        assertEquals("4", rejected.get(0).getNotificationInfo().get("sequence"));
+    }
+
+    @Test
+    public void testFailFastOverflowWithoutRejectionHandler() throws Exception {
+        OverflowResult result = overflowLane(OverflowPolicy.FAIL_FAST, null);
+        assertTrue(result.postFailure instanceof RejectedExecutionException);
+        assertEquals(Arrays.asList("1", "2", "3"), result.delivered);
+    }
+
+    // -------- Helper Methods --------
+
+    private static class OverflowResult {
+        final List<String> delivered = new ArrayList<String>();
+        long overflowCount;
+        Throwable postFailure;
+    }
+
+    /**
+     * Posts four notifications to a single lane with a capacity of two, while the handler is still busy with the first
+     * one, so that the fourth overflows the lane.  The second and fourth notifications share a name.
+     */
+    private OverflowResult overflowLane(OverflowPolicy overflowPolicy, NotificationRejectionHandler rejectionHandler)
+            throws Exception {
+        final NotificationCenter notificationCenter = new NotificationCenter.Builder()
+                .partitioned(1, 2, overflowPolicy)
+                .rejectionHandler(rejectionHandler)
+                .build();
+
+        final OverflowResult result = new OverflowResult();
+        final CountDownLatch startedLatch = new CountDownLatch(1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        NotificationHandler handler = new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                startedLatch.countDown();
+                try {
+                    releaseLatch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (result) {
+                    result.delivered.add((String) notification.getNotificationInfo().get("sequence"));
+                }
+            }
+        };
+        notificationCenter.addHandler(handler, "first", null);
+        notificationCenter.addHandler(handler, "second", null);
+
+        postSequence(notificationCenter, "first", "1");
+        assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+        postSequence(notificationCenter, "second", "2");
+        postSequence(notificationCenter, "first", "3");
+
+        Thread overflowingPoster = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    postSequence(notificationCenter, "second", "4");
+                } catch (RuntimeException e) {
+                    result.postFailure = e;
+                }
+            }
+        });
+        overflowingPoster.start();
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            Thread.sleep(100);
+            assertTrue(overflowingPoster.isAlive());
+        }
+        overflowingPoster.join(100);
+
+        releaseLatch.countDown();
+        overflowingPoster.join(5000);
+        notificationCenter.shutdown();
+        for (int i = 0; i < 500 && notificationCenter.getStats().getEngineQueueDepth() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+
+        result.overflowCount = notificationCenter.getStats().getOverflowCount();
+        return result;
+    }
+
+    private void postSequence(NotificationCenter notificationCenter, String notificationName, String sequence) {
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("sequence", sequence);
+        notificationCenter.postNotification(notificationName, null, info);
+    }
+}
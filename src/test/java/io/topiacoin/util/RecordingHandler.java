@@ -0,0 +1,53 @@
+package io.topiacoin.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * A handler that keeps every notification delivered to it, for tests whose notifications are delivered on another
+ * thread.  {@link #await(int)} waits on the handler's list, which is notified as each notification arrives.
+ */
+class RecordingHandler implements NotificationHandler {
+
+    private static final long AWAIT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    final List<Notification> notifications = Collections.synchronizedList(new ArrayList<Notification>());
+
+    public void handleNotification(Notification notification) {
+        synchronized (notifications) {
+            notifications.add(notification.retain());
+            notifications.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until at least the specified number of notifications have been delivered, failing after five seconds.
+     */
+    void await(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + AWAIT_TIMEOUT_NANOS;
+        synchronized (notifications) {
+            while (notifications.size() < count) {
+                long remaining = deadline - System.nanoTime();
+                assertTrue("Timed out waiting for " + count + " notifications", remaining > 0);
+                TimeUnit.NANOSECONDS.timedWait(notifications, remaining);
+            }
+        }
+    }
+
+    /**
+     * Returns the info value with the specified key of each delivered notification, in the order they were delivered.
+     */
+    List<Object> values(String key) {
+        List<Object> values = new ArrayList<Object>();
+        synchronized (notifications) {
+            for (Notification curNotification : notifications) {
+                values.add(curNotification.getNotificationInfo().get(key));
+            }
+        }
+        return values;
+    }
+}
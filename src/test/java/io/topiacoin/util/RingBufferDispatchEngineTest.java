@@ -0,0 +1,177 @@
+package io.topiacoin.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class RingBufferDispatchEngineTest {
+
+    @Test
+    public void testDeliveryWithBusySpin() throws Exception {
+        // Busy spinning starves the other threads on machines with few cores, so fewer notifications are posted.
+        verifyOrderedDelivery(WaitStrategy.BUSY_SPIN, 500);
+    }
+
+    @Test
+    public void testDeliveryWithYield() throws Exception {
+        verifyOrderedDelivery(WaitStrategy.YIELD, 20000);
+    }
+
+    @Test
+    public void testDeliveryWithPark() throws Exception {
+        verifyOrderedDelivery(WaitStrategy.PARK, 20000);
+    }
+
+    @Test
+    public void testHandlersAreCalledOnConsumerThread() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder()
+                .ringBuffer(8, WaitStrategy.PARK)
+                .build();
+
+        final CountDownLatch deliveredLatch = new CountDownLatch(1);
+        final AtomicReference<Thread> deliveryThread = new AtomicReference<Thread>();
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                deliveryThread.set(Thread.currentThread());
+                deliveredLatch.countDown();
+            }
+        }, "ringNotification", null);
+
+        notificationCenter.postNotification("ringNotification", null, null);
+
+        assertTrue(deliveredLatch.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), deliveryThread.get());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testErrorThrownByHandlerDoesNotStopDelivery() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder()
+                .ringBuffer(4, WaitStrategy.PARK)
+                .build();
+
+        final CountDownLatch deliveredLatch = new CountDownLatch(20);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                deliveredLatch.countDown();
+                throw new AssertionError("Handler failed");
+            }
+        }, "ringNotification", null);
+
+        // Posting more notifications than the ring buffer holds needs the consumer to keep freeing slots.
+        for (int i = 0; i < 20; i++) {
+            notificationCenter.postNotification("ringNotification", null, null);
+        }
+
+        assertTrue(deliveredLatch.await(5, TimeUnit.SECONDS));
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testHandlerCanPostIntoAFullRingBuffer() throws Exception {
+        final NotificationCenter notificationCenter = new NotificationCenter.Builder()
+                .ringBuffer(2, WaitStrategy.PARK)
+                .build();
+
+        final CountDownLatch echoedLatch = new CountDownLatch(100);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                // Each post fills the ring buffer further than the consumer can drain it while it is in this handler.
+                for (int i = 0; i < 4; i++) {
+                    notificationCenter.postNotification("echoNotification", null, null);
+                }
+            }
+        }, "ringNotification", null);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                echoedLatch.countDown();
+            }
+        }, "echoNotification", null);
+
+        for (int i = 0; i < 25; i++) {
+            notificationCenter.postNotification("ringNotification", null, null);
+        }
+
+        assertTrue(echoedLatch.await(5, TimeUnit.SECONDS));
+
+        notificationCenter.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBufferSizeMustBePowerOfTwo() {
+        new NotificationCenter.Builder().ringBuffer(1000, WaitStrategy.YIELD);
+    }
+
+    /**
+     * Posts from several threads through a small ring buffer, so that publishers wrap around the ring many times, and
+     * verifies that every notification arrives, in order for each publisher.
+     */
+    private void verifyOrderedDelivery(WaitStrategy waitStrategy, final int postsPerPoster) throws Exception {
+        final int posterCount = 3;
+        final String notificationName = "ringNotification";
+
+        final NotificationCenter notificationCenter = new NotificationCenter.Builder()
+                .ringBuffer(64, waitStrategy)
+                .build();
+
+        final AtomicInteger failures = new AtomicInteger();
+        final int[] lastSequence = new int[posterCount];
+        final CountDownLatch deliveredLatch = new CountDownLatch(posterCount * postsPerPoster);
+        for (int i = 0; i < posterCount; i++) {
+            lastSequence[i] = -1;
+        }
+
+        // The consumer is a single thread, so the handler does not need to synchronize.
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                int poster = (Integer) notification.getNotificationInfo().get("poster");
+                int sequence = (Integer) notification.getNotificationInfo().get("sequence");
+                if (sequence != lastSequence[poster] + 1) {
+                    failures.incrementAndGet();
+                }
+                lastSequence[poster] = sequence;
+                deliveredLatch.countDown();
+            }
+        }, notificationName, null);
+
+        List<Thread> posters = new ArrayList<Thread>();
+        for (int i = 0; i < posterCount; i++) {
+            final int posterID = i;
+            posters.add(new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < postsPerPoster; j++) {
+                        Map<String, Object> info = new HashMap<String, Object>();
+                        info.put("poster", posterID);
+                        info.put("sequence", j);
+                        notificationCenter.postNotification(notificationName, null, info);
+                    }
+                }
+            }));
+        }
+        for (Thread poster : posters) {
+            poster.start();
+        }
+        for (Thread poster : posters) {
+            poster.join();
+        }
+
+        assertTrue("Not all notifications were delivered", deliveredLatch.await(30, TimeUnit.SECONDS));
+        assertEquals("Notifications were delivered out of order", 0, failures.get());
+        for (int i = 0; i < posterCount; i++) {
+            assertEquals(postsPerPoster - 1, lastSequence[i]);
+        }
+
+        notificationCenter.shutdown();
+    }
+}
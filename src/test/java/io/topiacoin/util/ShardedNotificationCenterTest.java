@@ -0,0 +1,114 @@
+package io.topiacoin.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ShardedNotificationCenterTest {
+
+    private NotificationCenter p2pCenter;
+    private NotificationCenter walletCenter;
+    private NotificationCenter walletKeysCenter;
+    private ShardedNotificationCenter shardedCenter;
+
+    @Before
+    public void setUp() {
+        p2pCenter = new NotificationCenter();
+        walletCenter = new NotificationCenter();
+        walletKeysCenter = new NotificationCenter();
+        shardedCenter = new ShardedNotificationCenter.Builder()
+                .shard("p2p", p2pCenter)
+                .shard("wallet", walletCenter)
+                .shard("wallet.keys", walletKeysCenter)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        shardedCenter.shutdown();
+    }
+
+    @Test
+    public void testNamesAreRoutedByLongestSegmentPrefix() {
+        assertSame(p2pCenter, shardedCenter.getShard("p2p"));
+        assertSame(p2pCenter, shardedCenter.getShard("p2p.peer.connected"));
+        assertSame(walletCenter, shardedCenter.getShard("wallet.balance.updated"));
+        assertSame(walletKeysCenter, shardedCenter.getShard("wallet.keys.rotated"));
+        assertSame(shardedCenter.getDefaultShard(), shardedCenter.getShard("wallets.loaded"));
+        assertSame(shardedCenter.getDefaultShard(), shardedCenter.getShard("chain.tip.updated"));
+    }
+
+    @Test
+    public void testHandlersReceiveNotificationsFromTheirShard() {
+        RecordingHandler peerHandler = new RecordingHandler();
+        shardedCenter.addHandler(peerHandler, "p2p.peer.connected", null);
+        RecordingHandler walletHandler = new RecordingHandler();
+        shardedCenter.addHandler(walletHandler, "wallet.#", null);
+        RecordingHandler everythingHandler = new RecordingHandler();
+        shardedCenter.addHandler(everythingHandler, "#", null);
+
+        shardedCenter.postNotification("p2p.peer.connected", "peer-1", null);
+        shardedCenter.postNotification("wallet.balance.updated", "account-1", null);
+        shardedCenter.postNotification("wallet.keys.rotated", null, null);
+        shardedCenter.postNotification("chain.tip.updated", "main", null);
+
+        assertEquals(1, peerHandler.names.size());
+        assertEquals(2, walletHandler.names.size());
+        assertTrue(walletHandler.names.contains("wallet.keys.rotated"));
+        assertEquals(4, everythingHandler.names.size());
+        assertEquals(1, p2pCenter.getStats().getPostCount());
+        assertEquals(1, walletKeysCenter.getStats().getPostCount());
+    }
+
+    @Test
+    public void testRemoveHandlerRemovesFromEveryShard() {
+        RecordingHandler handler = new RecordingHandler();
+        shardedCenter.addHandler(handler, "#", null);
+        shardedCenter.removeHandler(handler);
+
+        shardedCenter.postNotification("p2p.peer.connected", null, null);
+        shardedCenter.postNotification("chain.tip.updated", null, null);
+
+        assertTrue(handler.names.isEmpty());
+    }
+
+    @Test
+    public void testBatchIsSplitByShardInOrder() {
+        RecordingHandler handler = new RecordingHandler();
+        shardedCenter.addHandler(handler, "#", null);
+
+        List<Notification> notifications = new ArrayList<Notification>();
+        notifications.add(new Notification("p2p.peer.connected", null, null));
+        notifications.add(new Notification("wallet.balance.updated", null, null));
+        notifications.add(new Notification("p2p.peer.disconnected", null, null));
+        shardedCenter.postNotifications(notifications);
+
+        assertEquals(3, handler.names.size());
+        assertTrue(handler.names.indexOf("p2p.peer.connected") < handler.names.indexOf("p2p.peer.disconnected"));
+        assertEquals(2, p2pCenter.getStats().getPostCount());
+    }
+
+    @Test
+    public void testDefaultCenterIsShared() {
+        assertSame(NotificationCenter.defaultCenter(), NotificationCenter.defaultCenter());
+        assertNotSame(NotificationCenter.defaultCenter(), new NotificationCenter());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShardPrefixCannotBeAPattern() {
+        new ShardedNotificationCenter.Builder().shard("p2p.*");
+    }
+
+    private static class RecordingHandler implements NotificationHandler {
+        final List<String> names = new ArrayList<String>();
+
+        public void handleNotification(Notification notification) {
+            names.add(notification.getNotificationName());
+        }
+    }
+}
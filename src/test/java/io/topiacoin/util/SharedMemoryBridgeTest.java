@@ -0,0 +1,194 @@
+package io.topiacoin.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SharedMemoryBridgeTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testForwardsSubscribedNamesOnly() throws Exception {
+        NotificationCenter walletCenter = new NotificationCenter.Builder().build();
+        NotificationCenter chainCenter = new NotificationCenter.Builder().build();
+        SharedMemoryBridge walletBridge = openBridge(walletCenter, "wallet.ring", "chain.ring", "wallet.#");
+        SharedMemoryBridge chainBridge = openBridge(chainCenter, "chain.ring", "wallet.ring", "chain.#");
+
+        RecordingHandler chainHandler = new RecordingHandler();
+        chainCenter.addHandler(chainHandler, "#", null);
+
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("balance", 1250L);
+        walletCenter.postNotification("wallet.balance.updated", "account-1", info);
+        walletCenter.postNotification("internal.cacheCleared", null, null);
+        walletCenter.postNotification("wallet.locked", null, null);
+
+        chainHandler.await(2);
+        Notification received = chainHandler.notifications.get(0);
+        assertEquals("wallet.balance.updated", received.getNotificationName());
+        assertEquals("account-1", received.getClassifier());
+        assertEquals(1250L, received.getNotificationInfo().get("balance"));
+        assertEquals("wallet.locked", chainHandler.notifications.get(1).getNotificationName());
+        assertEquals(2, walletBridge.getForwardedCount());
+        assertEquals(2, chainBridge.getReceivedCount());
+
+        walletBridge.close();
+        chainBridge.close();
+    }
+
+    @Test
+    public void testReceivedNotificationsAreNotForwardedBack() throws Exception {
+        NotificationCenter firstCenter = new NotificationCenter.Builder().build();
+        NotificationCenter secondCenter = new NotificationCenter.Builder().build();
+        SharedMemoryBridge firstBridge = openBridge(firstCenter, "first.ring", "second.ring", "#");
+        SharedMemoryBridge secondBridge = openBridge(secondCenter, "second.ring", "first.ring", "#");
+
+        RecordingHandler firstHandler = new RecordingHandler();
+        firstCenter.addHandler(firstHandler, "peer.connected", null);
+        RecordingHandler secondHandler = new RecordingHandler();
+        secondCenter.addHandler(secondHandler, "peer.connected", null);
+
+        firstCenter.postNotification("peer.connected", null, null);
+        secondHandler.await(1);
+        Thread.sleep(50);
+
+        assertEquals(1, firstHandler.notifications.size());
+        assertEquals(1, firstBridge.getForwardedCount());
+        assertEquals(0, secondBridge.getForwardedCount());
+        assertEquals(0, firstBridge.getReceivedCount());
+
+        firstBridge.close();
+        secondBridge.close();
+    }
+
+    @Test
+    public void testRecordsWrapAroundSmallRing() throws Exception {
+        NotificationCenter sendingCenter = new NotificationCenter.Builder().build();
+        NotificationCenter receivingCenter = new NotificationCenter.Builder().build();
+        SharedMemoryBridge sendingBridge = new SharedMemoryBridge.Builder(sendingCenter,
+                new File(temporaryFolder.getRoot(), "out.ring"),
+                new File(temporaryFolder.getRoot(), "in.ring"))
+                .forward("block.#")
+                .capacity(256)
+                .open();
+        SharedMemoryBridge receivingBridge = openBridge(receivingCenter, "in.ring", "out.ring", "none");
+
+        RecordingHandler handler = new RecordingHandler();
+        receivingCenter.addHandler(handler, "block.connected", null);
+
+        for (int i = 0; i < 200; i++) {
+            Map<String, Object> info = new HashMap<String, Object>();
+            info.put("height", i);
+            sendingCenter.postNotification("block.connected", "main", info);
+            handler.await(i + 1);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, handler.notifications.get(i).getNotificationInfo().get("height"));
+        }
+        assertEquals(0, sendingBridge.getDroppedCount());
+
+        sendingBridge.close();
+        receivingBridge.close();
+    }
+
+    @Test
+    public void testFullRingDropsNotifications() throws Exception {
+        NotificationCenter center = new NotificationCenter.Builder().build();
+        // No bridge reads the outbound ring, so it fills up.
+        SharedMemoryBridge bridge = new SharedMemoryBridge.Builder(center,
+                new File(temporaryFolder.getRoot(), "out.ring"), new File(temporaryFolder.getRoot(), "in.ring"))
+                .forward("#")
+                .capacity(256)
+                .open();
+
+        for (int i = 0; i < 100; i++) {
+            center.postNotification("block.connected", "main", null);
+        }
+
+        assertTrue(bridge.getForwardedCount() > 0);
+        assertTrue(bridge.getDroppedCount() > 0);
+        assertEquals(100, bridge.getForwardedCount() + bridge.getDroppedCount());
+        bridge.close();
+
+        // A bridge opened on the ring later receives the notifications that were left in it.
+        NotificationCenter laterCenter = new NotificationCenter.Builder().build();
+        RecordingHandler handler = new RecordingHandler();
+        laterCenter.addHandler(handler, "block.connected", null);
+        SharedMemoryBridge laterBridge = openBridge(laterCenter, "in.ring", "out.ring", "none");
+        handler.await((int) bridge.getForwardedCount());
+        laterBridge.close();
+    }
+
+    @Test
+    public void testCorruptRecordLengthsAreSkipped() throws Exception {
+        verifyCorruptLengthIsSkipped(-5);
+        verifyCorruptLengthIsSkipped(1 << 20);
+    }
+
+    // -------- Helpers --------
+
+    /**
+     * Writes a record to a ring, overwrites its length with the corrupt length, and verifies that a bridge reading the
+     * ring skips the record, and keeps receiving the notifications written after it.
+     */
+    private void verifyCorruptLengthIsSkipped(int corruptLength) throws Exception {
+        File outbound = temporaryFolder.newFile();
+        File inbound = temporaryFolder.newFile();
+        NotificationCenter sendingCenter = new NotificationCenter.Builder().build();
+        SharedMemoryBridge sendingBridge = new SharedMemoryBridge.Builder(sendingCenter, outbound, inbound)
+                .forward("#")
+                .capacity(256)
+                .open();
+        sendingCenter.postNotification("block.connected", "main", null);
+        sendingBridge.close();
+
+        RandomAccessFile ringFile = new RandomAccessFile(outbound, "rw");
+        try {
+            ringFile.seek(SharedMemoryRing.HEADER_SIZE);
+            ringFile.writeInt(corruptLength);
+        } finally {
+            ringFile.close();
+        }
+
+        NotificationCenter receivingCenter = new NotificationCenter.Builder().build();
+        RecordingHandler handler = new RecordingHandler();
+        receivingCenter.addHandler(handler, "block.connected", null);
+        SharedMemoryBridge receivingBridge = new SharedMemoryBridge.Builder(receivingCenter, inbound, outbound)
+                .forward("none")
+                .open();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (receivingBridge.getCorruptCount() < 1) {
+            assertTrue("The corrupt record was not skipped", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+
+        sendingBridge = new SharedMemoryBridge.Builder(sendingCenter, outbound, inbound)
+                .forward("#")
+                .open();
+        sendingCenter.postNotification("block.connected", "side", null);
+        handler.await(1);
+        assertEquals("side", handler.notifications.get(0).getClassifier());
+        assertEquals(1, receivingBridge.getCorruptCount());
+
+        sendingBridge.close();
+        receivingBridge.close();
+    }
+
+    private SharedMemoryBridge openBridge(NotificationCenter center, String outboundName, String inboundName,
+                                          String forwardedName) throws Exception {
+        return new SharedMemoryBridge.Builder(center,
+                new File(temporaryFolder.getRoot(), outboundName), new File(temporaryFolder.getRoot(), inboundName))
+                .forward(forwardedName)
+                .open();
+    }
+}
@@ -0,0 +1,109 @@
+package io.topiacoin.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class StickyCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedNotificationIsEvicted() throws Exception {
+        StickyCache cache = new StickyCache(2);
+        cache.put(new Notification("syncCompleted", null, null));
+        Thread.sleep(1);
+        cache.put(new Notification("chainTipUpdated", "main", null));
+        Thread.sleep(1);
+
+        // Reading the first notification makes the second the least recently used.
+        assertNotNull(cache.get("syncCompleted", null));
+        Thread.sleep(1);
+        cache.put(new Notification("peerCountChanged", null, null));
+
+        assertNotNull(cache.get("syncCompleted", null));
+        assertNull(cache.get("chainTipUpdated", "main"));
+        assertNotNull(cache.get("peerCountChanged", null));
+    }
+
+    @Test
+    public void testCacheStaysWithinCapacity() {
+        StickyCache cache = new StickyCache(64);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new Notification("chainTipUpdated", "chain-" + i, null));
+        }
+
+        assertTrue(cache.getAll().size() <= 64);
+        assertNotNull(cache.get("chainTipUpdated", "chain-999"));
+    }
+
+    @Test
+    public void testLatestNotificationReplacesEarlierOne() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().sticky(16).build();
+        notificationCenter.postNotification("chainTipUpdated", "main", heightInfo(100));
+        notificationCenter.postPooledNotification("chainTipUpdated", "main", heightInfo(101));
+        notificationCenter.postNotification("chainTipUpdated", "test", heightInfo(7));
+
+        Notification latest = notificationCenter.getLatestNotification("chainTipUpdated", "main");
+        assertEquals(101, latest.getNotificationInfo().get("height"));
+        assertNull(notificationCenter.getLatestNotification("syncCompleted", null));
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testLateHandlerReceivesLatestNotifications() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().sticky(16).build();
+        notificationCenter.postNotification("syncCompleted", null, null);
+        notificationCenter.postNotification("chainTipUpdated", "main", heightInfo(100));
+        notificationCenter.postNotification("chainTipUpdated", "main", heightInfo(101));
+        notificationCenter.postNotification("chainTipUpdated", "test", heightInfo(7));
+
+        RecordingHandler exactHandler = new RecordingHandler();
+        notificationCenter.addHandler(exactHandler, "chainTipUpdated", "main", null,
+                new HandlerOptions().deliverLatest(true));
+        assertEquals(1, exactHandler.notifications.size());
+        assertEquals(101, exactHandler.notifications.get(0).getNotificationInfo().get("height"));
+
+        RecordingHandler nameHandler = new RecordingHandler();
+        notificationCenter.addHandler(nameHandler, "chainTipUpdated", null, null,
+                new HandlerOptions().deliverLatest(true));
+        Set<String> classifiers = new HashSet<String>();
+        for (Notification curNotification : nameHandler.notifications) {
+            classifiers.add(curNotification.getClassifier());
+        }
+        assertEquals(2, nameHandler.notifications.size());
+        assertTrue(classifiers.contains("main") && classifiers.contains("test"));
+
+        RecordingHandler plainHandler = new RecordingHandler();
+        notificationCenter.addHandler(plainHandler, "syncCompleted", null);
+        assertTrue(plainHandler.notifications.isEmpty());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testDeliverLatestIsIgnoredWhenNotSticky() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        notificationCenter.postNotification("syncCompleted", null, null);
+
+        RecordingHandler handler = new RecordingHandler();
+        notificationCenter.addHandler(handler, "syncCompleted", null, null, new HandlerOptions().deliverLatest(true));
+
+        assertTrue(handler.notifications.isEmpty());
+        assertNull(notificationCenter.getLatestNotification("syncCompleted", null));
+
+        notificationCenter.shutdown();
+    }
+
+    // -------- Helpers --------
+
+    private static Map<String, Object> heightInfo(int height) {
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("height", height);
+        return info;
+    }
+}
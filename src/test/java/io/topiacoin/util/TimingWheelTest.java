@@ -0,0 +1,190 @@
+package io.topiacoin.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testTimeoutsExpireOnTheirDeadlineAtEveryLevel() {
+        final TimingWheel wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1));
+        long[] deadlines = {1, 2, 63, 64, 65, 127, 128, 4095, 4096, 4097, 70000, 262143, 262144, 300001};
+        final Map<Long, Long> expiredAt = new HashMap<Long, Long>();
+        for (final long deadline : deadlines) {
+            wheel.scheduleAtTick(deadline, new Runnable() {
+                public void run() {
+                    expiredAt.put(deadline, wheel.getCurrentTick());
+                }
+            });
+        }
+
+        wheel.advanceTo(300001);
+
+        assertEquals(deadlines.length, expiredAt.size());
+        for (long deadline : deadlines) {
+            assertEquals(Long.valueOf(deadline), expiredAt.get(deadline));
+        }
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void testErrorThrownByTaskDoesNotStopExpiry() {
+        TimingWheel wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1));
+        final List<Long> expired = new ArrayList<Long>();
+        wheel.scheduleAtTick(1, new Runnable() {
+            public void run() {
+                throw new AssertionError("Task failed");
+            }
+        });
+        wheel.scheduleAtTick(2, new Runnable() {
+            public void run() {
+                expired.add(2L);
+            }
+        });
+
+        wheel.advanceTo(2);
+
+        assertEquals(Collections.singletonList(2L), expired);
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void testTimeoutsScheduledPartWayThroughARevolution() {
+        final TimingWheel wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1));
+        wheel.advanceTo(4000);
+
+        final List<Long> expiredAt = new ArrayList<Long>();
+        Runnable record = new Runnable() {
+            public void run() {
+                expiredAt.add(wheel.getCurrentTick());
+            }
+        };
+        wheel.scheduleAtTick(4063, record);
+        wheel.scheduleAtTick(4096, record);
+        wheel.scheduleAtTick(8191, record);
+        wheel.scheduleAtTick(3000, record);
+
+        wheel.advanceTo(10000);
+
+        // The deadline that had already passed expires as soon as the timeout is placed.
+        assertEquals(4, expiredAt.size());
+        assertEquals(Long.valueOf(4000), expiredAt.get(0));
+        assertEquals(Long.valueOf(4063), expiredAt.get(1));
+        assertEquals(Long.valueOf(4096), expiredAt.get(2));
+        assertEquals(Long.valueOf(8191), expiredAt.get(3));
+    }
+
+    @Test
+    public void testCancelledTimeoutsDoNotRun() {
+        TimingWheel wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1));
+        final int[] runCount = new int[1];
+        Runnable task = new Runnable() {
+            public void run() {
+                runCount[0]++;
+            }
+        };
+
+        // Cancelled both before and after the timeouts have been placed in the wheel.
+        TimingWheel.Timeout before = wheel.scheduleAtTick(10, task);
+        assertTrue(before.cancel());
+        TimingWheel.Timeout after = wheel.scheduleAtTick(5000, task);
+        TimingWheel.Timeout kept = wheel.scheduleAtTick(6000, task);
+        wheel.advanceTo(5);
+        assertTrue(after.cancel());
+        assertFalse(after.cancel());
+        assertEquals(1, wheel.getPendingCount());
+
+        wheel.advanceTo(7000);
+
+        assertEquals(1, runCount[0]);
+        assertTrue(before.isCancelled());
+        assertTrue(kept.isExpired());
+        assertFalse(kept.cancel());
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void testManyPendingTimeouts() {
+        TimingWheel wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1));
+        final int[] runCount = new int[1];
+        Runnable task = new Runnable() {
+            public void run() {
+                runCount[0]++;
+            }
+        };
+
+        List<TimingWheel.Timeout> timeouts = new ArrayList<TimingWheel.Timeout>();
+        for (int i = 0; i < 500000; i++) {
+            timeouts.add(wheel.scheduleAtTick(1 + (i * 7919L) % 100000, task));
+        }
+        wheel.advanceTo(1);
+        for (int i = 0; i < timeouts.size(); i += 2) {
+            timeouts.get(i).cancel();
+        }
+        assertEquals(250000, wheel.getPendingCount());
+
+        wheel.advanceTo(100000);
+
+        // Every other timeout was cancelled, except the five that had already expired on the first tick.
+        assertEquals(250005, runCount[0]);
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void testFarFutureDelaysDoNotWrapIntoThePast() {
+        TimingWheel wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1));
+        final int[] runCount = new int[1];
+        Runnable task = new Runnable() {
+            public void run() {
+                runCount[0]++;
+            }
+        };
+
+        wheel.schedule(Long.MAX_VALUE, task);
+        wheel.schedule(TimeUnit.DAYS.toNanos(Long.MAX_VALUE), task);
+        wheel.schedule(Long.MAX_VALUE - 1, task);
+        wheel.advanceTo(1000000);
+
+        assertEquals(0, runCount[0]);
+        assertEquals(3, wheel.getPendingCount());
+    }
+
+    @Test
+    public void testTimerThreadRunsTasksAfterTheirDelay() throws Exception {
+        TimingWheel wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1));
+        wheel.start("NotificationCenter-timer");
+        final CountDownLatch expired = new CountDownLatch(1);
+        final long[] expiredNanos = new long[1];
+        long startNanos = System.nanoTime();
+        wheel.schedule(TimeUnit.MILLISECONDS.toNanos(50), new Runnable() {
+            public void run() {
+                expiredNanos[0] = System.nanoTime();
+                expired.countDown();
+            }
+        });
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertTrue(expiredNanos[0] - startNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        wheel.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testScheduleAfterShutdown() {
+        TimingWheel wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1));
+        wheel.shutdown();
+        wheel.schedule(0, new Runnable() {
+            public void run() {
+            }
+        });
+    }
+}
@@ -0,0 +1,125 @@
+package io.topiacoin.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TopicTrieTest {
+
+    private static class TestNotificationHandler implements NotificationHandler {
+
+        List<Notification> receivedNotifications = new ArrayList<Notification>();
+
+        public void handleNotification(Notification notification) {
+            receivedNotifications.add(notification);
+        }
+    }
+
+    @Test
+    public void testPatternDetection() {
+        assertTrue(TopicTrie.isPattern("chain.block.*"));
+        assertTrue(TopicTrie.isPattern("wallet.*.updated"));
+        assertTrue(TopicTrie.isPattern("#"));
+        assertFalse(TopicTrie.isPattern("chain.block"));
+        assertFalse(TopicTrie.isPattern("chain.bl*ck"));
+        assertFalse(TopicTrie.isPattern(null));
+    }
+
+    @Test
+    public void testSingleSegmentWildcard() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        TestNotificationHandler handler = new TestNotificationHandler();
+        notificationCenter.addHandler(handler, "wallet.*.updated", null);
+
+        notificationCenter.postNotification("wallet.account.updated", null, null);
+        notificationCenter.postNotification("wallet.balance.updated", "wallet-1", null);
+        notificationCenter.postNotification("wallet.updated", null, null);
+        notificationCenter.postNotification("wallet.account.key.updated", null, null);
+        notificationCenter.postNotification("wallet.account.created", null, null);
+
+        assertEquals(2, handler.receivedNotifications.size());
+        assertEquals("wallet.account.updated", handler.receivedNotifications.get(0).getNotificationName());
+        assertEquals("wallet.balance.updated", handler.receivedNotifications.get(1).getNotificationName());
+    }
+
+    @Test
+    public void testMultiSegmentWildcard() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        TestNotificationHandler handler = new TestNotificationHandler();
+        notificationCenter.addHandler(handler, "chain.#", null);
+
+        notificationCenter.postNotification("chain", null, null);
+        notificationCenter.postNotification("chain.block", null, null);
+        notificationCenter.postNotification("chain.block.connected", null, null);
+        notificationCenter.postNotification("wallet.block", null, null);
+        notificationCenter.postNotification("chainTip", null, null);
+
+        assertEquals(3, handler.receivedNotifications.size());
+    }
+
+    @Test
+    public void testOverlappingPatternsDeliverOnce() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        TestNotificationHandler handler = new TestNotificationHandler();
+        TestNotificationHandler exactHandler = new TestNotificationHandler();
+        notificationCenter.addHandler(handler, "chain.#", null);
+        notificationCenter.addHandler(handler, "chain.block.*", null);
+        notificationCenter.addHandler(handler, "chain.block.connected", null);
+        notificationCenter.addHandler(handler, "#", "mainChain");
+        notificationCenter.addHandler(exactHandler, "chain.block.connected", "mainChain");
+
+        notificationCenter.postNotification("chain.block.connected", "mainChain", null);
+        notificationCenter.postNotification("chain.block.connected", "mainChain", null);
+
+        assertEquals(2, handler.receivedNotifications.size());
+        assertEquals(2, exactHandler.receivedNotifications.size());
+    }
+
+    @Test
+    public void testPatternWithClassifier() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        TestNotificationHandler handler = new TestNotificationHandler();
+        notificationCenter.addHandler(handler, "wallet.*", "wallet-1");
+
+        notificationCenter.postNotification("wallet.updated", "wallet-1", null);
+        notificationCenter.postNotification("wallet.updated", "wallet-2", null);
+        notificationCenter.postNotification("wallet.updated", null, null);
+
+        assertEquals(1, handler.receivedNotifications.size());
+        assertEquals("wallet-1", handler.receivedNotifications.get(0).getClassifier());
+    }
+
+    @Test
+    public void testRegistrationChangesInvalidateCachedMatches() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        TestNotificationHandler handler = new TestNotificationHandler();
+        TestNotificationHandler laterHandler = new TestNotificationHandler();
+        notificationCenter.addHandler(handler, "chain.block.*", null);
+
+        notificationCenter.postNotification("chain.block.connected", null, null);
+
+        notificationCenter.addHandler(laterHandler, "chain.*.connected", null);
+        notificationCenter.postNotification("chain.block.connected", null, null);
+
+        notificationCenter.removeHandler(handler, "chain.block.*", null);
+        notificationCenter.postNotification("chain.block.connected", null, null);
+
+        assertEquals(2, handler.receivedNotifications.size());
+        assertEquals(2, laterHandler.receivedNotifications.size());
+    }
+
+    @Test
+    public void testTopicIdResolvesPatterns() {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().build();
+        TestNotificationHandler handler = new TestNotificationHandler();
+        TopicId topicId = notificationCenter.registerTopic("chain.block.connected", null);
+        notificationCenter.addHandler(handler, "chain.#", null);
+
+        notificationCenter.postNotification(topicId, null);
+
+        assertEquals(1, handler.receivedNotifications.size());
+    }
+}
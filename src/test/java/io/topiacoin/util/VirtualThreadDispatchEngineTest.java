@@ -0,0 +1,155 @@
+package io.topiacoin.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class VirtualThreadDispatchEngineTest {
+
+    @Test
+    public void testConcurrencyLimitIsRespected() throws Exception {
+        final NotificationCenter notificationCenter = new NotificationCenter.Builder().virtualThreads(2).build();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final CountDownLatch delivered = new CountDownLatch(6);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                int current = active.incrementAndGet();
+                int max;
+                while ((max = maxActive.get()) < current && !maxActive.compareAndSet(max, current)) {
+                }
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                active.decrementAndGet();
+                delivered.countDown();
+            }
+        }, "rpcRequested", null);
+
+        Thread poster = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < 6; i++) {
+                    notificationCenter.postNotification("rpcRequested", null, null);
+                }
+            }
+        });
+        poster.start();
+
+        // The third post waits for a permit while the first two invocations are blocked.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (poster.getState() != Thread.State.WAITING || active.get() < 2) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        assertEquals(2, notificationCenter.getStats().getEngineQueueDepth());
+
+        release.countDown();
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        poster.join(5000);
+        assertEquals(2, maxActive.get());
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testHandlersRunOffThePostingThread() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().virtualThreads(16).build();
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        final CountDownLatch delivered = new CountDownLatch(2);
+        NotificationHandler handler = new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                threads.add(Thread.currentThread());
+                delivered.countDown();
+            }
+        };
+        notificationCenter.addHandler(handler, "blockConnected", null);
+        notificationCenter.addHandler(handler, "blockDisconnected", null);
+
+        notificationCenter.postNotification("blockConnected", null, null);
+        notificationCenter.postNotification("blockDisconnected", null, null);
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertFalse(threads.contains(Thread.currentThread()));
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testPooledNotificationsAreRetainedForInvocations() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().virtualThreads(4).build();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Integer> heights = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch delivered = new CountDownLatch(3);
+        notificationCenter.addHandler(new NotificationHandler() {
+            public void handleNotification(Notification notification) {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                heights.add((Integer) notification.getNotificationInfo().get("height"));
+                delivered.countDown();
+            }
+        }, "chainHeightChanged", null);
+
+        Map<String, Object> info = new HashMap<String, Object>();
+        for (int height = 1; height <= 3; height++) {
+            info.put("height", height);
+            notificationCenter.postPooledNotification("chainHeightChanged", null, info);
+        }
+        start.countDown();
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        Collections.sort(heights);
+        assertEquals(Arrays.asList(1, 2, 3), heights);
+
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testBatchIsDeliveredInOneInvocation() throws Exception {
+        NotificationCenter notificationCenter = new NotificationCenter.Builder().virtualThreads(4).build();
+        final List<List<Notification>> batches = Collections.synchronizedList(new ArrayList<List<Notification>>());
+        final CountDownLatch delivered = new CountDownLatch(1);
+        notificationCenter.addHandler(new BatchNotificationHandler() {
+            public void handleNotifications(List<Notification> notifications) {
+                batches.add(notifications);
+                delivered.countDown();
+            }
+
+            public void handleNotification(Notification notification) {
+                fail("Batch should be delivered in one call");
+            }
+        }, "txAccepted", null);
+
+        List<Notification> notifications = new ArrayList<Notification>();
+        for (int i = 0; i < 10; i++) {
+            notifications.add(new Notification("txAccepted", null, null));
+        }
+        notificationCenter.postNotifications(notifications);
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, batches.size());
+        assertEquals(notifications, batches.get(0));
+
+        notificationCenter.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConcurrencyMustBePositive() {
+        new NotificationCenter.Builder().virtualThreads(0);
+    }
+}
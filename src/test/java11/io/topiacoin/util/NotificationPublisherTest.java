@@ -0,0 +1,218 @@
+package io.topiacoin.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NotificationPublisherTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private NotificationCenter notificationCenter;
+
+    @Before
+    public void setUp() {
+        notificationCenter = new NotificationCenter.Builder().build();
+    }
+
+    @After
+    public void tearDown() {
+        notificationCenter.shutdown();
+    }
+
+    @Test
+    public void testNotificationsAreDeliveredAsRequested() {
+        NotificationPublisher publisher = new NotificationPublisher.Builder(notificationCenter, "blockConnected", null)
+                .executor(DIRECT_EXECUTOR)
+                .build();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        for (int i = 1; i <= 5; i++) {
+            postBlockConnected(i);
+        }
+        assertTrue(subscriber.heights.isEmpty());
+
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.heights.size());
+        subscriber.subscription.request(10);
+        postBlockConnected(6);
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 1; i <= 6; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, subscriber.heights);
+    }
+
+    @Test
+    public void testFullBufferBlocksPosterUntilDemand() throws Exception {
+        NotificationPublisher publisher = new NotificationPublisher.Builder(notificationCenter, "blockConnected", null)
+                .bufferSize(2)
+                .build();
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        final CountDownLatch posted = new CountDownLatch(1);
+        Thread poster = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 1; i <= 3; i++) {
+                    postBlockConnected(i);
+                }
+                posted.countDown();
+            }
+        });
+        poster.start();
+
+        assertFalse(posted.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, publisher.getOverflowCount());
+
+        subscriber.subscription.request(3);
+        assertTrue(posted.await(5, TimeUnit.SECONDS));
+        subscriber.awaitHeights(3);
+        assertEquals(3, subscriber.heights.size());
+    }
+
+    @Test
+    public void testFailFastSignalsError() {
+        NotificationPublisher publisher = new NotificationPublisher.Builder(notificationCenter, "blockConnected", null)
+                .bufferSize(2)
+                .overflowPolicy(OverflowPolicy.FAIL_FAST)
+                .executor(DIRECT_EXECUTOR)
+                .build();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        for (int i = 1; i <= 3; i++) {
+            postBlockConnected(i);
+        }
+
+        assertTrue(subscriber.error instanceof RejectedExecutionException);
+        assertTrue(subscriber.heights.isEmpty());
+        assertEquals(0, publisher.getSubscriptionCount());
+        assertTrue(notificationCenter.getStats().getHandlerStats().isEmpty());
+    }
+
+    @Test
+    public void testDropOldestKeepsLatestNotifications() {
+        NotificationPublisher publisher = new NotificationPublisher.Builder(notificationCenter, "blockConnected", null)
+                .bufferSize(2)
+                .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+                .executor(DIRECT_EXECUTOR)
+                .build();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        for (int i = 1; i <= 5; i++) {
+            postBlockConnected(i);
+        }
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        List<Integer> expected = new ArrayList<Integer>();
+        expected.add(4);
+        expected.add(5);
+        assertEquals(expected, subscriber.heights);
+        assertEquals(3, publisher.getOverflowCount());
+    }
+
+    @Test
+    public void testCancelRemovesHandlerAndCloseCompletes() {
+        NotificationPublisher publisher = new NotificationPublisher.Builder(notificationCenter, "blockConnected", null)
+                .executor(DIRECT_EXECUTOR)
+                .build();
+        RecordingSubscriber cancelled = new RecordingSubscriber();
+        RecordingSubscriber completed = new RecordingSubscriber();
+        publisher.subscribe(cancelled);
+        publisher.subscribe(completed);
+        assertEquals(2, notificationCenter.getStats().getHandlerStats().size());
+
+        cancelled.subscription.cancel();
+        postBlockConnected(1);
+        publisher.close();
+        assertFalse(completed.complete);
+
+        completed.subscription.request(1);
+        assertTrue(completed.complete);
+        assertEquals(Collections.singletonList(1), completed.heights);
+        assertTrue(cancelled.heights.isEmpty());
+        assertFalse(cancelled.complete);
+        assertTrue(notificationCenter.getStats().getHandlerStats().isEmpty());
+    }
+
+    @Test
+    public void testNonPositiveRequestSignalsError() {
+        NotificationPublisher publisher =
+                new NotificationPublisher.Builder(notificationCenter, "blockConnected", null).build();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        subscriber.awaitTermination();
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    // -------- Helpers --------
+
+    private void postBlockConnected(int height) {
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("height", height);
+        notificationCenter.postNotification("blockConnected", "main", info);
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<Notification> {
+        final List<Integer> heights = Collections.synchronizedList(new ArrayList<Integer>());
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+        volatile boolean complete;
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        public void onNext(Notification notification) {
+            heights.add((Integer) notification.getNotificationInfo().get("height"));
+        }
+
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        public void onComplete() {
+            complete = true;
+        }
+
+        void awaitHeights(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (heights.size() < count) {
+                assertTrue("Timed out waiting for " + count + " notifications", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+        }
+
+        void awaitTermination() {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (error == null && !complete) {
+                assertTrue("Timed out waiting for termination", System.currentTimeMillis() < deadline);
+                Thread.yield();
+            }
+        }
+    }
+}